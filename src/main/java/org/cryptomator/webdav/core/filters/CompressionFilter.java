@@ -0,0 +1,441 @@
+package org.cryptomator.webdav.core.filters;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses <code>207 Multi-Status</code> responses and full <code>GET</code> responses using <code>gzip</code> or <code>deflate</code>,
+ * depending on the request's <code>Accept-Encoding</code> header.
+ * <p>
+ * Responses are compressed on the fly. Partial content (<code>206</code>), responses smaller than the configurable <code>compressionThreshold</code>
+ * (default: {@value #DEFAULT_THRESHOLD} bytes), responses that already have a content encoding, non-blocking responses and files with a well-known
+ * compressed file type are sent as they are. The <code>ETag</code> of compressed responses is weakened, as the bytes sent differ from the file's contents.
+ * For the same reason, a <code>Content-Digest</code> of the file's contents is sent as <code>Repr-Digest</code> instead, as defined by
+ * <a href="https://www.rfc-editor.org/rfc/rfc9530#section-2">RFC 9530 Section 2</a>.
+ */
+public class CompressionFilter implements HttpFilter {
+
+	public static final String INIT_PARAM_THRESHOLD = "compressionThreshold";
+
+	private static final long DEFAULT_THRESHOLD = 2048;
+	private static final int BUFFER_SIZE = 8192;
+	private static final String METHOD_GET = "GET";
+	private static final String METHOD_PROPFIND = "PROPFIND";
+	private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+	private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+	private static final String HEADER_CONTENT_LENGTH = "Content-Length";
+	private static final String HEADER_CONTENT_RANGE = "Content-Range";
+	private static final String HEADER_RANGE = "Range";
+	private static final String HEADER_ETAG = "ETag";
+	private static final String HEADER_CONTENT_DIGEST = "Content-Digest";
+	private static final String HEADER_REPR_DIGEST = "Repr-Digest";
+	private static final String HEADER_VARY = "Vary";
+	private static final String ENCODING_GZIP = "gzip";
+	private static final String ENCODING_DEFLATE = "deflate";
+	private static final String WEAK_ETAG_PREFIX = "W/";
+	private static final int SC_MULTI_STATUS = 207;
+	private static final Set<String> COMPRESSED_FILE_EXTENSIONS = ImmutableSet.of( //
+			"7z", "aac", "avi", "bz2", "docx", "flac", "gif", "gz", "heic", "jpeg", "jpg", "m4a", "m4v", "mkv", "mov", "mp3", "mp4", //
+			"odp", "ods", "odt", "ogg", "png", "pptx", "rar", "tgz", "webm", "webp", "xlsx", "xz", "zip", "zst");
+
+	private long threshold = DEFAULT_THRESHOLD;
+
+	@Override
+	public void init(FilterConfig filterConfig) throws ServletException {
+		String thresholdParam = filterConfig.getInitParameter(INIT_PARAM_THRESHOLD);
+		if (thresholdParam != null) {
+			try {
+				threshold = Long.parseLong(thresholdParam.trim());
+			} catch (NumberFormatException e) {
+				throw new ServletException("Invalid value for init parameter " + INIT_PARAM_THRESHOLD + ": " + thresholdParam, e);
+			}
+		}
+	}
+
+	@Override
+	public void doFilterHttp(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws IOException, ServletException {
+		boolean isGet = METHOD_GET.equalsIgnoreCase(request.getMethod());
+		boolean isPropfind = METHOD_PROPFIND.equalsIgnoreCase(request.getMethod());
+		if (!isGet && !isPropfind) {
+			chain.doFilter(request, response);
+			return;
+		}
+		response.addHeader(HEADER_VARY, HEADER_ACCEPT_ENCODING);
+		Optional<String> encoding = negotiateEncoding(request.getHeader(HEADER_ACCEPT_ENCODING));
+		if (!encoding.isPresent() || (isGet && (request.getHeader(HEADER_RANGE) != null || hasCompressedFileExtension(request.getRequestURI())))) {
+			chain.doFilter(request, response);
+			return;
+		}
+		CompressingResponse compressingResponse = new CompressingResponse(response, encoding.get(), isGet);
+		chain.doFilter(request, compressingResponse);
+		if (!request.isAsyncStarted()) {
+			compressingResponse.finish();
+		}
+	}
+
+	/**
+	 * @param acceptEncoding Value of the <code>Accept-Encoding</code> header, may be <code>null</code>
+	 * @return The preferred supported encoding, if any. <code>gzip</code> is preferred over <code>deflate</code> if both have the same quality value.
+	 * @see <a href="https://tools.ietf.org/html/rfc7231#section-5.3.4">RFC 7231 Section 5.3.4</a>
+	 */
+	static Optional<String> negotiateEncoding(String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return Optional.empty();
+		}
+		float gzipQuality = -1f;
+		float deflateQuality = -1f;
+		float wildcardQuality = -1f;
+		for (String element : Splitter.on(',').trimResults().omitEmptyStrings().split(acceptEncoding)) {
+			int paramsStart = element.indexOf(';');
+			String coding = (paramsStart == -1 ? element : element.substring(0, paramsStart)).trim().toLowerCase(Locale.ROOT);
+			float quality = paramsStart == -1 ? 1f : parseQuality(element.substring(paramsStart + 1));
+			switch (coding) {
+				case ENCODING_GZIP:
+				case "x-gzip":
+					gzipQuality = Math.max(gzipQuality, quality);
+					break;
+				case ENCODING_DEFLATE:
+					deflateQuality = Math.max(deflateQuality, quality);
+					break;
+				case "*":
+					wildcardQuality = quality;
+					break;
+				default:
+					break;
+			}
+		}
+		if (gzipQuality < 0) {
+			gzipQuality = wildcardQuality;
+		}
+		if (deflateQuality < 0) {
+			deflateQuality = wildcardQuality;
+		}
+		if (gzipQuality > 0 && gzipQuality >= deflateQuality) {
+			return Optional.of(ENCODING_GZIP);
+		} else if (deflateQuality > 0) {
+			return Optional.of(ENCODING_DEFLATE);
+		} else {
+			return Optional.empty();
+		}
+	}
+
+	private static float parseQuality(String params) {
+		for (String param : Splitter.on(';').trimResults().split(params)) {
+			if (param.startsWith("q=") || param.startsWith("Q=")) {
+				try {
+					return Float.parseFloat(param.substring(2));
+				} catch (NumberFormatException e) {
+					return 0f;
+				}
+			}
+		}
+		return 1f;
+	}
+
+	private static boolean hasCompressedFileExtension(String uri) {
+		int lastDot = uri.lastIndexOf('.');
+		return lastDot != -1 && lastDot > uri.lastIndexOf('/') && COMPRESSED_FILE_EXTENSIONS.contains(uri.substring(lastDot + 1).toLowerCase(Locale.ROOT));
+	}
+
+	/**
+	 * Decides whether to compress as soon as the first byte of the body is written, the response is flushed or the request is finished.
+	 * Until then, the <code>Content-Length</code> and <code>Content-Digest</code> are held back, as they don't apply to compressed bodies.
+	 */
+	private class CompressingResponse extends HttpServletResponseWrapper {
+
+		private final String encoding;
+		private final boolean isGet;
+		private long contentLength = -1;
+		private String contentDigest;
+		private Boolean compress; // null until decided
+		private CompressingOutputStream outputStream;
+		private PrintWriter writer;
+
+		public CompressingResponse(HttpServletResponse response, String encoding, boolean isGet) {
+			super(response);
+			this.encoding = encoding;
+			this.isGet = isGet;
+		}
+
+		private void decide() {
+			if (compress == null) {
+				decide(shouldCompress());
+			}
+		}
+
+		private void decide(boolean compress) {
+			this.compress = compress;
+			if (compress) {
+				super.setHeader(HEADER_CONTENT_ENCODING, encoding);
+				String etag = getHeader(HEADER_ETAG);
+				if (etag != null && !etag.startsWith(WEAK_ETAG_PREFIX)) {
+					super.setHeader(HEADER_ETAG, WEAK_ETAG_PREFIX + etag);
+				}
+			} else if (contentLength >= 0) {
+				super.setContentLengthLong(contentLength);
+			}
+			if (contentDigest != null) {
+				setContentDigest(contentDigest);
+			}
+		}
+
+		private void setContentDigest(String value) {
+			if (compress == null) {
+				contentDigest = value;
+			} else if (compress) {
+				// the digest covers the uncompressed representation:
+				super.setHeader(HEADER_REPR_DIGEST, value);
+			} else {
+				super.setHeader(HEADER_CONTENT_DIGEST, value);
+			}
+		}
+
+		private boolean shouldCompress() {
+			int status = getStatus();
+			if (status != SC_MULTI_STATUS && !(isGet && status == SC_OK)) {
+				return false; // in particular no 206 Partial Content
+			} else if (containsHeader(HEADER_CONTENT_ENCODING) || containsHeader(HEADER_CONTENT_RANGE)) {
+				return false;
+			} else {
+				return contentLength < 0 || contentLength >= threshold;
+			}
+		}
+
+		private void finish() throws IOException {
+			if (writer != null) {
+				writer.flush();
+			}
+			if (outputStream != null) {
+				outputStream.finish();
+			} else if (compress == null) {
+				// no body written, nothing to compress:
+				decide(false);
+			}
+		}
+
+		@Override
+		public void setContentLength(int len) {
+			setContentLengthLong(len);
+		}
+
+		@Override
+		public void setContentLengthLong(long len) {
+			if (compress == null) {
+				contentLength = len;
+			} else if (!compress) {
+				super.setContentLengthLong(len);
+			}
+		}
+
+		@Override
+		public void setHeader(String name, String value) {
+			if (HEADER_CONTENT_LENGTH.equalsIgnoreCase(name)) {
+				setContentLengthLong(Long.parseLong(value));
+			} else if (HEADER_CONTENT_DIGEST.equalsIgnoreCase(name)) {
+				setContentDigest(value);
+			} else {
+				super.setHeader(name, value);
+			}
+		}
+
+		@Override
+		public void addHeader(String name, String value) {
+			if (HEADER_CONTENT_LENGTH.equalsIgnoreCase(name)) {
+				setContentLengthLong(Long.parseLong(value));
+			} else if (HEADER_CONTENT_DIGEST.equalsIgnoreCase(name)) {
+				setContentDigest(value);
+			} else {
+				super.addHeader(name, value);
+			}
+		}
+
+		@Override
+		public void setIntHeader(String name, int value) {
+			if (HEADER_CONTENT_LENGTH.equalsIgnoreCase(name)) {
+				setContentLengthLong(value);
+			} else {
+				super.setIntHeader(name, value);
+			}
+		}
+
+		@Override
+		public void addIntHeader(String name, int value) {
+			if (HEADER_CONTENT_LENGTH.equalsIgnoreCase(name)) {
+				setContentLengthLong(value);
+			} else {
+				super.addIntHeader(name, value);
+			}
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() throws IOException {
+			if (writer != null) {
+				throw new IllegalStateException("getWriter() has already been called.");
+			}
+			return getOrCreateOutputStream();
+		}
+
+		@Override
+		public PrintWriter getWriter() throws IOException {
+			if (writer == null) {
+				if (outputStream != null) {
+					throw new IllegalStateException("getOutputStream() has already been called.");
+				}
+				writer = new PrintWriter(new OutputStreamWriter(getOrCreateOutputStream(), getCharacterEncoding()));
+			}
+			return writer;
+		}
+
+		private CompressingOutputStream getOrCreateOutputStream() throws IOException {
+			if (outputStream == null) {
+				outputStream = new CompressingOutputStream(this, super.getOutputStream());
+			}
+			return outputStream;
+		}
+
+		@Override
+		public void flushBuffer() throws IOException {
+			if (writer != null) {
+				writer.flush();
+			}
+			if (outputStream != null) {
+				outputStream.flush();
+			} else {
+				decide();
+			}
+			super.flushBuffer();
+		}
+
+		@Override
+		public void reset() {
+			super.reset();
+			super.addHeader(HEADER_VARY, HEADER_ACCEPT_ENCODING);
+			contentLength = -1;
+			contentDigest = null;
+			compress = null;
+			outputStream = null;
+			writer = null;
+		}
+
+	}
+
+	private class CompressingOutputStream extends ServletOutputStream {
+
+		private final CompressingResponse response;
+		private final ServletOutputStream delegate;
+		private DeflaterOutputStream compressor;
+		private boolean finished;
+
+		public CompressingOutputStream(CompressingResponse response, ServletOutputStream delegate) {
+			this.response = response;
+			this.delegate = delegate;
+		}
+
+		private OutputStream target() throws IOException {
+			response.decide();
+			if (!response.compress) {
+				return delegate;
+			} else if (finished) {
+				throw new IOException("Stream already finished.");
+			} else if (compressor == null) {
+				// don't let the compressor close the servlet's output stream, so it can be finished independently:
+				OutputStream uncloseable = new FilterOutputStream(delegate) {
+					@Override
+					public void write(byte[] b, int off, int len) throws IOException {
+						out.write(b, off, len);
+					}
+
+					@Override
+					public void close() throws IOException {
+						flush();
+					}
+				};
+				compressor = ENCODING_GZIP.equals(response.encoding) //
+						? new GZIPOutputStream(uncloseable, BUFFER_SIZE, true) //
+						: new DeflaterOutputStream(uncloseable, new Deflater(Deflater.DEFAULT_COMPRESSION), BUFFER_SIZE, true) {
+							@Override
+							public void close() throws IOException {
+								try {
+									super.close();
+								} finally {
+									def.end();
+								}
+							}
+						};
+			}
+			return compressor;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			target().write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			target().write(b, off, len);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (finished) {
+				delegate.flush();
+			} else {
+				target().flush();
+			}
+		}
+
+		/**
+		 * Writes the trailer of the compressed stream, without closing the servlet's output stream.
+		 */
+		private void finish() throws IOException {
+			target();
+			if (compressor != null && !finished) {
+				finished = true;
+				compressor.close();
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			finish();
+			delegate.close();
+		}
+
+		@Override
+		public boolean isReady() {
+			return delegate.isReady();
+		}
+
+		@Override
+		public void setWriteListener(WriteListener writeListener) {
+			if (response.compress == null) {
+				// non-blocking writes are passed through, as the compressor can't honor isReady():
+				response.decide(false);
+			}
+			delegate.setWriteListener(writeListener);
+		}
+
+	}
+
+}
@@ -8,8 +8,6 @@
  *******************************************************************************/
 package org.cryptomator.webdav.core.filters;
 
-import com.google.common.io.ByteStreams;
-
 import javax.servlet.FilterChain;
 import javax.servlet.ReadListener;
 import javax.servlet.ServletException;
@@ -18,7 +16,6 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.io.InputStream;
 
 /**
  * If a PUT request with chunked transfer encoding and a X-Expected-Entity-Length header field is sent,
@@ -70,22 +67,31 @@ public class MacChunkedPutCompatibilityFilter implements HttpFilter {
 
 	/**
 	 * A ServletInputStream with limited number of bytes that can be read.
+	 * <p>
+	 * In non-blocking mode, the registered {@link ReadListener} is notified via {@link ReadListener#onAllDataRead()} as soon as the limit is reached,
+	 * as the underlying stream would never signal the end of a chunked body not terminated by the client.
 	 */
 	private static class BoundedServletInputStream extends ServletInputStream {
 
-		private final InputStream boundedIn;
 		private final ServletInputStream servletIn;
+		private long remaining;
 		private boolean reachedEof = false;
+		private boolean allDataReadSignalled = false;
 		private ReadListener readListener;
 
 		public BoundedServletInputStream(ServletInputStream delegate, long limit) {
-			this.boundedIn = ByteStreams.limit(delegate, limit);
 			this.servletIn = delegate;
+			this.remaining = limit;
 		}
 
 		private void reachedEof() throws IOException {
 			reachedEof = true;
-			if (readListener != null) {
+			signalAllDataRead();
+		}
+
+		private void signalAllDataRead() throws IOException {
+			if (readListener != null && !allDataReadSignalled) {
+				allDataReadSignalled = true;
 				readListener.onAllDataRead();
 			}
 		}
@@ -94,28 +100,42 @@ public class MacChunkedPutCompatibilityFilter implements HttpFilter {
 
 		@Override
 		public long skip(long n) throws IOException {
-			return boundedIn.skip(n);
+			long skipped = servletIn.skip(Math.min(n, remaining));
+			remaining -= skipped;
+			return skipped;
 		}
 
 		@Override
 		public int available() throws IOException {
-			return boundedIn.available();
+			return (int) Math.min(servletIn.available(), remaining);
 		}
 
 		@Override
 		public int read(byte[] b, int off, int len) throws IOException {
-			int read = boundedIn.read(b, off, len);
+			if (remaining == 0) {
+				reachedEof();
+				return -1;
+			}
+			int read = servletIn.read(b, off, (int) Math.min(len, remaining));
 			if (read == -1) {
 				reachedEof();
+			} else {
+				remaining -= read;
 			}
 			return read;
 		}
 
 		@Override
 		public int read() throws IOException {
-			int aByte = boundedIn.read();
+			if (remaining == 0) {
+				reachedEof();
+				return -1;
+			}
+			int aByte = servletIn.read();
 			if (aByte == -1) {
 				reachedEof();
+			} else {
+				remaining--;
 			}
 			return aByte;
 		}
@@ -124,18 +144,39 @@ public class MacChunkedPutCompatibilityFilter implements HttpFilter {
 
 		@Override
 		public boolean isFinished() {
-			return reachedEof || servletIn.isFinished();
+			return reachedEof || remaining == 0 || servletIn.isFinished();
 		}
 
 		@Override
 		public boolean isReady() {
-			return !reachedEof && servletIn.isReady();
+			return !reachedEof && remaining > 0 && servletIn.isReady();
 		}
 
 		@Override
 		public void setReadListener(ReadListener readListener) {
-			servletIn.setReadListener(readListener);
 			this.readListener = readListener;
+			servletIn.setReadListener(new ReadListener() {
+				@Override
+				public void onDataAvailable() throws IOException {
+					if (remaining > 0) {
+						readListener.onDataAvailable();
+					}
+					if (remaining == 0) {
+						// the listener stopped reading, as isReady() returns false once the limit is reached:
+						signalAllDataRead();
+					}
+				}
+
+				@Override
+				public void onAllDataRead() throws IOException {
+					signalAllDataRead();
+				}
+
+				@Override
+				public void onError(Throwable t) {
+					readListener.onError(t);
+				}
+			});
 		}
 
 	}
@@ -6,6 +6,7 @@
 package org.cryptomator.webdav.core.filters;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.jackrabbit.webdav.DavServletResponse;
 import org.apache.jackrabbit.webdav.util.EncodeUtil;
 import org.slf4j.Logger;
@@ -28,6 +29,10 @@ import java.nio.charset.StandardCharsets;
 import java.text.Normalizer;
 import java.text.Normalizer.Form;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Makes sure, all resource paths containing special unicode characters are composed of characters in {@link Form#NFC Normalization Form C}.
@@ -38,19 +43,33 @@ public class UnicodeResourcePathNormalizationFilter implements HttpFilter {
 	private static final Logger LOG = LoggerFactory.getLogger(UnicodeResourcePathNormalizationFilter.class);
 	private static final String PROPFIND_METHOD = "PROPFIND";
 	private static final String USER_AGENT_HEADER = "User-Agent";
+	private static final String CONTENT_ENCODING_HEADER = "Content-Encoding";
 	private static final Set<String> USER_AGENTS_EXPECTING_NFD = ImmutableSet.of("WebDAVFS");
+	private static final int PIPE_SIZE = 64 * 1024;
+
+	private final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("webdav-href-normalizer-%d").setDaemon(true).build());
 
 	@Override
 	public void doFilterHttp(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws IOException, ServletException {
-		HttpServletResponse filteredResponse;
 		if (PROPFIND_METHOD.equalsIgnoreCase(request.getMethod()) && isUserAgentExpectingNfdResponses(request)) {
 			// response will probably be a multi status xml response, we need to filter it, too:
-			filteredResponse = new NormalizedMultiStatusResponse(response, Form.NFD);
+			NormalizedMultiStatusResponse filteredResponse = new NormalizedMultiStatusResponse(response, Form.NFD, executor);
+			try {
+				chain.doFilter(new NormalizedRequest(request), filteredResponse);
+			} catch (IOException | ServletException | RuntimeException e) {
+				filteredResponse.abort();
+				throw e;
+			}
+			filteredResponse.finish();
 		} else {
 			// otherwise don't intercept the response
-			filteredResponse = response;
+			chain.doFilter(new NormalizedRequest(request), response);
 		}
-		chain.doFilter(new NormalizedRequest(request), filteredResponse);
+	}
+
+	@Override
+	public void destroy() {
+		executor.shutdown();
 	}
 
 	private boolean isUserAgentExpectingNfdResponses(HttpServletRequest request) {
@@ -130,17 +149,22 @@ public class UnicodeResourcePathNormalizationFilter implements HttpFilter {
 	}
 
 	/**
-	 * Whenever the http status code is 207 and a fixed-length body is expected, this ServletResponse will return a filtered outputstream.
+	 * Whenever the http status code is 207 and the body is not content-encoded, this ServletResponse will return a filtered outputstream.
+	 * Bodies of unknown length, e.g. streamed multistatus responses, are normalized while they are written.
 	 */
 	private static class NormalizedMultiStatusResponse extends HttpServletResponseWrapper {
 
 		private boolean isMultiStatus = true;
 		private int contentLength = -1;
+		private boolean isTooLarge = false;
 		private final Form normalizationForm;
+		private final ExecutorService executor;
+		private ServletOutputStream outputStream;
 
-		public NormalizedMultiStatusResponse(HttpServletResponse response, Form normalizationForm) {
+		public NormalizedMultiStatusResponse(HttpServletResponse response, Form normalizationForm, ExecutorService executor) {
 			super(response);
 			this.normalizationForm = normalizationForm;
+			this.executor = executor;
 		}
 
 		@Override
@@ -160,20 +184,45 @@ public class UnicodeResourcePathNormalizationFilter implements HttpFilter {
 				contentLength = (int) len;
 			} else {
 				// we do not want to intercept a 4gb+ response. just stream the original, unfiltered response.
-				contentLength = -1;
+				isTooLarge = true;
 			}
 		}
 
 		@Override
 		public ServletOutputStream getOutputStream() throws IOException {
-			if (isMultiStatus && contentLength != -1) {
-				return new NormalizedServletOutputStream(super.getOutputStream(), contentLength, normalizationForm);
+			if (outputStream != null) {
+				return outputStream;
+			} else if (isMultiStatus && !isTooLarge && !containsHeader(CONTENT_ENCODING_HEADER)) {
+				if (contentLength == -1) {
+					outputStream = new StreamingNormalizedServletOutputStream(super.getOutputStream(), normalizationForm, executor);
+				} else {
+					outputStream = new NormalizedServletOutputStream(super.getOutputStream(), contentLength, normalizationForm);
+				}
+				return outputStream;
 			} else {
 				LOG.warn("Response not a Multi Status response, thus output encoding will not be normalized.");
 				return super.getOutputStream();
 			}
 		}
 
+		/**
+		 * Completes normalization of streamed bodies, in case the servlet didn't close the output stream.
+		 */
+		private void finish() throws IOException {
+			if (outputStream instanceof StreamingNormalizedServletOutputStream) {
+				outputStream.close();
+			}
+		}
+
+		/**
+		 * Stops normalization of streamed bodies without waiting for it, if the servlet failed to write the response.
+		 */
+		private void abort() {
+			if (outputStream instanceof StreamingNormalizedServletOutputStream) {
+				((StreamingNormalizedServletOutputStream) outputStream).abort();
+			}
+		}
+
 	}
 
 	/**
@@ -188,9 +237,6 @@ public class UnicodeResourcePathNormalizationFilter implements HttpFilter {
 		private final Form normalizationForm;
 
 		public NormalizedServletOutputStream(ServletOutputStream delegate, int contentLength, Form normalizationForm) {
-			if (contentLength < 0) {
-				throw new IllegalArgumentException("contentLength must be a positive integer");
-			}
 			this.delegate = delegate;
 			this.contentLength = contentLength;
 			this.normalizationForm = normalizationForm;
@@ -215,18 +261,114 @@ public class UnicodeResourcePathNormalizationFilter implements HttpFilter {
 		public void write(byte b[], int off, int len) throws IOException {
 			buffer.write(b, off, len);
 			if (buffer.size() >= contentLength) {
-				normalize();
+				try (InputStream in = new ByteArrayInputStream(buffer.toByteArray(), 0, contentLength); //
+						MultistatusHrefNormalizer transformer = new MultistatusHrefNormalizer(in, delegate, normalizationForm)) {
+					transformer.transform();
+				} catch (XMLStreamException e) {
+					LOG.error("Error processing XML.", e);
+					throw new IOException(e);
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Normalizes a body of unknown length while it is written, without buffering it as a whole. The written bytes are passed through a bounded pipe
+	 * to a {@link MultistatusHrefNormalizer} running on a separate thread, which writes the normalized body to the servlet's output stream.
+	 * {@link #close() Closing} this stream waits for the normalizer to finish.
+	 */
+	private static class StreamingNormalizedServletOutputStream extends ServletOutputStream {
+
+		private final ServletOutputStream delegate;
+		private final PipedOutputStream pipe;
+		private final Future<?> transformation;
+		private boolean closed;
+
+		public StreamingNormalizedServletOutputStream(ServletOutputStream delegate, Form normalizationForm, ExecutorService executor) throws IOException {
+			this.delegate = delegate;
+			PipedInputStream in = new PipedInputStream(PIPE_SIZE);
+			this.pipe = new PipedOutputStream(in);
+			this.transformation = executor.submit(() -> {
+				try (in; MultistatusHrefNormalizer transformer = new MultistatusHrefNormalizer(in, delegate, normalizationForm)) {
+					transformer.transform();
+				}
+				return null;
+			});
+		}
+
+		@Override
+		public boolean isReady() {
+			return delegate.isReady();
+		}
+
+		@Override
+		public void setWriteListener(WriteListener writeListener) {
+			delegate.setWriteListener(writeListener);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			try {
+				pipe.write(b);
+			} catch (IOException e) {
+				throw transformationFailure(e);
+			}
+		}
+
+		@Override
+		public void write(byte b[], int off, int len) throws IOException {
+			try {
+				pipe.write(b, off, len);
+			} catch (IOException e) {
+				throw transformationFailure(e);
 			}
 		}
 
-		private void normalize() throws IOException {
-			try (InputStream in = new ByteArrayInputStream(buffer.toByteArray(), 0, contentLength); //
-					MultistatusHrefNormalizer transformer = new MultistatusHrefNormalizer(in, delegate, normalizationForm)) {
-				transformer.transform();
-			} catch (XMLStreamException e) {
-				LOG.error("Error processing XML.", e);
-				throw new IOException(e);
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			pipe.close();
+			try {
+				transformation.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while normalizing response");
+			} catch (ExecutionException e) {
+				LOG.error("Error processing XML.", e.getCause());
+				throw new IOException(e.getCause());
+			}
+			delegate.close();
+		}
+
+		private void abort() {
+			closed = true;
+			transformation.cancel(true);
+			try {
+				pipe.close();
+			} catch (IOException e) {
+				LOG.debug("Failed to close pipe.", e);
+			}
+		}
+
+		/**
+		 * @param e Exception thrown when writing to the pipe, usually because the normalizer stopped reading
+		 * @return The reason of the normalizer to fail, if it did
+		 */
+		private IOException transformationFailure(IOException e) {
+			if (transformation.isDone()) {
+				try {
+					transformation.get();
+				} catch (ExecutionException failure) {
+					return new IOException(failure.getCause());
+				} catch (InterruptedException interrupted) {
+					Thread.currentThread().interrupt();
+				}
 			}
+			return e;
 		}
 
 	}
@@ -9,6 +9,7 @@
 package org.cryptomator.webdav.core.servlet;
 
 import com.google.common.base.Predicates;
+import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterators;
 import org.apache.jackrabbit.webdav.*;
@@ -16,23 +17,188 @@ import org.apache.jackrabbit.webdav.header.IfHeader;
 import org.apache.jackrabbit.webdav.lock.ActiveLock;
 import org.apache.jackrabbit.webdav.lock.Scope;
 import org.apache.jackrabbit.webdav.lock.Type;
+import org.apache.jackrabbit.webdav.property.DavPropertyNameSet;
 import org.apache.jackrabbit.webdav.server.AbstractWebdavServlet;
+import org.apache.jackrabbit.webdav.xml.DomUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Path;
+import java.util.Locale;
 import java.util.Set;
+import java.util.zip.GZIPOutputStream;
 
 public abstract class AbstractNioWebDavServlet extends AbstractWebdavServlet {
 
+	/**
+	 * Init parameter enabling non-blocking GET responses. Requires the servlet to be registered with async support.
+	 */
+	public static final String INIT_PARAM_ASYNC_GET = "asyncGet";
+
+	/**
+	 * Init parameter specifying the time in milliseconds after which a non-blocking GET response is aborted, releasing its file handle and buffer
+	 * even if the client stopped reading. Defaults to one hour. The servlet container's default async timeout applies if not positive.
+	 */
+	public static final String INIT_PARAM_ASYNC_GET_TIMEOUT = "asyncGetTimeout";
+
+	/**
+	 * Init parameter enabling non-blocking PUT requests using {@link javax.servlet.ReadListener} and {@link java.nio.channels.AsynchronousFileChannel}.
+	 * Requires a servlet container with async support. Defaults to <code>false</code>.
+	 */
+	public static final String INIT_PARAM_ASYNC_PUT = "asyncPut";
+
+	/**
+	 * Init parameter specifying the minimum file size (in bytes) for which ranged GET requests are served from memory-mapped regions.
+	 * Memory mapping is disabled if not set or negative. Not supported by all file systems.
+	 */
+	public static final String INIT_PARAM_MMAP_THRESHOLD = "mmapThreshold";
+
+	/**
+	 * Init parameter specifying the number of bytes (summed up over all files) that may be held in memory to serve small files and file heads.
+	 * The content cache is disabled if not set or not positive.
+	 */
+	public static final String INIT_PARAM_CONTENT_CACHE_SIZE = "contentCacheSize";
+
+	/**
+	 * Init parameter specifying the number of leading bytes of each file that may be cached. Defaults to 64 KiB.
+	 */
+	public static final String INIT_PARAM_CONTENT_CACHE_ENTRY_SIZE = "contentCacheEntrySize";
+
+	/**
+	 * Init parameter specifying the time in milliseconds a read-only file channel is kept open after its last use, allowing consecutive ranged
+	 * requests to share it. Channels are opened per request if not set or not positive.
+	 */
+	public static final String INIT_PARAM_FILE_HANDLE_IDLE_TIME = "fileHandleIdleTime";
+
+	/**
+	 * Init parameter specifying the maximum number of bytes prefetched for a client that reads a file as a series of consecutive ranged requests.
+	 * Read-ahead is disabled if not set or not positive.
+	 */
+	public static final String INIT_PARAM_READ_AHEAD_SIZE = "readAheadSize";
+
+	/**
+	 * Init parameter specifying the size of the largest buffers used to copy file contents. Smaller transfers use smaller buffers, down to 8 KiB. Defaults to 64 KiB.
+	 */
+	public static final String INIT_PARAM_BUFFER_SIZE = "bufferSize";
+
+	/**
+	 * Init parameter specifying the number of bytes that may be held in idle copy buffers for reuse by later transfers. Defaults to 4 MiB.
+	 */
+	public static final String INIT_PARAM_BUFFER_POOL_SIZE = "bufferPoolSize";
+
+	/**
+	 * Init parameter specifying when uploaded files and created folders are forced to the storage device before responding:
+	 * <code>none</code> (default) leaves flushing to the operating system, <code>fsync</code> forces every single upload and
+	 * <code>group-commit</code> forces all uploads completed within a short window together.
+	 */
+	public static final String INIT_PARAM_DURABILITY = "durability";
+
+	/**
+	 * Init parameter specifying the time in milliseconds during which completed uploads are collected before being forced together
+	 * in <code>group-commit</code> {@link #INIT_PARAM_DURABILITY durability} mode. Defaults to 5 ms.
+	 */
+	public static final String INIT_PARAM_GROUP_COMMIT_WINDOW = "groupCommitWindow";
+
+	/**
+	 * Init parameter specifying a {@link java.security.MessageDigest} algorithm, e.g. <code>SHA-256</code>, used to compute the digest of uploaded files
+	 * while they are received. Digests are stored in a user-defined file attribute, validated against <code>Content-Digest</code> and <code>Digest</code>
+	 * request headers and returned as <code>Content-Digest</code> header on GET. Disabled if not set.
+	 */
+	public static final String INIT_PARAM_DIGEST_ALGORITHM = "digestAlgorithm";
+
+	/**
+	 * Init parameter specifying the time in milliseconds for which file attributes read by GET, HEAD and PROPFIND requests are cached.
+	 * Modifications made through this servlet take effect immediately, other modifications are detected by watching the served directories
+	 * if supported by the file system. The cache is disabled if not set or not positive.
+	 */
+	public static final String INIT_PARAM_ATTRIBUTE_CACHE_TTL = "attributeCacheTtl";
+
+	/**
+	 * Init parameter specifying the time in milliseconds for which the members of listed directories are cached. A cached listing is discarded
+	 * as soon as the directory's modification time changes. The cache is disabled if not set or not positive.
+	 */
+	public static final String INIT_PARAM_DIRECTORY_CACHE_TTL = "directoryCacheTtl";
+
+	/**
+	 * Init parameter specifying the number of directory members (summed up over all directories) that may be held by the directory listing cache.
+	 * Defaults to 100000.
+	 */
+	public static final String INIT_PARAM_DIRECTORY_CACHE_SIZE = "directoryCacheSize";
+
+	/**
+	 * Init parameter specifying the number of threads reading the attributes of directory members concurrently, shared by all requests.
+	 * Speeds up listing large directories on file systems with slow attribute reads. Defaults to 1, i.e. attributes are read sequentially.
+	 */
+	public static final String INIT_PARAM_ATTRIBUTE_READ_PARALLELISM = "attributeReadParallelism";
+
+	/**
+	 * Init parameter specifying whether PROPFIND requests with <code>Depth: infinity</code> are answered. If <code>false</code>, they are refused
+	 * with <code>403 Forbidden</code> and the <code>DAV:propfind-finite-depth</code> precondition. Defaults to <code>true</code>.
+	 */
+	public static final String INIT_PARAM_PROPFIND_INFINITE_DEPTH = "propfindInfiniteDepth";
+
+	/**
+	 * Init parameter specifying the maximum number of resources included in the response to a <code>Depth: infinity</code> PROPFIND request.
+	 * If exceeded, the response is completed with a <code>507 Insufficient Storage</code> status for the requested resource. Unlimited if not set or not positive.
+	 */
+	public static final String INIT_PARAM_PROPFIND_MAX_RESOURCES = "propfindMaxResources";
+
+	/**
+	 * Init parameter specifying the time in milliseconds after which a <code>Depth: infinity</code> PROPFIND request stops enumerating resources.
+	 * If exceeded, the response is completed with a <code>507 Insufficient Storage</code> status for the requested resource. Unlimited if not set or not positive.
+	 */
+	public static final String INIT_PARAM_PROPFIND_TIMEOUT = "propfindTimeout";
+
+	/**
+	 * Init parameter specifying the number of folders listed concurrently by a <code>Depth: infinity</code> PROPFIND request, while the request thread
+	 * streams the responses. Defaults to 1, i.e. folders are listed sequentially by the request thread.
+	 */
+	public static final String INIT_PARAM_PROPFIND_PARALLELISM = "propfindParallelism";
+
 	private static final String NO_LOCK = "DAV:no-lock";
+	private static final String IF_MODIFIED_SINCE_HEADER = "If-Modified-Since";
+	private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+	private static final String ETAG_HEADER = "ETag";
+	private static final String CONTENT_RANGE_HEADER = "Content-Range";
+	private static final String ACCEPT_ENCODING_HEADER = "Accept-Encoding";
+	private static final String CONTENT_ENCODING_HEADER = "Content-Encoding";
+	private static final String GZIP_ENCODING = "gzip";
+	private static final String XML_CONTENT_TYPE = "text/xml; charset=UTF-8";
+	private static final String PROPFIND_FINITE_DEPTH = "propfind-finite-depth";
 	private static final Logger LOG = LoggerFactory.getLogger(AbstractNioWebDavServlet.class);
 
 	private final DavSessionProvider davSessionProvider = new DavSessionProviderImpl();
 	private final DavLocatorFactory davLocatorFactory = new DavLocatorFactoryImpl();
-	private final DavResourceFactoryImpl davResourceFactory = new DavResourceFactoryImpl(this::resolveUrl);
+	private ServletSettings settings = ServletSettings.defaults();
+	private DavResourceFactoryImpl davResourceFactory;
+
+	@Override
+	public void init() throws ServletException {
+		super.init();
+		try {
+			settings = ServletSettings.fromInitParameters(this::getInitParameter);
+		} catch (IllegalArgumentException e) {
+			throw new ServletException(e.getMessage(), e);
+		}
+		davResourceFactory = new DavResourceFactoryImpl(this::resolveUrl, settings);
+	}
+
+	@Override
+	public void destroy() {
+		if (davResourceFactory != null) {
+			davResourceFactory.close();
+		}
+		super.destroy();
+	}
 
 	/**
 	 * @param relativeUrl An url
@@ -41,6 +207,38 @@ public abstract class AbstractNioWebDavServlet extends AbstractWebdavServlet {
 	 */
 	protected abstract Path resolveUrl(String relativeUrl) throws IllegalArgumentException;
 
+	/**
+	 * @return Number of GET requests served from the content cache
+	 * @see #INIT_PARAM_CONTENT_CACHE_SIZE
+	 */
+	public long getContentCacheHitCount() {
+		return davResourceFactory == null ? 0 : davResourceFactory.getContentCache().getHitCount();
+	}
+
+	/**
+	 * @return Number of GET requests eligible for the content cache that required reading the file
+	 * @see #INIT_PARAM_CONTENT_CACHE_SIZE
+	 */
+	public long getContentCacheMissCount() {
+		return davResourceFactory == null ? 0 : davResourceFactory.getContentCache().getMissCount();
+	}
+
+	/**
+	 * @return Number of ranged requests served from data prefetched by sequential read-ahead
+	 * @see #INIT_PARAM_READ_AHEAD_SIZE
+	 */
+	public long getReadAheadHitCount() {
+		return davResourceFactory == null ? 0 : davResourceFactory.getReadAheadCache().getHitCount();
+	}
+
+	/**
+	 * @return Utilization of the pooled copy buffers, one line per buffer size
+	 * @see #INIT_PARAM_BUFFER_POOL_SIZE
+	 */
+	public String getBufferPoolStatistics() {
+		return davResourceFactory == null ? "" : davResourceFactory.getBufferPool().getStatistics();
+	}
+
 	@Override
 	protected boolean isPreconditionValid(WebdavRequest request, DavResource resource) {
 		IfHeader ifHeader = new IfHeader(request);
@@ -108,7 +306,199 @@ public abstract class AbstractNioWebDavServlet extends AbstractWebdavServlet {
 
 	@Override
 	protected void doGet(WebdavRequest request, WebdavResponse response, DavResource resource) throws IOException, DavException {
-		super.doGet(request, response, resource);
+		if (isNotModified(request, resource)) {
+			respondNotModified(response, (DavFile) resource);
+		} else if (settings.isAsyncGet() && request.isAsyncSupported() && resource instanceof DavFile && resource.exists() && ((DavFile) resource).isAsyncSpoolSupported()) {
+			ServletOutputStream out = response.getOutputStream();
+			((DavFile) resource).spoolAsync(getOutputContext(response, out), out, () -> startAsyncGet(request));
+		} else if (resource instanceof DavFile && resource.exists()) {
+			spool(response, (DavFile) resource, true);
+		} else {
+			super.doGet(request, response, resource);
+		}
+	}
+
+	@Override
+	protected void doHead(WebdavRequest request, WebdavResponse response, DavResource resource) throws IOException {
+		if (isNotModified(request, resource)) {
+			respondNotModified(response, (DavFile) resource);
+		} else if (resource instanceof DavFile && resource.exists()) {
+			spool(response, (DavFile) resource, false);
+		} else {
+			super.doHead(request, response, resource);
+		}
+	}
+
+	/**
+	 * Spools a file whose preconditions have already been evaluated by {@link #isNotModified(WebdavRequest, DavResource)}.
+	 * Not delegating to Jackrabbit, which would evaluate <code>If-Modified-Since</code> again, even if <code>If-None-Match</code> is present.
+	 */
+	private void spool(WebdavResponse response, DavFile file, boolean sendContent) throws IOException {
+		OutputStream out = sendContent ? response.getOutputStream() : null;
+		file.spool(getOutputContext(response, out));
+		response.flushBuffer();
+	}
+
+	private AsyncContext startAsyncGet(WebdavRequest request) {
+		AsyncContext asyncContext = request.startAsync();
+		if (settings.getAsyncGetTimeout() > 0) {
+			asyncContext.setTimeout(settings.getAsyncGetTimeout());
+		}
+		return asyncContext;
+	}
+
+	/**
+	 * Evaluates <code>If-None-Match</code> and <code>If-Modified-Since</code> preconditions of a GET or HEAD request
+	 * in the order defined by <a href="https://tools.ietf.org/html/rfc7232#section-6">RFC 7232 Section 6</a>.
+	 * Only the file attributes are consulted, the file itself is not opened.
+	 *
+	 * @return <code>true</code> if the resource is an existing file whose representation the client already has
+	 */
+	private boolean isNotModified(WebdavRequest request, DavResource resource) {
+		if (!(resource instanceof DavFile) || !resource.exists()) {
+			return false;
+		}
+		String ifNoneMatch = request.getHeader(IF_NONE_MATCH_HEADER);
+		if (ifNoneMatch != null) {
+			// If-Modified-Since must be ignored if If-None-Match is present
+			return ETag.matches(ifNoneMatch, ((DavFile) resource).getETag(), true);
+		}
+		long ifModifiedSince;
+		try {
+			ifModifiedSince = request.getDateHeader(IF_MODIFIED_SINCE_HEADER);
+		} catch (IllegalArgumentException e) {
+			// invalid dates must be ignored
+			return false;
+		}
+		long modificationTime = resource.getModificationTime();
+		// HTTP dates have a resolution of one second:
+		return ifModifiedSince != -1 && modificationTime != -1 && modificationTime / 1000 * 1000 <= ifModifiedSince;
+	}
+
+	private void respondNotModified(WebdavResponse response, DavFile file) {
+		// 304 responses must contain the ETag, see https://tools.ietf.org/html/rfc7232#section-4.1
+		response.setHeader(ETAG_HEADER, file.getETag());
+		response.setStatus(DavServletResponse.SC_NOT_MODIFIED);
+	}
+
+	/* PROPFIND stuff */
+
+	/**
+	 * Streams the multistatus response while enumerating the requested resources, instead of building the whole document in memory first.
+	 * As the length of the response is unknown when it is committed, it is sent using chunked transfer encoding.
+	 */
+	@Override
+	protected void doPropFind(WebdavRequest request, WebdavResponse response, DavResource resource) throws IOException, DavException {
+		if (!resource.exists()) {
+			response.sendError(DavServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		int depth = request.getDepth(DavConstants.DEPTH_INFINITY);
+		if (depth == DavConstants.DEPTH_INFINITY && !settings.isPropFindInfiniteDepth()) {
+			throw new DavException(DavServletResponse.SC_FORBIDDEN, "PROPFIND with Depth: infinity not supported", null, createErrorCondition(PROPFIND_FINITE_DEPTH));
+		}
+		DavPropertyNameSet requestProperties = request.getPropFindProperties();
+		int propFindType = request.getPropFindType();
+		addHintAboutPotentialRequestEncodings(request, response);
+		response.setStatus(DavServletResponse.SC_MULTI_STATUS);
+		response.setContentType(XML_CONTENT_TYPE);
+		boolean gzip = acceptsGzipEncoding(request.getHeader(ACCEPT_ENCODING_HEADER));
+		if (gzip) {
+			response.setHeader(CONTENT_ENCODING_HEADER, GZIP_ENCODING);
+		}
+		// closing the stream completes the response, allowing wrapping filters to finish their work:
+		try (OutputStream out = gzip ? new GZIPOutputStream(response.getOutputStream()) : response.getOutputStream(); //
+				MultiStatusWriter writer = new MultiStatusWriter(out)) {
+			if (depth == DavConstants.DEPTH_INFINITY) {
+				writeAllProperties(writer, resource, requestProperties, propFindType);
+			} else {
+				writeProperties(writer, resource, requestProperties, propFindType, depth);
+			}
+		}
+	}
+
+	private void writeAllProperties(MultiStatusWriter writer, DavResource resource, DavPropertyNameSet requestProperties, int propFindType) throws IOException {
+		InfiniteDepthPropFind.Outcome outcome = davResourceFactory.getInfiniteDepthPropFind().run(resource, r -> new MultiStatusResponse(r, requestProperties, propFindType), writer::write);
+		switch (outcome) {
+			case TOO_MANY_RESOURCES:
+				LOG.warn("PROPFIND of {} exceeded the maximum number of resources. Response truncated.", resource.getHref());
+				writer.write(new MultiStatusResponse(resource.getHref(), DavServletResponse.SC_INSUFFICIENT_SPACE_ON_RESOURCE, "Number of resources exceeds limit"));
+				break;
+			case TIMEOUT:
+				LOG.warn("PROPFIND of {} exceeded the time limit. Response truncated.", resource.getHref());
+				writer.write(new MultiStatusResponse(resource.getHref(), DavServletResponse.SC_INSUFFICIENT_SPACE_ON_RESOURCE, "Enumerating resources exceeds time limit"));
+				break;
+			default:
+				break;
+		}
+	}
+
+	/**
+	 * Tells clients which content codings are accepted for request bodies, like Jackrabbit does for PROPFIND requests.
+	 */
+	private static void addHintAboutPotentialRequestEncodings(WebdavRequest request, WebdavResponse response) {
+		if (request instanceof ContentCodingAwareRequest) {
+			ContentCodingAwareRequest contentCodingAwareRequest = (ContentCodingAwareRequest) request;
+			if (contentCodingAwareRequest.getRequestContentCodings().isEmpty()) {
+				response.setHeader(ACCEPT_ENCODING_HEADER, contentCodingAwareRequest.getAcceptableCodings());
+			}
+		}
+	}
+
+	private static Element createErrorCondition(String name) {
+		try {
+			return DomUtil.createElement(DomUtil.createDocument(), name, DavConstants.NAMESPACE);
+		} catch (ParserConfigurationException e) {
+			throw new IllegalStateException("XML parser not configured", e);
+		}
+	}
+
+	private void writeProperties(MultiStatusWriter writer, DavResource resource, DavPropertyNameSet requestProperties, int propFindType, int depth) throws IOException {
+		writer.write(new MultiStatusResponse(resource, requestProperties, propFindType));
+		if (depth > 0 && resource.isCollection()) {
+			DavResourceIterator members = resource.getMembers();
+			try {
+				while (members.hasNext()) {
+					writeProperties(writer, members.nextResource(), requestProperties, propFindType, depth - 1);
+				}
+			} finally {
+				if (members instanceof Closeable) {
+					// release the directory stream even if the response is aborted:
+					((Closeable) members).close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param acceptEncoding Value of the <code>Accept-Encoding</code> header, may be <code>null</code>
+	 * @return <code>true</code> if <code>gzip</code> is listed without a quality value of zero
+	 */
+	static boolean acceptsGzipEncoding(String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return false;
+		}
+		for (String element : Splitter.on(',').trimResults().omitEmptyStrings().split(acceptEncoding)) {
+			int paramsStart = element.indexOf(';');
+			String coding = (paramsStart == -1 ? element : element.substring(0, paramsStart)).trim().toLowerCase(Locale.ROOT);
+			if (GZIP_ENCODING.equals(coding)) {
+				return paramsStart == -1 || !isZeroQuality(element.substring(paramsStart + 1));
+			}
+		}
+		return false;
+	}
+
+	private static boolean isZeroQuality(String params) {
+		for (String param : Splitter.on(';').trimResults().split(params)) {
+			if (param.startsWith("q=") || param.startsWith("Q=")) {
+				try {
+					return Float.parseFloat(param.substring(2).trim()) <= 0f;
+				} catch (NumberFormatException e) {
+					return true;
+				}
+			}
+		}
+		return false;
 	}
 
 	/* LOCK stuff */
@@ -126,9 +516,48 @@ public abstract class AbstractNioWebDavServlet extends AbstractWebdavServlet {
 		if (isLocked(resource) && !hasCorrectLockTokens(request.getDavSession(), resource)) {
 			throw new DavException(DavServletResponse.SC_LOCKED, "The resource is locked");
 		}
+		String contentRange = request.getHeader(CONTENT_RANGE_HEADER);
+		if (contentRange != null && resource instanceof DavFile) {
+			doPutRange(request, response, (DavFile) resource, contentRange);
+			return;
+		}
+		if (settings.isAsyncPut() && request.isAsyncSupported() && resource instanceof DavFile) {
+			DavFolder parent = ((DavFile) resource).getCollection();
+			if (parent != null && parent.exists()) {
+				int status = resource.exists() ? DavServletResponse.SC_NO_CONTENT : DavServletResponse.SC_CREATED;
+				ServletInputStream in = request.getInputStream();
+				if (parent.addMemberFileAsync((DavFile) resource, getInputContext(request, in), in, request::startAsync, status)) {
+					return;
+				}
+			}
+		}
 		super.doPut(request, response, resource);
 	}
 
+	/**
+	 * Handles a partial PUT, which writes the request body to the position given by the <code>Content-Range</code> header,
+	 * allowing clients to resume interrupted uploads or to upload a file in multiple chunks.
+	 */
+	private void doPutRange(WebdavRequest request, WebdavResponse response, DavFile resource, String contentRange) throws IOException, DavException {
+		ByteRange range;
+		try {
+			range = ByteRange.parseContentRange(contentRange);
+		} catch (ByteRange.UnsupportedRangeException | ByteRange.MalformedByteRangeException e) {
+			throw new DavException(DavServletResponse.SC_BAD_REQUEST, "Invalid Content-Range: " + contentRange);
+		}
+		long rangeLength = range.getEffectiveLastByte(Long.MAX_VALUE) - range.getEffectiveFirstByte(Long.MAX_VALUE) + 1;
+		if (request.getContentLengthLong() >= 0 && request.getContentLengthLong() != rangeLength) {
+			throw new DavException(DavServletResponse.SC_BAD_REQUEST, "Content-Length doesn't match Content-Range.");
+		}
+		DavFolder parent = resource.getCollection();
+		if (parent == null || !parent.exists()) {
+			throw new DavException(DavServletResponse.SC_CONFLICT, "Parent doesn't exist.");
+		}
+		int status = resource.exists() ? DavServletResponse.SC_NO_CONTENT : DavServletResponse.SC_CREATED;
+		resource.writeRange(range, request.getInputStream());
+		response.setStatus(status);
+	}
+
 	@Override
 	protected void doDelete(WebdavRequest request, WebdavResponse response, DavResource resource) throws IOException, DavException {
 		if (isLocked(resource) && !hasCorrectLockTokens(request.getDavSession(), resource)) {
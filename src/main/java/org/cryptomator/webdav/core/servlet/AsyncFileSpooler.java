@@ -0,0 +1,140 @@
+package org.cryptomator.webdav.core.servlet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.util.function.Supplier;
+
+/**
+ * Writes a region of a file to a non-blocking {@link ServletOutputStream}.
+ * Data is only read from the file when the container signals that the output stream is ready to accept more bytes,
+ * so no thread is occupied while waiting for a slow client.
+ * <p>
+ * The file handle and the transfer buffer are released as soon as the transfer is finished, failed or timed out.
+ */
+class AsyncFileSpooler implements WriteListener, AsyncListener {
+
+	private static final Logger LOG = LoggerFactory.getLogger(AsyncFileSpooler.class);
+
+	private final AsyncContext asyncContext;
+	private final ServletOutputStream out;
+	private final FileHandleCache.Handle handle;
+	private final SeekableByteChannel src;
+	private final BufferPool.Lease bufferLease;
+	private final ByteBuffer buffer;
+	private long position;
+	private long remaining;
+	private boolean released;
+	private boolean finished;
+
+	private AsyncFileSpooler(AsyncContext asyncContext, ServletOutputStream out, FileHandleCache.Handle handle, long position, long count, BufferPool bufferPool) {
+		this.asyncContext = asyncContext;
+		this.out = out;
+		this.handle = handle;
+		this.src = handle.channel();
+		this.bufferLease = bufferPool.acquire(count);
+		this.buffer = bufferLease.buffer();
+		this.position = position;
+		this.remaining = count;
+	}
+
+	/**
+	 * Puts the current request into asynchronous mode and starts transferring <code>count</code> bytes starting at <code>position</code>.
+	 * The async context is completed as soon as all bytes have been written, an error occurred or the async context timed out.
+	 *
+	 * @param handle The file to read from. Ownership passes to the spooler once this method returns normally, otherwise the caller has to close it.
+	 * @param position Index of the first byte to be written
+	 * @param count Maximum number of bytes to be written
+	 * @param asyncContextStarter Puts the current request into asynchronous mode, invoked only after the file is ready to be read
+	 * @param out The output stream of the current response
+	 * @param bufferPool Pool providing the transfer buffer, which is held until the transfer is finished
+	 * @throws IOException If the file can not be positioned
+	 */
+	public static void start(FileHandleCache.Handle handle, long position, long count, Supplier<AsyncContext> asyncContextStarter, ServletOutputStream out, BufferPool bufferPool) throws IOException {
+		if (!(handle.channel() instanceof FileChannel)) {
+			handle.channel().position(position); // unshared channel
+		}
+		AsyncContext asyncContext = asyncContextStarter.get();
+		AsyncFileSpooler spooler = new AsyncFileSpooler(asyncContext, out, handle, position, count, bufferPool);
+		asyncContext.addListener(spooler);
+		out.setWriteListener(spooler);
+	}
+
+	@Override
+	public synchronized void onWritePossible() throws IOException {
+		while (!finished && out.isReady()) {
+			if (remaining == 0) {
+				finish();
+				return;
+			}
+			buffer.clear();
+			buffer.limit((int) Math.min(buffer.capacity(), remaining));
+			int read = src instanceof FileChannel ? ((FileChannel) src).read(buffer, position) : src.read(buffer);
+			if (read == -1) {
+				// EOF (file shrunk since its size has been read)
+				finish();
+				return;
+			}
+			position += read;
+			remaining -= read;
+			out.write(buffer.array(), 0, read);
+		}
+		// not ready: container will invoke onWritePossible() again as soon as more data can be written
+	}
+
+	@Override
+	public synchronized void onError(Throwable t) {
+		LOG.debug("Async transfer failed.", t);
+		finish();
+	}
+
+	@Override
+	public synchronized void onTimeout(AsyncEvent event) {
+		LOG.debug("Async transfer timed out with {} bytes remaining.", remaining);
+		finish();
+	}
+
+	@Override
+	public synchronized void onError(AsyncEvent event) {
+		onError(event.getThrowable());
+	}
+
+	@Override
+	public synchronized void onComplete(AsyncEvent event) {
+		finished = true;
+		release();
+	}
+
+	@Override
+	public void onStartAsync(AsyncEvent event) {
+		// no-op
+	}
+
+	private void finish() {
+		if (finished) {
+			return;
+		}
+		finished = true;
+		release();
+		asyncContext.complete();
+	}
+
+	private void release() {
+		if (released) {
+			return;
+		}
+		released = true;
+		handle.close();
+		bufferLease.close();
+	}
+
+}
@@ -0,0 +1,211 @@
+package org.cryptomator.webdav.core.servlet;
+
+import org.apache.jackrabbit.webdav.DavException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.security.MessageDigest;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Writes a request body received from a non-blocking {@link ServletInputStream} to an {@link AsynchronousFileChannel}.
+ * Data is only read when the container signals that bytes are available and only while no write is pending,
+ * so no thread is occupied while waiting for a slow client or the disk. If requested, the digest of the body is computed while it is received.
+ */
+class AsyncFileUploader implements ReadListener, CompletionHandler<Integer, Void> {
+
+	private static final Logger LOG = LoggerFactory.getLogger(AsyncFileUploader.class);
+
+	private final AsyncContext asyncContext;
+	private final ServletInputStream in;
+	private final AsynchronousFileChannel dst;
+	private final BufferPool.Lease bufferLease;
+	private final Transaction transaction;
+	private final MessageDigest messageDigest;
+	private final ByteBuffer buffer;
+	private final int successStatus;
+	private long position;
+	private boolean writePending;
+	private boolean allDataRead;
+	private boolean finished;
+	private int failureStatus = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+
+	private AsyncFileUploader(AsyncContext asyncContext, ServletInputStream in, AsynchronousFileChannel dst, BufferPool bufferPool, Transaction transaction, MessageDigest messageDigest, long expectedLength, int successStatus) {
+		this.asyncContext = asyncContext;
+		this.in = in;
+		this.dst = dst;
+		this.bufferLease = bufferPool.acquire(expectedLength >= 0 ? expectedLength : Long.MAX_VALUE);
+		this.buffer = bufferLease.buffer();
+		this.transaction = transaction;
+		this.messageDigest = messageDigest;
+		this.successStatus = successStatus;
+	}
+
+	/**
+	 * Starts transferring the request body to <code>dst</code>.
+	 * The async context is completed with <code>successStatus</code> as soon as all bytes have been written and committed, or with an error status if the transfer failed.
+	 *
+	 * @param in The input stream of the request belonging to <code>asyncContext</code>
+	 * @param dst The file to write to, which is closed when the transfer is finished
+	 * @param asyncContext Async context of the current request
+	 * @param bufferPool Pool providing the transfer buffer, which is held until the transfer is finished
+	 * @param transaction Makes the written file visible after all bytes have been written, or discards it if the transfer failed
+	 * @param messageDigest Digest updated with all bytes of the body and passed to {@link Transaction#commit(byte[])}, or <code>null</code> if not needed
+	 * @param expectedLength The announced size of the body, if known, or <code>-1</code>
+	 * @param successStatus Status code to respond with, if the file has been written successfully
+	 */
+	public static void start(ServletInputStream in, AsynchronousFileChannel dst, AsyncContext asyncContext, BufferPool bufferPool, Transaction transaction, MessageDigest messageDigest, long expectedLength, int successStatus) {
+		// progress depends on the client, not on the total duration. idle connections are closed by the container anyway:
+		asyncContext.setTimeout(0);
+		in.setReadListener(new AsyncFileUploader(asyncContext, in, dst, bufferPool, transaction, messageDigest, expectedLength, successStatus));
+	}
+
+	@Override
+	public synchronized void onDataAvailable() throws IOException {
+		readWhileReady();
+	}
+
+	private void readWhileReady() throws IOException {
+		while (!writePending && !finished && in.isReady()) {
+			int read = in.read(bufferLease.array());
+			if (read == -1) {
+				return; // container will invoke onAllDataRead()
+			} else if (read > 0) {
+				if (messageDigest != null) {
+					messageDigest.update(bufferLease.array(), 0, read);
+				}
+				buffer.clear().limit(read);
+				writePending = true;
+				dst.write(buffer, position, null, this);
+			}
+		}
+		// not ready: container will invoke onDataAvailable() again as soon as more data can be read
+	}
+
+	@Override
+	public synchronized void completed(Integer written, Void attachment) {
+		if (finished) {
+			releaseAfterAbort();
+			return;
+		}
+		position += written;
+		if (buffer.hasRemaining()) {
+			dst.write(buffer, position, null, this);
+			return;
+		}
+		writePending = false;
+		if (allDataRead) {
+			commitAndFinish();
+		} else {
+			try {
+				// reading has been suspended while the write was pending:
+				readWhileReady();
+			} catch (IOException e) {
+				LOG.debug("Async upload failed.", e);
+				finish(false);
+			}
+		}
+	}
+
+	@Override
+	public synchronized void failed(Throwable exc, Void attachment) {
+		if (finished) {
+			releaseAfterAbort();
+			return;
+		}
+		LOG.warn("Failed to write uploaded file.", exc);
+		writePending = false;
+		finish(false);
+	}
+
+	@Override
+	public synchronized void onAllDataRead() {
+		allDataRead = true;
+		if (!writePending) {
+			commitAndFinish();
+		}
+	}
+
+	@Override
+	public synchronized void onError(Throwable t) {
+		LOG.debug("Async upload failed.", t);
+		finish(false);
+	}
+
+	private void commitAndFinish() {
+		byte[] digest = messageDigest != null ? messageDigest.digest() : null;
+		transaction.commit(digest).whenComplete((result, exception) -> {
+			synchronized (this) {
+				Throwable cause = exception instanceof CompletionException ? exception.getCause() : exception;
+				if (cause instanceof DavException) {
+					LOG.debug("Rejected uploaded file.", cause);
+					failureStatus = ((DavException) cause).getErrorCode();
+				} else if (cause != null) {
+					LOG.warn("Failed to commit uploaded file.", cause);
+				}
+				finish(cause == null);
+			}
+		});
+	}
+
+	private void releaseAfterAbort() {
+		writePending = false;
+		bufferLease.close();
+	}
+
+	private void finish(boolean success) {
+		if (finished) {
+			return;
+		}
+		finished = true;
+		try {
+			dst.close();
+		} catch (IOException e) {
+			LOG.warn("Failed to close file channel.", e);
+			success = false;
+		}
+		if (!writePending) {
+			bufferLease.close();
+		} // else: a write is still using the buffer, see releaseAfterAbort()
+		if (!success) {
+			transaction.rollback();
+		}
+		HttpServletResponse response = (HttpServletResponse) asyncContext.getResponse();
+		if (success) {
+			response.setStatus(successStatus);
+		} else if (!response.isCommitted()) {
+			response.setStatus(failureStatus);
+		}
+		asyncContext.complete();
+	}
+
+	/**
+	 * Decides about the fate of the written file.
+	 */
+	interface Transaction {
+
+		/**
+		 * Invoked once all bytes have been written, while the file channel is still open.
+		 *
+		 * @param digest The digest of the written bytes or <code>null</code> if no message digest has been passed to the uploader
+		 * @return A future completing as soon as the uploaded file is visible and durable, or failing with a {@link DavException} if the file is rejected
+		 */
+		CompletableFuture<Void> commit(byte[] digest);
+
+		/**
+		 * Invoked after the file channel has been closed, if the transfer or the commit failed.
+		 */
+		void rollback();
+
+	}
+
+}
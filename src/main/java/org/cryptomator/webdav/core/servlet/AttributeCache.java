@@ -0,0 +1,213 @@
+package org.cryptomator.webdav.core.servlet;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the attributes of recently accessed nodes for a short time, as clients tend to repeat the same PROPFIND requests every few seconds.
+ * <p>
+ * Entries are invalidated synchronously whenever this servlet modifies a node (see {@link DavResourceFactoryImpl#invalidate(Path)}).
+ * Modifications by other processes are detected by a {@link WatchService} on the directories containing cached nodes, if supported
+ * by the file system. Otherwise, or if too many directories would have to be watched, cached attributes may be outdated by up to the TTL.
+ */
+class AttributeCache implements Closeable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(AttributeCache.class);
+	private static final int MAX_ENTRIES = 10_000;
+	private static final int MAX_WATCHED_DIRECTORIES = 1024;
+
+	private final Cache<Path, BasicFileAttributes> cache;
+	private final Map<Path, WatchKey> watchedDirectories = new ConcurrentHashMap<>();
+	private final AtomicLong invalidations = new AtomicLong();
+	private volatile Path root;
+	private volatile WatchService watchService;
+
+	/**
+	 * @param ttlMillis Time in milliseconds after which cached attributes are read again. The cache is disabled if not positive.
+	 */
+	public AttributeCache(long ttlMillis) {
+		if (ttlMillis > 0) {
+			this.cache = CacheBuilder.newBuilder() //
+					.maximumSize(MAX_ENTRIES) //
+					.expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS) //
+					.build();
+		} else {
+			this.cache = null;
+		}
+	}
+
+	/**
+	 * Starts watching the directories below <code>root</code> for modifications by other processes. Directories are registered lazily,
+	 * as soon as attributes of their children are cached. Falls back to TTL-based expiry if the file system doesn't support watching.
+	 *
+	 * @param root The root of the served directory tree
+	 */
+	public synchronized void watch(Path root) {
+		if (cache == null || watchService != null) {
+			return;
+		}
+		try {
+			WatchService ws = root.getFileSystem().newWatchService();
+			Thread watcher = new ThreadFactoryBuilder().setNameFormat("webdav-attribute-watcher").setDaemon(true).build().newThread(() -> processEvents(ws));
+			this.root = root;
+			this.watchService = ws;
+			watcher.start();
+		} catch (IOException | UnsupportedOperationException e) {
+			LOG.debug("Watching {} not supported. Cached attributes will expire after their TTL only.", root, e);
+		}
+	}
+
+	/**
+	 * @param path A path
+	 * @return The cached attributes of the node or, if not cached, the result of {@link #load(Path)}
+	 * @throws IOException If reading attributes failed for other reasons than the node not existing
+	 */
+	public Optional<BasicFileAttributes> get(Path path) throws IOException {
+		BasicFileAttributes cached = cache == null ? null : cache.getIfPresent(path);
+		return cached != null ? Optional.of(cached) : load(path);
+	}
+
+	/**
+	 * Reads the current attributes of the node, bypassing and updating the cache. To be used whenever the attributes are used to
+	 * decide about a modification.
+	 *
+	 * @param path A path
+	 * @return The attributes of the node or {@link Optional#empty()} if it doesn't exist
+	 * @throws IOException If reading attributes failed for other reasons than the node not existing
+	 */
+	public Optional<BasicFileAttributes> load(Path path) throws IOException {
+		if (cache == null) {
+			return read(path);
+		}
+		// register before reading, so that no modification after reading goes unnoticed:
+		register(path.getParent());
+		long invalidationsBeforeRead = invalidations.get();
+		Optional<BasicFileAttributes> attr = read(path);
+		if (attr.isPresent()) {
+			if (attr.get().isDirectory()) {
+				register(path);
+			}
+			cache.put(path, attr.get());
+			if (invalidations.get() != invalidationsBeforeRead) {
+				// invalidated while reading, the attributes might predate the modification:
+				cache.invalidate(path);
+			}
+		} else {
+			cache.invalidate(path);
+		}
+		return attr;
+	}
+
+	// visible for testing
+	Optional<BasicFileAttributes> read(Path path) throws IOException {
+		try {
+			return Optional.of(Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
+		} catch (NoSuchFileException e) {
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Discards the cached attributes of the given path, its descendants and its parent, whose modification time changes along with its members.
+	 *
+	 * @param path A created, modified, moved or deleted path
+	 */
+	public void invalidate(Path path) {
+		if (cache != null) {
+			// counted before removing, so that any entry put by a concurrent load() is either removed here or by load() itself:
+			invalidations.incrementAndGet();
+			Path parent = path.getParent();
+			cache.asMap().keySet().removeIf(p -> p.startsWith(path) || p.equals(parent));
+		}
+	}
+
+	/**
+	 * @return Number of directories currently watched for modifications
+	 */
+	int getWatchedDirectoryCount() {
+		return watchedDirectories.size();
+	}
+
+	private void register(Path dir) {
+		WatchService ws = watchService;
+		if (ws == null || dir == null || !dir.startsWith(root) || watchedDirectories.containsKey(dir) || watchedDirectories.size() >= MAX_WATCHED_DIRECTORIES) {
+			return;
+		}
+		try {
+			watchedDirectories.computeIfAbsent(dir, d -> {
+				try {
+					return d.register(ws, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException | ClosedWatchServiceException | UnsupportedOperationException e) {
+			LOG.debug("Failed to watch {}.", dir, e);
+		}
+	}
+
+	private void processEvents(WatchService ws) {
+		try {
+			while (true) {
+				WatchKey key = ws.take();
+				Path dir = (Path) key.watchable();
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						// events lost, everything in this directory might have changed:
+						cache.asMap().keySet().removeIf(p -> p.startsWith(dir));
+					} else {
+						invalidate(dir.resolve((Path) event.context()));
+					}
+				}
+				if (!key.reset()) {
+					// directory deleted or no longer accessible
+					watchedDirectories.remove(dir, key);
+					invalidate(dir);
+				}
+			}
+		} catch (ClosedWatchServiceException e) {
+			// closed
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void close() {
+		WatchService ws = watchService;
+		if (ws != null) {
+			try {
+				ws.close();
+			} catch (IOException e) {
+				LOG.warn("Failed to close watch service.", e);
+			}
+		}
+		watchedDirectories.clear();
+		if (cache != null) {
+			cache.invalidateAll();
+		}
+	}
+
+}
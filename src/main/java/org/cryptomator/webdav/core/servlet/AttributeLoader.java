@@ -0,0 +1,85 @@
+package org.cryptomator.webdav.core.servlet;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Reads the attributes of many nodes, e.g. all members of a directory, using a bounded number of threads.
+ * On file systems where each read takes a noticeable amount of time, e.g. encrypted or network-backed ones, this reduces the time to list a directory.
+ * <p>
+ * The executor is shared by all requests, so the total number of concurrent reads is bounded by the configured parallelism.
+ */
+class AttributeLoader implements Closeable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(AttributeLoader.class);
+	private static final int MIN_PARALLEL_COUNT = 16;
+
+	private final AttributeCache attributeCache;
+	private final ExecutorService executor;
+
+	/**
+	 * @param attributeCache Cache used to read attributes
+	 * @param parallelism Maximum number of attributes read concurrently. Attributes are read sequentially by the calling thread if less than 2.
+	 */
+	public AttributeLoader(AttributeCache attributeCache, int parallelism) {
+		this.attributeCache = attributeCache;
+		if (parallelism > 1) {
+			this.executor = Executors.newFixedThreadPool(parallelism, new ThreadFactoryBuilder().setNameFormat("webdav-attributes-%d").setDaemon(true).build());
+		} else {
+			this.executor = null;
+		}
+	}
+
+	/**
+	 * Reads the attributes of the given paths. Nodes whose attributes can not be read are skipped, i.e. treated as if they didn't exist.
+	 *
+	 * @param paths Paths to read attributes of
+	 * @return The attributes of each path in the same order, empty if the node doesn't exist or its attributes can not be read
+	 */
+	public List<Optional<BasicFileAttributes>> load(List<Path> paths) {
+		List<Optional<BasicFileAttributes>> result = new ArrayList<>(paths.size());
+		if (executor == null || paths.size() < MIN_PARALLEL_COUNT) {
+			for (Path path : paths) {
+				result.add(load(path));
+			}
+		} else {
+			List<CompletableFuture<Optional<BasicFileAttributes>>> futures = new ArrayList<>(paths.size());
+			for (Path path : paths) {
+				futures.add(CompletableFuture.supplyAsync(() -> load(path), executor));
+			}
+			for (CompletableFuture<Optional<BasicFileAttributes>> future : futures) {
+				result.add(future.join());
+			}
+		}
+		return result;
+	}
+
+	private Optional<BasicFileAttributes> load(Path path) {
+		try {
+			return attributeCache.get(path);
+		} catch (IOException e) {
+			LOG.error("Exception while reading attributes of {}. Skipping file in listing.", path, e);
+			return Optional.empty();
+		}
+	}
+
+	@Override
+	public void close() {
+		if (executor != null) {
+			executor.shutdown();
+		}
+	}
+
+}
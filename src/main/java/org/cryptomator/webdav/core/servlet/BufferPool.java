@@ -0,0 +1,164 @@
+package org.cryptomator.webdav.core.servlet;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Bounded pool of transfer buffers shared by all copy loops.
+ * <p>
+ * Buffers are grouped into size classes, each twice the size of the previous one, ranging from {@value #MIN_BUFFER_SIZE} bytes to the configured maximum buffer size.
+ * A transfer gets the smallest buffer that fits the number of bytes to be copied. Each size class keeps up to an equal share of the configured pool size in idle buffers,
+ * surplus buffers are left to the garbage collector.
+ * <p>
+ * Buffers are array-backed, as all copy loops have a servlet stream on at least one side, which only accepts byte arrays.
+ */
+class BufferPool {
+
+	static final int MIN_BUFFER_SIZE = 8 * 1024;
+
+	private final List<SizeClass> sizeClasses = new ArrayList<>();
+
+	/**
+	 * @param maxBufferSize Size of the largest buffers, rounded up to the next size class
+	 * @param poolSize Maximum number of bytes held in idle buffers, summed up over all size classes. Buffers are not pooled if not positive.
+	 */
+	public BufferPool(int maxBufferSize, long poolSize) {
+		int numClasses = 1;
+		while ((MIN_BUFFER_SIZE << (numClasses - 1)) < maxBufferSize && (MIN_BUFFER_SIZE << numClasses) > 0) {
+			numClasses++;
+		}
+		long poolSizePerClass = Math.max(poolSize, 0) / numClasses;
+		for (int i = 0; i < numClasses; i++) {
+			int bufferSize = MIN_BUFFER_SIZE << i;
+			sizeClasses.add(new SizeClass(bufferSize, (int) Math.min(poolSizePerClass / bufferSize, Integer.MAX_VALUE)));
+		}
+	}
+
+	/**
+	 * Takes a buffer from the pool or allocates a new one, if no idle buffer is available. The buffer must be returned by {@link Lease#close() closing} the lease.
+	 *
+	 * @param expectedLength Number of bytes that are going to be copied, used to choose the size class
+	 * @return A lease on a cleared buffer
+	 */
+	public Lease acquire(long expectedLength) {
+		for (SizeClass sizeClass : sizeClasses) {
+			if (sizeClass.bufferSize >= expectedLength) {
+				return sizeClass.acquire();
+			}
+		}
+		return sizeClasses.get(sizeClasses.size() - 1).acquire();
+	}
+
+	/**
+	 * @return Size of the largest buffers handed out by this pool
+	 */
+	public int getMaxBufferSize() {
+		return sizeClasses.get(sizeClasses.size() - 1).bufferSize;
+	}
+
+	/**
+	 * @return One line per size class, stating how many buffers have been acquired, how many of these had to be allocated and how many are currently in use
+	 */
+	public String getStatistics() {
+		return sizeClasses.stream().map(SizeClass::toString).collect(Collectors.joining("\n"));
+	}
+
+	List<SizeClass> getSizeClasses() {
+		return sizeClasses;
+	}
+
+	static class SizeClass {
+
+		private final int bufferSize;
+		private final Queue<ByteBuffer> idleBuffers;
+		private final LongAdder acquireCount = new LongAdder();
+		private final LongAdder allocateCount = new LongAdder();
+		private final AtomicInteger inUse = new AtomicInteger();
+
+		private SizeClass(int bufferSize, int maxIdleBuffers) {
+			this.bufferSize = bufferSize;
+			this.idleBuffers = maxIdleBuffers > 0 ? new ArrayBlockingQueue<>(maxIdleBuffers) : null;
+		}
+
+		private Lease acquire() {
+			acquireCount.increment();
+			inUse.incrementAndGet();
+			ByteBuffer buffer = idleBuffers == null ? null : idleBuffers.poll();
+			if (buffer == null) {
+				allocateCount.increment();
+				buffer = ByteBuffer.allocate(bufferSize);
+			}
+			buffer.clear();
+			return new Lease(this, buffer);
+		}
+
+		private void release(ByteBuffer buffer) {
+			inUse.decrementAndGet();
+			if (idleBuffers != null) {
+				idleBuffers.offer(buffer); // if the pool is full, the buffer is left to the GC
+			}
+		}
+
+		int getBufferSize() {
+			return bufferSize;
+		}
+
+		long getAcquireCount() {
+			return acquireCount.sum();
+		}
+
+		long getAllocateCount() {
+			return allocateCount.sum();
+		}
+
+		int getInUse() {
+			return inUse.get();
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d bytes: %d acquired, %d allocated, %d in use", bufferSize, getAcquireCount(), getAllocateCount(), getInUse());
+		}
+
+	}
+
+	/**
+	 * A buffer borrowed from the pool. Must not be used after closing.
+	 */
+	static class Lease implements Closeable {
+
+		private final SizeClass sizeClass;
+		private final ByteBuffer buffer;
+		private boolean released;
+
+		private Lease(SizeClass sizeClass, ByteBuffer buffer) {
+			this.sizeClass = sizeClass;
+			this.buffer = buffer;
+		}
+
+		public ByteBuffer buffer() {
+			return buffer;
+		}
+
+		public byte[] array() {
+			return buffer.array();
+		}
+
+		@Override
+		public void close() {
+			if (!released) {
+				released = true;
+				sizeClass.release(buffer);
+			}
+		}
+
+	}
+
+}
@@ -8,6 +8,8 @@ package org.cryptomator.webdav.core.servlet;
 import com.google.common.base.CharMatcher;
 import com.google.common.base.Splitter;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -17,23 +19,24 @@ import java.util.List;
  * <code>
  * bytes=100-200<br/>
  * bytes=-500<br/>
- * bytes=1000-
+ * bytes=1000-<br/>
+ * bytes=0-99,200-299,-100
  * </code>
  */
 class ByteRange {
 
 	private static final String RANGE_BYTE_PREFIX = "bytes=";
+	private static final String CONTENT_RANGE_BYTE_PREFIX = "bytes ";
+	private static final char CONTENT_RANGE_LENGTH_SEP = '/';
+	private static final String UNKNOWN_COMPLETE_LENGTH = "*";
 	private static final char RANGE_SET_SEP = ',';
 	private static final char RANGE_SEP = '-';
+	private static final Splitter RANGE_SET_SPLITTER = Splitter.on(RANGE_SET_SEP).trimResults().omitEmptyStrings();
 
 	private final Long firstByte;
 	private final Long lastByte;
 
-	private ByteRange(Long firstByte, Long lastByte) throws MalformedByteRangeException {
-		if (firstByte == null && lastByte == null || //
-				firstByte != null && lastByte != null && firstByte > lastByte) {
-			throw new MalformedByteRangeException();
-		}
+	private ByteRange(Long firstByte, Long lastByte) {
 		this.firstByte = firstByte;
 		this.lastByte = lastByte;
 	}
@@ -44,24 +47,102 @@ class ByteRange {
 	 * @throws MalformedByteRangeException thrown if the range is syntactically malformed (client should be informed about a bad request)
 	 */
 	public static ByteRange parse(String headerValue) throws UnsupportedRangeException, MalformedByteRangeException {
-		if (!headerValue.startsWith(RANGE_BYTE_PREFIX)) {
-			throw new UnsupportedRangeException();
+		final List<ByteRange> byteRanges = parseSet(headerValue);
+		if (byteRanges.size() == 1) {
+			return byteRanges.get(0);
+		} else {
+			throw new UnsupportedRangeException(); // only a single range is expected
 		}
-		final String byteRangeStr = getSingleByteRange(headerValue);
-		return getPositions(byteRangeStr);
 	}
 
-	private static String getSingleByteRange(String headerValue) throws UnsupportedRangeException, MalformedByteRangeException {
+	/**
+	 * @param headerValue The raw HTTP header value (i.e. without the key, e.g. <code>bytes=100-200,300-400</code>)
+	 * @return All ranges of the range set in the order they were requested
+	 * @throws UnsupportedRangeException thrown if the range unit is not supported by this implementation (range header should be ignored)
+	 * @throws MalformedByteRangeException thrown if any range is syntactically malformed (client should be informed about a bad request)
+	 */
+	public static List<ByteRange> parseSet(String headerValue) throws UnsupportedRangeException, MalformedByteRangeException {
+		if (!headerValue.startsWith(RANGE_BYTE_PREFIX)) {
+			throw new UnsupportedRangeException();
+		}
 		final String byteRangeSet = headerValue.substring(RANGE_BYTE_PREFIX.length());
 		if (CharMatcher.whitespace().matchesAllOf(byteRangeSet)) {
 			throw new MalformedByteRangeException(); // empty string
 		}
-		List<String> byteRanges = Splitter.on(RANGE_SET_SEP).omitEmptyStrings().splitToList(byteRangeSet);
-		if (byteRanges.size() == 1) {
-			return byteRanges.get(0);
-		} else {
-			throw new UnsupportedRangeException(); // only a single range is expected
+		List<ByteRange> result = new ArrayList<>();
+		for (String byteRangeStr : RANGE_SET_SPLITTER.split(byteRangeSet)) {
+			result.add(getPositions(byteRangeStr));
+		}
+		return result;
+	}
+
+	/**
+	 * Parses the <code>Content-Range</code> header of a partial upload, e.g. <code>bytes 100-199/1000</code> or <code>bytes 100-199/*</code>.
+	 *
+	 * @param headerValue The raw HTTP header value (i.e. without the key)
+	 * @return A closed range, i.e. both {@link #getEffectiveFirstByte(long)} and {@link #getEffectiveLastByte(long)} return the transmitted positions regardless of the content length
+	 * @throws UnsupportedRangeException thrown if the range unit is not supported by this implementation
+	 * @throws MalformedByteRangeException thrown if the range is syntactically malformed or the last byte is not within the complete length
+	 * @see <a href="https://tools.ietf.org/html/rfc7233#section-4.2">RFC 7233 Section 4.2</a>
+	 */
+	public static ByteRange parseContentRange(String headerValue) throws UnsupportedRangeException, MalformedByteRangeException {
+		if (!headerValue.startsWith(CONTENT_RANGE_BYTE_PREFIX)) {
+			throw new UnsupportedRangeException();
+		}
+		final List<String> rangeAndLength = Splitter.on(CONTENT_RANGE_LENGTH_SEP).trimResults().splitToList(headerValue.substring(CONTENT_RANGE_BYTE_PREFIX.length()));
+		if (rangeAndLength.size() != 2) {
+			throw new MalformedByteRangeException();
+		}
+		final ByteRange range = getPositions(rangeAndLength.get(0));
+		if (range.firstByte == null || range.lastByte == null) {
+			throw new MalformedByteRangeException(); // only closed ranges are allowed
+		}
+		if (!UNKNOWN_COMPLETE_LENGTH.equals(rangeAndLength.get(1))) {
+			try {
+				if (range.lastByte >= Long.parseLong(rangeAndLength.get(1))) {
+					throw new MalformedByteRangeException();
+				}
+			} catch (NumberFormatException e) {
+				throw new MalformedByteRangeException();
+			}
+		}
+		return range;
+	}
+
+	/**
+	 * Resolves the given ranges against the actual content length, discards unsatisfiable ranges and merges overlapping or adjacent ones.
+	 *
+	 * @param byteRanges Ranges as requested by the client
+	 * @param contentLength Total size of the resource of which the ranges are requested.
+	 * @return Closed, non-overlapping ranges in ascending order. Empty if none of the given ranges is satisfiable.
+	 * @see <a href="https://tools.ietf.org/html/rfc7233#section-4.1">RFC 7233 Section 4.1</a>
+	 */
+	public static List<ByteRange> coalesce(List<ByteRange> byteRanges, long contentLength) {
+		List<ByteRange> satisfiable = new ArrayList<>();
+		for (ByteRange range : byteRanges) {
+			long first = range.getEffectiveFirstByte(contentLength);
+			long last = range.getEffectiveLastByte(contentLength);
+			if (first < contentLength && first <= last) {
+				satisfiable.add(new ByteRange(first, last));
+			}
+		}
+		satisfiable.sort(Comparator.comparingLong(r -> r.firstByte));
+		List<ByteRange> result = new ArrayList<>();
+		ByteRange current = null;
+		for (ByteRange range : satisfiable) {
+			if (current == null) {
+				current = range;
+			} else if (range.firstByte <= current.lastByte + 1) {
+				current = new ByteRange(current.firstByte, Math.max(current.lastByte, range.lastByte));
+			} else {
+				result.add(current);
+				current = range;
+			}
+		}
+		if (current != null) {
+			result.add(current);
 		}
+		return result;
 	}
 
 	private static ByteRange getPositions(String byteRangeStr) throws MalformedByteRangeException {
@@ -72,6 +153,9 @@ class ByteRange {
 		try {
 			Long first = bytePos.get(0).isEmpty() ? null : Long.valueOf(bytePos.get(0));
 			Long last = bytePos.get(1).isEmpty() ? null : Long.valueOf(bytePos.get(1));
+			if (first == null && last == null || first != null && last != null && first > last) {
+				throw new MalformedByteRangeException();
+			}
 			return new ByteRange(first, last);
 		} catch (NumberFormatException e) {
 			throw new MalformedByteRangeException();
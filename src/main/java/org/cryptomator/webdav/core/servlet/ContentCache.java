@@ -0,0 +1,150 @@
+package org.cryptomator.webdav.core.servlet;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded in-memory cache holding the first bytes of recently read files.
+ * <p>
+ * For each file up to <code>maxEntrySize</code> bytes are cached, i.e. small files are cached completely, larger files only partially ("file head").
+ * Requests that can be served entirely from these bytes don't touch the file system. Entries are weighted by their size and evicted in LRU order.
+ * An entry is only used as long as size and modification time of the file match the ones recorded when the entry was loaded.
+ */
+class ContentCache {
+
+	private static final int ENTRY_OVERHEAD = 128;
+
+	private final int maxEntrySize;
+	private final Cache<Path, Entry> cache;
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+
+	/**
+	 * @param capacity Maximum number of bytes held by this cache. The cache is disabled if not positive.
+	 * @param maxEntrySize Maximum number of bytes cached per file
+	 */
+	public ContentCache(long capacity, int maxEntrySize) {
+		this.maxEntrySize = maxEntrySize;
+		if (capacity > 0 && maxEntrySize > 0) {
+			this.cache = CacheBuilder.newBuilder() //
+					.maximumWeight(capacity) //
+					.weigher((Path path, Entry entry) -> ENTRY_OVERHEAD + entry.content.length) //
+					.build();
+		} else {
+			this.cache = null;
+		}
+	}
+
+	/**
+	 * @param attr Current attributes of a file
+	 * @param position Index of the first requested byte
+	 * @param count Number of requested bytes
+	 * @return <code>true</code> if the requested bytes can be served by this cache
+	 */
+	public boolean isApplicable(BasicFileAttributes attr, long position, long count) {
+		return cache != null && position >= 0 && position + count <= Math.min(attr.size(), maxEntrySize);
+	}
+
+	/**
+	 * Writes <code>count</code> bytes starting at <code>position</code> to the given output stream, loading the file head if required.
+	 *
+	 * @param path The file to read from
+	 * @param attr Current attributes of the file
+	 * @param position Index of the first byte to be written
+	 * @param count Number of bytes to be written
+	 * @param out Destination of the written bytes
+	 * @return <code>false</code> if the requested bytes are not {@link #isApplicable(BasicFileAttributes, long, long) applicable} and nothing has been written
+	 * @throws IOException If reading from the file or writing to the output stream fails
+	 */
+	public boolean transfer(Path path, BasicFileAttributes attr, long position, long count, OutputStream out) throws IOException {
+		if (!isApplicable(attr, position, count)) {
+			return false;
+		}
+		Entry entry = cache.getIfPresent(path);
+		if (entry != null && entry.isValidFor(attr)) {
+			hitCount.increment();
+		} else {
+			missCount.increment();
+			entry = load(path, attr);
+		}
+		out.write(entry.content, (int) position, (int) count);
+		return true;
+	}
+
+	private Entry load(Path path, BasicFileAttributes attr) throws IOException {
+		int length = (int) Math.min(attr.size(), maxEntrySize);
+		ByteBuffer buf = ByteBuffer.allocate(length);
+		try (SeekableByteChannel ch = Files.newByteChannel(path, StandardOpenOption.READ)) {
+			while (buf.hasRemaining()) {
+				if (ch.read(buf) == -1) {
+					throw new IOException("Unexpected EOF in " + path);
+				}
+			}
+		}
+		Entry entry = new Entry(buf.array(), attr);
+		// only cache the content if the file didn't change while reading it:
+		BasicFileAttributes attrAfterLoad = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+		if (entry.isValidFor(attrAfterLoad)) {
+			cache.put(path, entry);
+		}
+		return entry;
+	}
+
+	/**
+	 * Discards all cached contents of the given path and its descendants.
+	 *
+	 * @param path A modified or deleted path
+	 */
+	public void invalidate(Path path) {
+		if (cache != null) {
+			cache.asMap().keySet().removeIf(p -> p.startsWith(path));
+		}
+	}
+
+	/**
+	 * @return Number of requests served from cached contents
+	 */
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	/**
+	 * @return Number of requests that required reading the file
+	 */
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	private static class Entry {
+
+		private final byte[] content;
+		private final long size;
+		private final long lastModified;
+		private final Object fileKey;
+
+		private Entry(byte[] content, BasicFileAttributes attr) {
+			this.content = content;
+			this.size = attr.size();
+			this.lastModified = attr.lastModifiedTime().toMillis();
+			this.fileKey = attr.fileKey();
+		}
+
+		private boolean isValidFor(BasicFileAttributes attr) {
+			return size == attr.size() && lastModified == attr.lastModifiedTime().toMillis() && Objects.equals(fileKey, attr.fileKey());
+		}
+
+	}
+
+}
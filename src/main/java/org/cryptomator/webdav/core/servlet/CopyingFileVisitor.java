@@ -16,11 +16,13 @@ class CopyingFileVisitor extends SimpleFileVisitor<Path> {
 
 	private final Path srcDir;
 	private final Path dstDir;
+	private final FileDigests fileDigests;
 	private final CopyOption[] options;
 
-	public CopyingFileVisitor(Path srcDir, Path dstDir, CopyOption... options) {
+	public CopyingFileVisitor(Path srcDir, Path dstDir, FileDigests fileDigests, CopyOption... options) {
 		this.srcDir = srcDir;
 		this.dstDir = dstDir;
+		this.fileDigests = fileDigests;
 		this.options = options;
 	}
 
@@ -34,9 +36,13 @@ class CopyingFileVisitor extends SimpleFileVisitor<Path> {
 
 	@Override
 	public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+		if (StagingFiles.isStagingFile(file)) {
+			return FileVisitResult.CONTINUE; // upload in progress
+		}
 		Path relativePath = srcDir.relativize(file);
 		Path resolvedPath = dstDir.resolve(relativePath);
 		Files.copy(file, resolvedPath, options);
+		fileDigests.copy(file, resolvedPath);
 		return FileVisitResult.CONTINUE;
 	}
 
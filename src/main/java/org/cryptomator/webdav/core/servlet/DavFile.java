@@ -9,6 +9,7 @@
 package org.cryptomator.webdav.core.servlet;
 
 import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
 import org.apache.jackrabbit.webdav.*;
 import org.apache.jackrabbit.webdav.io.InputContext;
 import org.apache.jackrabbit.webdav.io.OutputContext;
@@ -17,19 +18,29 @@ import org.apache.jackrabbit.webdav.lock.LockInfo;
 import org.apache.jackrabbit.webdav.lock.LockManager;
 import org.apache.jackrabbit.webdav.property.DavProperty;
 import org.apache.jackrabbit.webdav.property.DavPropertyName;
-import org.apache.jackrabbit.webdav.property.DavPropertySet;
 import org.apache.jackrabbit.webdav.property.DefaultDavProperty;
+import org.apache.jackrabbit.webdav.xml.Namespace;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
 
 class DavFile extends DavNode {
 
@@ -40,6 +51,8 @@ class DavFile extends DavNode {
 	protected static final String CONTENT_DISPOSITION_VALUE = "attachment";
 	protected static final String X_CONTENT_TYPE_OPTIONS_HEADER = "X-Content-Type-Options";
 	protected static final String X_CONTENT_TYPE_OPTIONS_VALUE = "nosniff";
+	protected static final String CONTENT_DIGEST_HEADER = "Content-Digest";
+	static final DavPropertyName PROPERTY_DIGEST = DavPropertyName.create("digest", Namespace.getNamespace("cm", "https://cryptomator.org/ns/webdav"));
 
 	public DavFile(DavResourceFactoryImpl factory, LockManager lockManager, DavLocatorImpl locator, Path path, Optional<BasicFileAttributes> attr, DavSession session) {
 		super(factory, lockManager, locator, path, attr, session);
@@ -53,15 +66,156 @@ class DavFile extends DavNode {
 	@Override
 	public void spool(OutputContext outputContext) throws IOException {
 		assert exists();
-		outputContext.setModificationTime(attr.get().lastModifiedTime().toMillis());
+		setValidators(outputContext);
 		if (!outputContext.hasStream()) {
 			return;
 		}
+		setContentHeaders(outputContext);
+		setDigestHeader(outputContext);
+		spoolContent(0, attr.get().size(), outputContext.getOutputStream());
+	}
+
+	/**
+	 * @return <code>true</code> if {@link #spoolAsync(OutputContext, ServletOutputStream, Supplier)} can be used instead of {@link #spool(OutputContext)}
+	 */
+	boolean isAsyncSpoolSupported() {
+		return true;
+	}
+
+	/**
+	 * Non-blocking variant of {@link #spool(OutputContext)}. Sets the same response headers, but the content is transferred
+	 * by an {@link AsyncFileSpooler} after the request has been put into asynchronous mode. The file is opened before, so failing to open it
+	 * results in a regular error response.
+	 *
+	 * @param outputContext Context used to set response headers
+	 * @param out The response's output stream
+	 * @param asyncContextStarter Puts the current request into asynchronous mode
+	 * @throws IOException If the file can not be opened
+	 */
+	void spoolAsync(OutputContext outputContext, ServletOutputStream out, Supplier<AsyncContext> asyncContextStarter) throws IOException {
+		assert exists();
+		if (factory.getContentCache().isApplicable(attr.get(), 0, attr.get().size())) {
+			// cached content is written without blocking on the file system
+			spool(outputContext);
+			return;
+		}
+		setValidators(outputContext);
+		setContentHeaders(outputContext);
+		setDigestHeader(outputContext);
+		FileHandleCache.Handle handle = factory.getFileHandleCache().open(path, attr.get());
+		try {
+			AsyncFileSpooler.start(handle, 0, attr.get().size(), asyncContextStarter, out, factory.getBufferPool());
+		} catch (IOException | RuntimeException e) {
+			handle.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Sets the <code>Last-Modified</code> and <code>ETag</code> headers.
+	 */
+	protected void setValidators(OutputContext outputContext) {
+		outputContext.setModificationTime(attr.get().lastModifiedTime().toMillis());
+		outputContext.setETag(getETag());
+	}
+
+	/**
+	 * @return The strong entity tag of this file or <code>null</code> if it doesn't exist
+	 */
+	String getETag() {
+		return attr.map(ETag::of).orElse(null);
+	}
+
+	private void setContentHeaders(OutputContext outputContext) {
 		outputContext.setContentType(CONTENT_TYPE_VALUE);
 		outputContext.setProperty(CONTENT_DISPOSITION_HEADER, CONTENT_DISPOSITION_VALUE);
 		outputContext.setProperty(X_CONTENT_TYPE_OPTIONS_HEADER, X_CONTENT_TYPE_OPTIONS_VALUE);
 		outputContext.setContentLength(attr.get().size());
-		Files.copy(path, outputContext.getOutputStream());
+	}
+
+	/**
+	 * Sets the <code>Content-Digest</code> header, if a valid digest of the complete file has been stored during upload.
+	 */
+	private void setDigestHeader(OutputContext outputContext) {
+		FileDigests fileDigests = factory.getFileDigests();
+		fileDigests.load(path, attr.get()).ifPresent(digest -> outputContext.setProperty(CONTENT_DIGEST_HEADER, fileDigests.toContentDigest(digest)));
+	}
+
+	/**
+	 * Writes <code>count</code> bytes starting at <code>position</code> to the given output stream.
+	 * Small files and file heads may be served from the {@link ContentCache}, other reads are copied from a channel of the {@link FileHandleCache}
+	 * using a pooled buffer.
+	 *
+	 * @param position Index of the first byte to be written
+	 * @param count Maximum number of bytes to be written
+	 * @param out Destination of the written bytes
+	 * @throws IOException If reading from the file or writing to the output stream fails
+	 */
+	protected void spoolContent(long position, long count, OutputStream out) throws IOException {
+		if (factory.getContentCache().transfer(path, attr.get(), position, count, out)) {
+			return;
+		}
+		try (FileHandleCache.Handle handle = factory.getFileHandleCache().open(path, attr.get())) {
+			spoolContent(handle.channel(), position, count, out);
+		}
+	}
+
+	/**
+	 * Same as {@link #spoolContent(long, long, OutputStream)} but reads from an already opened channel,
+	 * allowing multiple regions to be written without reopening the file.
+	 * The position of a {@link FileChannel} is left untouched, so it can be shared with concurrent readers.
+	 */
+	protected void spoolContent(SeekableByteChannel src, long position, long count, OutputStream out) throws IOException {
+		if (!(src instanceof FileChannel)) {
+			src.position(position); // unshared channel
+		}
+		try (BufferPool.Lease lease = factory.getBufferPool().acquire(count)) {
+			ByteBuffer buf = lease.buffer();
+			long transferred = 0;
+			while (transferred < count) {
+				buf.clear().limit((int) Math.min(buf.capacity(), count - transferred));
+				int n = src instanceof FileChannel ? ((FileChannel) src).read(buf, position + transferred) : src.read(buf);
+				if (n == -1) {
+					break; // EOF (file shrunk since its size has been read)
+				}
+				out.write(lease.array(), 0, n);
+				transferred += n;
+			}
+		}
+	}
+
+	/**
+	 * Overwrites a part of this file with the request body of a partial PUT, creating the file if it doesn't exist yet.
+	 * Bytes outside of the given range remain unchanged, writing beyond the end of the file extends it.
+	 *
+	 * @param range The range to write, as parsed from the <code>Content-Range</code> header
+	 * @param in The request body
+	 * @throws DavException If the request body is shorter than the range or the file can not be written
+	 */
+	public void writeRange(ByteRange range, InputStream in) throws DavException {
+		// a content range is always closed, the content length doesn't matter:
+		long position = range.getEffectiveFirstByte(Long.MAX_VALUE);
+		long length = range.getEffectiveLastByte(Long.MAX_VALUE) - position + 1;
+		factory.invalidate(path);
+		try (SeekableByteChannel dst = Files.newByteChannel(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			dst.position(position);
+			long written = factory.getPipelinedUpload().copy(ByteStreams.limit(in, length), dst, length);
+			if (written < length) {
+				throw new DavException(DavServletResponse.SC_BAD_REQUEST, "Request body shorter than Content-Range.");
+			}
+			factory.getDurability().commitAndWait(Durability.of(dst), path.getParent());
+		} catch (FileSystemException e) {
+			String reason = Strings.nullToEmpty(e.getReason());
+			if (reason.contains("path too long")) {
+				throw new DavException(DavServletResponse.SC_REQUEST_URI_TOO_LONG);
+			} else {
+				throw new UncheckedIOException(e);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			factory.invalidate(path);
+		}
 	}
 
 	@Override
@@ -88,7 +242,11 @@ class DavFile extends DavNode {
 			}
 			try {
 				// Overwrite header already checked by AbstractWebdavServlet#validateDestination
+				factory.invalidate(path);
+				factory.invalidate(dst.path);
 				Files.move(path, dst.path, StandardCopyOption.REPLACE_EXISTING);
+				factory.invalidate(path);
+				factory.invalidate(dst.path);
 			} catch (FileSystemException e) {
 				String reason = Strings.nullToEmpty(e.getReason());
 				if (reason.contains("too long")) {
@@ -116,7 +274,10 @@ class DavFile extends DavNode {
 			}
 			try {
 				// Overwrite header already checked by AbstractWebdavServlet#validateDestination
+				factory.invalidate(dst.path);
 				Files.copy(path, dst.path, StandardCopyOption.REPLACE_EXISTING);
+				factory.getFileDigests().copy(path, dst.path);
+				factory.invalidate(dst.path);
 			} catch (FileSystemException e) {
 				String reason = Strings.nullToEmpty(e.getReason());
 				if (reason.contains("path too long")) {
@@ -139,24 +300,38 @@ class DavFile extends DavNode {
 	public DavProperty<?> getProperty(DavPropertyName name) {
 		if (DavPropertyName.GETCONTENTLENGTH.equals(name)) {
 			return sizeProperty().orElse(null);
+		} else if (DavPropertyName.GETETAG.equals(name)) {
+			return etagProperty().orElse(null);
+		} else if (PROPERTY_DIGEST.equals(name)) {
+			// not part of allprop responses, as reading it requires an additional system call per file
+			return digestProperty().orElse(null);
 		} else {
 			return super.getProperty(name);
 		}
 	}
 
 	@Override
-	public DavPropertySet getProperties() {
-		final DavPropertySet result = super.getProperties();
-		if (!result.contains(DavPropertyName.GETCONTENTLENGTH)) {
-			sizeProperty().ifPresent(result::add);
+	protected void addAllPropNames(Set<DavPropertyName> names) {
+		super.addAllPropNames(names);
+		if (exists()) {
+			names.add(DavPropertyName.GETCONTENTLENGTH);
+			names.add(DavPropertyName.GETETAG);
 		}
-		return result;
 	}
 
 	private Optional<DavProperty<?>> sizeProperty() {
 		return attr.map(a -> new DefaultDavProperty<Long>(DavPropertyName.GETCONTENTLENGTH, a.size()));
 	}
 
+	private Optional<DavProperty<?>> etagProperty() {
+		return attr.map(a -> new DefaultDavProperty<String>(DavPropertyName.GETETAG, ETag.of(a)));
+	}
+
+	private Optional<DavProperty<?>> digestProperty() {
+		FileDigests fileDigests = factory.getFileDigests();
+		return attr.flatMap(a -> fileDigests.load(path, a)).map(digest -> new DefaultDavProperty<String>(PROPERTY_DIGEST, fileDigests.toContentDigest(digest)));
+	}
+
 	@Override
 	public ActiveLock lock(LockInfo reqLockInfo) throws DavException {
 		ActiveLock lock = super.lock(reqLockInfo);
@@ -0,0 +1,92 @@
+package org.cryptomator.webdav.core.servlet;
+
+import com.google.common.base.Preconditions;
+import org.apache.jackrabbit.webdav.DavSession;
+import org.apache.jackrabbit.webdav.io.OutputContext;
+import org.apache.jackrabbit.webdav.lock.LockManager;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Delivers multiple ranges of bytes from a file as a <code>multipart/byteranges</code> response.
+ * Each part is streamed directly from the file, the parts are not buffered.
+ *
+ * @see <a href="https://tools.ietf.org/html/rfc7233#section-4.1"/>RFC 7233 Section 4.1</a>
+ * @see <a href="https://tools.ietf.org/html/rfc7233#appendix-A"/>RFC 7233 Appendix A</a>
+ */
+class DavFileWithMultipleRanges extends DavFile {
+
+	private static final String MULTIPART_CONTENT_TYPE_VALUE = "multipart/byteranges; boundary=";
+	private static final String CRLF = "\r\n";
+
+	private final List<ByteRange> reqRanges;
+	private final String boundary;
+
+	/**
+	 * @param byteRanges Closed, non-overlapping and satisfiable ranges as returned by {@link ByteRange#coalesce(List, long)}
+	 */
+	public DavFileWithMultipleRanges(DavResourceFactoryImpl factory, LockManager lockManager, DavLocatorImpl locator, Path path, BasicFileAttributes attr, DavSession session, List<ByteRange> byteRanges) {
+		super(factory, lockManager, locator, path, Optional.of(attr), session);
+		Preconditions.checkArgument(byteRanges.size() > 1, "Requires multiple ranges");
+		this.reqRanges = List.copyOf(byteRanges);
+		this.boundary = UUID.randomUUID().toString();
+	}
+
+	@Override
+	public void spool(OutputContext outputContext) throws IOException {
+		assert exists();
+		setValidators(outputContext);
+		if (!outputContext.hasStream()) {
+			return;
+		}
+		final long contentLength = attr.get().size();
+		final byte[][] partHeaders = new byte[reqRanges.size()][];
+		final byte[] closingDelimiter = ("--" + boundary + "--" + CRLF).getBytes(StandardCharsets.US_ASCII);
+		long multipartLength = closingDelimiter.length;
+		for (int i = 0; i < reqRanges.size(); i++) {
+			ByteRange range = reqRanges.get(i);
+			long firstByte = range.getEffectiveFirstByte(contentLength);
+			long lastByte = range.getEffectiveLastByte(contentLength);
+			partHeaders[i] = partHeader(firstByte, lastByte, contentLength);
+			multipartLength += partHeaders[i].length + (lastByte - firstByte + 1) + CRLF.length();
+		}
+		outputContext.setContentLength(multipartLength);
+		outputContext.setContentType(MULTIPART_CONTENT_TYPE_VALUE + boundary);
+		outputContext.setProperty(CONTENT_DISPOSITION_HEADER, CONTENT_DISPOSITION_VALUE);
+		outputContext.setProperty(X_CONTENT_TYPE_OPTIONS_HEADER, X_CONTENT_TYPE_OPTIONS_VALUE);
+		try (FileHandleCache.Handle handle = factory.getFileHandleCache().open(path, attr.get()); OutputStream out = outputContext.getOutputStream()) {
+			for (int i = 0; i < reqRanges.size(); i++) {
+				ByteRange range = reqRanges.get(i);
+				long firstByte = range.getEffectiveFirstByte(contentLength);
+				long lastByte = range.getEffectiveLastByte(contentLength);
+				out.write(partHeaders[i]);
+				spoolContent(handle.channel(), firstByte, lastByte - firstByte + 1, out);
+				out.write(CRLF.getBytes(StandardCharsets.US_ASCII));
+			}
+			out.write(closingDelimiter);
+		}
+	}
+
+	/**
+	 * Multipart responses are always written synchronously, as {@link AsyncFileSpooler} transfers a single range only.
+	 */
+	@Override
+	boolean isAsyncSpoolSupported() {
+		return false;
+	}
+
+	private byte[] partHeader(long firstByte, long lastByte, long completeLength) {
+		return ("--" + boundary + CRLF //
+				+ "Content-Type: " + CONTENT_TYPE_VALUE + CRLF //
+				+ "Content-Range: " + String.format("bytes %d-%d/%d", firstByte, lastByte, completeLength) + CRLF //
+				+ CRLF).getBytes(StandardCharsets.US_ASCII);
+	}
+
+}
@@ -8,23 +8,20 @@
  *******************************************************************************/
 package org.cryptomator.webdav.core.servlet;
 
-import com.google.common.io.ByteStreams;
 import org.apache.jackrabbit.webdav.DavServletResponse;
 import org.apache.jackrabbit.webdav.DavSession;
 import org.apache.jackrabbit.webdav.io.OutputContext;
 import org.apache.jackrabbit.webdav.lock.LockManager;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.channels.Channels;
-import java.nio.channels.SeekableByteChannel;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 /**
  * Delivers only the requested range of bytes from a file.
@@ -35,40 +32,72 @@ class DavFileWithRange extends DavFile {
 
 	private static final String CONTENT_RANGE_HEADER = "Content-Range";
 
-	private final ByteRange reqRange;
+	private final long firstByte;
+	private final long lastByte;
+	private final String client;
 
-	public DavFileWithRange(DavResourceFactoryImpl factory, LockManager lockManager, DavLocatorImpl locator, Path path, BasicFileAttributes attr, DavSession session, ByteRange byteRange) {
+	public DavFileWithRange(DavResourceFactoryImpl factory, LockManager lockManager, DavLocatorImpl locator, Path path, BasicFileAttributes attr, DavSession session, ByteRange byteRange, String client) {
 		super(factory, lockManager, locator, path, Optional.of(attr), session);
-		this.reqRange = Objects.requireNonNull(byteRange);
+		Objects.requireNonNull(byteRange);
+		this.firstByte = byteRange.getEffectiveFirstByte(attr.size());
+		this.lastByte = byteRange.getEffectiveLastByte(attr.size());
+		this.client = client;
 	}
 
 	@Override
 	public void spool(OutputContext outputContext) throws IOException {
 		assert exists();
-		outputContext.setModificationTime(attr.get().lastModifiedTime().toMillis());
+		setValidators(outputContext);
 		if (!outputContext.hasStream()) {
 			return;
 		}
-		final long contentLength = attr.get().size();
-		final long firstByte = reqRange.getEffectiveFirstByte(contentLength);
-		final long lastByte = reqRange.getEffectiveLastByte(contentLength);
+		setRangeHeaders(outputContext);
 		final long rangeLength = lastByte - firstByte + 1;
+		final MappedRegionCache mappedRegions = factory.getMappedRegionCache();
+		final ReadAheadCache readAhead = factory.getReadAheadCache();
+		try (OutputStream out = outputContext.getOutputStream()) {
+			if (mappedRegions.isApplicable(attr.get()) && mappedRegions.transfer(path, attr.get(), firstByte, rangeLength, out)) {
+				return;
+			} else if (readAhead.transfer(path, client, attr.get(), firstByte, rangeLength, out)) {
+				return;
+			} else {
+				spoolContent(firstByte, rangeLength, out);
+			}
+		}
+	}
+
+	@Override
+	void spoolAsync(OutputContext outputContext, ServletOutputStream out, Supplier<AsyncContext> asyncContextStarter) throws IOException {
+		assert exists();
+		if (factory.getContentCache().isApplicable(attr.get(), firstByte, lastByte - firstByte + 1)) {
+			// cached content is written without blocking on the file system
+			spool(outputContext);
+			return;
+		}
+		setValidators(outputContext);
+		setRangeHeaders(outputContext);
+		FileHandleCache.Handle handle = factory.getFileHandleCache().open(path, attr.get());
+		try {
+			AsyncFileSpooler.start(handle, firstByte, lastByte - firstByte + 1, asyncContextStarter, out, factory.getBufferPool());
+		} catch (IOException | RuntimeException e) {
+			handle.close();
+			throw e;
+		}
+	}
+
+	private void setRangeHeaders(OutputContext outputContext) {
+		final long contentLength = attr.get().size();
 		assert firstByte >= 0;
 		assert lastByte < contentLength;
 		if (firstByte >= contentLength) {
 			outputContext.setProperty(CONTENT_RANGE_HEADER, "bytes */" + contentLength);
 			throw new UncheckedDavException(DavServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE, "Valid Range would be in [0, " + contentLength + "]");
 		}
-		outputContext.setContentLength(rangeLength);
+		outputContext.setContentLength(lastByte - firstByte + 1);
 		outputContext.setProperty(CONTENT_RANGE_HEADER, contentRangeResponseHeader(firstByte, lastByte, contentLength));
 		outputContext.setContentType(CONTENT_TYPE_VALUE);
 		outputContext.setProperty(CONTENT_DISPOSITION_HEADER, CONTENT_DISPOSITION_VALUE);
 		outputContext.setProperty(X_CONTENT_TYPE_OPTIONS_HEADER, X_CONTENT_TYPE_OPTIONS_VALUE);
-		try (SeekableByteChannel src = Files.newByteChannel(path, StandardOpenOption.READ); OutputStream out = outputContext.getOutputStream()) {
-			src.position(firstByte);
-			InputStream limitedIn = ByteStreams.limit(Channels.newInputStream(src), rangeLength);
-			ByteStreams.copy(limitedIn, out);
-		}
 	}
 
 	private String contentRangeResponseHeader(long firstByte, long lastByte, long completeLength) {
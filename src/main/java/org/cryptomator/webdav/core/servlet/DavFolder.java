@@ -9,8 +9,7 @@
 package org.cryptomator.webdav.core.servlet;
 
 import com.google.common.base.Strings;
-import com.google.common.collect.Iterables;
-import com.google.common.io.ByteStreams;
+import com.google.common.collect.Iterators;
 import com.google.common.io.MoreFiles;
 import com.google.common.io.RecursiveDeleteOption;
 import org.apache.jackrabbit.webdav.*;
@@ -25,30 +24,42 @@ import org.apache.jackrabbit.webdav.property.ResourceType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
-import java.nio.channels.Channels;
-import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.AsynchronousFileChannel;
 import java.nio.channels.WritableByteChannel;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributeView;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 class DavFolder extends DavNode {
 
 	private static final Logger LOG = LoggerFactory.getLogger(DavFolder.class);
 	private static final DavPropertyName PROPERTY_QUOTA_AVAILABLE = DavPropertyName.create("quota-available-bytes");
 	private static final DavPropertyName PROPERTY_QUOTA_USED = DavPropertyName.create("quota-used-bytes");
+	private static final DavProperty<?> RESOURCE_TYPE_PROPERTY = new ResourceType(ResourceType.COLLECTION);
+	private static final DavProperty<?> ISCOLLECTION_PROPERTY = new DefaultDavProperty<Integer>(DavPropertyName.ISCOLLECTION, 1);
+	private static final String X_EXPECTED_ENTITY_LENGTH_HEADER = "X-Expected-Entity-Length";
+	private static final String CONTENT_DIGEST_HEADER = "Content-Digest";
+	private static final String DIGEST_HEADER = "Digest";
 
 	public DavFolder(DavResourceFactoryImpl factory, LockManager lockManager, DavLocatorImpl locator, Path path, Optional<BasicFileAttributes> optional, DavSession session) {
 		super(factory, lockManager, locator, path, optional, session);
-		properties.add(new ResourceType(ResourceType.COLLECTION));
-		properties.add(new DefaultDavProperty<Integer>(DavPropertyName.ISCOLLECTION, 1));
 	}
 
 	@Override
@@ -67,7 +78,7 @@ class DavFolder extends DavNode {
 			addMemberFolder((DavFolder) resource);
 		} else if (resource instanceof DavFile) {
 			assert inputContext.hasStream();
-			addMemberFile((DavFile) resource, inputContext.getInputStream());
+			addMemberFile((DavFile) resource, inputContext);
 		} else {
 			throw new IllegalArgumentException("Unsupported resource type: " + resource.getClass().getName());
 		}
@@ -76,6 +87,8 @@ class DavFolder extends DavNode {
 	private void addMemberFolder(DavFolder memberFolder) throws DavException {
 		try {
 			Files.createDirectory(memberFolder.path);
+			factory.invalidate(memberFolder.path);
+			factory.getDurability().commitAndWait(null, memberFolder.path.getParent());
 		} catch (FileSystemException e) {
 			String reason = Strings.nullToEmpty(e.getReason());
 			if (reason.contains("path too long")) {
@@ -88,10 +101,25 @@ class DavFolder extends DavNode {
 		}
 	}
 
-	private void addMemberFile(DavFile memberFile, InputStream inputStream) throws DavException {
-		try (ReadableByteChannel src = Channels.newChannel(inputStream); //
-			 WritableByteChannel dst = Files.newByteChannel(memberFile.path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
-			ByteStreams.copy(src, dst);
+	/**
+	 * Non-blocking variant of {@link #addMember(DavResource, InputContext)} for files. The request body is written by an {@link AsyncFileUploader}
+	 * after the request has been put into asynchronous mode.
+	 *
+	 * @param memberFile The file to create or overwrite
+	 * @param inputContext Context of the request
+	 * @param in The request's input stream
+	 * @param asyncContextStarter Puts the current request into asynchronous mode
+	 * @param successStatus Status code to respond with, once the file has been written
+	 * @return <code>false</code> if the file system doesn't support asynchronous file channels, in which case nothing has been changed
+	 * @throws DavException If the file can not be opened
+	 */
+	boolean addMemberFileAsync(DavFile memberFile, InputContext inputContext, ServletInputStream in, Supplier<AsyncContext> asyncContextStarter, int successStatus) throws DavException {
+		Path staging = StagingFiles.forTarget(memberFile.path);
+		AsynchronousFileChannel dst;
+		try {
+			dst = AsynchronousFileChannel.open(staging, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+		} catch (UnsupportedOperationException e) {
+			return false;
 		} catch (FileSystemException e) {
 			String reason = Strings.nullToEmpty(e.getReason());
 			if (reason.contains("path too long")) {
@@ -102,32 +130,166 @@ class DavFolder extends DavNode {
 		} catch (IOException e) {
 			throw new UncheckedIOException(e);
 		}
+		FileDigests fileDigests = factory.getFileDigests();
+		MessageDigest messageDigest = fileDigests.isEnabled() ? fileDigests.newMessageDigest() : null;
+		StagedUpload upload = new StagedUpload(dst, staging, memberFile.path, inputContext.getProperty(CONTENT_DIGEST_HEADER), inputContext.getProperty(DIGEST_HEADER));
+		AsyncFileUploader.start(in, dst, asyncContextStarter.get(), factory.getBufferPool(), upload, messageDigest, expectedLength(inputContext), successStatus);
+		return true;
 	}
 
-	@Override
-	public DavResourceIterator getMembers() {
-		try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
-			List<DavResource> children = new ArrayList<>();
-			for (Path childPath : stream) {
+	/**
+	 * Moves the staging file of a non-blocking upload over its target once all bytes have been written and forced according to the configured {@link Durability}.
+	 * If {@link FileDigests} are enabled, the upload is rejected unless its digest matches the client-provided one, otherwise the digest is stored.
+	 */
+	private class StagedUpload implements AsyncFileUploader.Transaction {
+
+		private final AsynchronousFileChannel channel;
+		private final Path staging;
+		private final Path target;
+		private final String contentDigestHeader;
+		private final String digestHeader;
+
+		private StagedUpload(AsynchronousFileChannel channel, Path staging, Path target, String contentDigestHeader, String digestHeader) {
+			this.channel = channel;
+			this.staging = staging;
+			this.target = target;
+			this.contentDigestHeader = contentDigestHeader;
+			this.digestHeader = digestHeader;
+		}
+
+		@Override
+		public CompletableFuture<Void> commit(byte[] digest) {
+			FileDigests fileDigests = factory.getFileDigests();
+			if (digest != null && !fileDigests.matches(contentDigestHeader, digestHeader, digest)) {
+				return CompletableFuture.failedFuture(new DavException(DavServletResponse.SC_BAD_REQUEST, "Content doesn't match digest."));
+			}
+			Durability durability = factory.getDurability();
+			return durability.commit(() -> channel.force(true), null).thenCompose(forced -> {
 				try {
-					BasicFileAttributes childAttr = Files.readAttributes(childPath, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
-					DavLocatorImpl childLocator = locator.resolveChild(childPath.getFileName().toString());
-					if (childAttr.isDirectory()) {
-						DavFolder childFolder = factory.createFolder(childLocator, childPath, Optional.of(childAttr), session);
-						children.add(childFolder);
-					} else if (childAttr.isRegularFile()) {
-						DavFile childFile = factory.createFile(childLocator, childPath, Optional.of(childAttr), session);
-						children.add(childFile);
-					} else {
-						LOG.warn("encountered unsupported node: {}", childPath);
+					channel.close();
+					if (digest != null) {
+						// stored after closing the channel, as the digest is bound to the final modification time:
+						fileDigests.store(staging, digest);
 					}
+					factory.invalidate(target);
+					StagingFiles.moveToTarget(staging, target);
+					factory.invalidate(target);
 				} catch (IOException e) {
-					LOG.error("Exception while reading attributes of {}. Skipping file in listing.", childPath, e);
+					return CompletableFuture.failedFuture(e);
+				}
+				return durability.commit(null, target.getParent());
+			});
+		}
+
+		@Override
+		public void rollback() {
+			StagingFiles.delete(staging);
+		}
+
+	}
+
+	/**
+	 * @return The size of the request body as announced by <code>Content-Length</code> or <code>X-Expected-Entity-Length</code>, or <code>-1</code> if unknown
+	 */
+	private static long expectedLength(InputContext inputContext) {
+		if (inputContext.getContentLength() >= 0) {
+			return inputContext.getContentLength();
+		}
+		String expectedEntityLength = inputContext.getProperty(X_EXPECTED_ENTITY_LENGTH_HEADER);
+		if (expectedEntityLength != null) {
+			try {
+				return Long.parseLong(expectedEntityLength.trim());
+			} catch (NumberFormatException e) {
+				LOG.debug("Ignoring invalid {} header: {}", X_EXPECTED_ENTITY_LENGTH_HEADER, expectedEntityLength);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Writes the request body to a {@link StagingFiles staging file}, which is moved over <code>memberFile</code> after all bytes have been written.
+	 * Concurrent readers keep reading the previous version until then. If {@link FileDigests} are enabled, the digest is computed while the body is
+	 * received and checked against the client-provided one before the file becomes visible.
+	 */
+	private void addMemberFile(DavFile memberFile, InputContext inputContext) throws DavException {
+		FileDigests fileDigests = factory.getFileDigests();
+		MessageDigest messageDigest = fileDigests.isEnabled() ? fileDigests.newMessageDigest() : null;
+		InputStream in = messageDigest != null ? new DigestInputStream(inputContext.getInputStream(), messageDigest) : inputContext.getInputStream();
+		Path staging = StagingFiles.forTarget(memberFile.path);
+		byte[] digest;
+		boolean committed = false;
+		try {
+			try (WritableByteChannel dst = Files.newByteChannel(staging, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+				factory.getPipelinedUpload().copy(in, dst, expectedLength(inputContext));
+				digest = messageDigest != null ? messageDigest.digest() : null;
+				if (digest != null && !fileDigests.matches(inputContext.getProperty(CONTENT_DIGEST_HEADER), inputContext.getProperty(DIGEST_HEADER), digest)) {
+					throw new DavException(DavServletResponse.SC_BAD_REQUEST, "Content doesn't match digest.");
 				}
+				factory.getDurability().commitAndWait(Durability.of(dst), null);
+			}
+			if (digest != null) {
+				// stored after closing the channel, as the digest is bound to the final modification time:
+				fileDigests.store(staging, digest);
+			}
+			factory.invalidate(memberFile.path);
+			StagingFiles.moveToTarget(staging, memberFile.path);
+			committed = true;
+			factory.invalidate(memberFile.path);
+			factory.getDurability().commitAndWait(null, memberFile.path.getParent());
+		} catch (FileSystemException e) {
+			String reason = Strings.nullToEmpty(e.getReason());
+			if (reason.contains("path too long")) {
+				throw new DavException(DavServletResponse.SC_REQUEST_URI_TOO_LONG);
+			} else {
+				throw new UncheckedIOException(e);
 			}
-			return new DavResourceIteratorImpl(children);
 		} catch (IOException e) {
 			throw new UncheckedIOException(e);
+		} finally {
+			if (!committed) {
+				StagingFiles.delete(staging);
+			}
+		}
+	}
+
+	/**
+	 * @return An iterator creating the members lazily. It must be closed if not iterated until the end.
+	 */
+	@Override
+	public DavFolderMemberIterator getMembers() {
+		FileTime lastModifiedTime = attr.get().lastModifiedTime();
+		DirectoryListingCache listingCache = factory.getDirectoryListingCache();
+		Optional<List<String>> cachedMembers = listingCache.get(path, lastModifiedTime);
+		if (cachedMembers.isPresent()) {
+			Iterator<Path> childPaths = Iterators.transform(cachedMembers.get().iterator(), path::resolve);
+			return new DavFolderMemberIterator(childPaths, () -> {}, factory.getAttributeLoader(), this::createChild, null, 0);
+		}
+		DirectoryStream<Path> stream;
+		try {
+			// skip uploads in progress:
+			stream = Files.newDirectoryStream(path, childPath -> !StagingFiles.isStagingFile(childPath));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		Consumer<List<String>> listingConsumer = members -> listingCache.put(path, lastModifiedTime, members);
+		return new DavFolderMemberIterator(stream.iterator(), stream, factory.getAttributeLoader(), this::createChild, listingConsumer, listingCache.getMaxListingSize());
+	}
+
+	/**
+	 * @return A resource for a file or directory or <code>null</code> if the node doesn't exist (anymore), is not supported or its attributes could not be read
+	 */
+	private DavNode createChild(Path childPath, Optional<BasicFileAttributes> childAttr) {
+		if (!childAttr.isPresent()) {
+			return null; // deleted meanwhile or not readable
+		}
+		DavLocatorImpl childLocator = locator.resolveChild(childPath.getFileName().toString());
+		if (childAttr.get().isDirectory()) {
+			return factory.createFolder(childLocator, childPath, childAttr, session);
+		} else if (childAttr.get().isRegularFile()) {
+			return factory.createFile(childLocator, childPath, childAttr, session);
+		} else {
+			LOG.warn("encountered unsupported node: {}", childPath);
+			return null;
 		}
 	}
 
@@ -144,11 +306,14 @@ class DavFolder extends DavNode {
 	public void removeMemberInternal(DavNode member) throws DavException {
 		try {
 			// The DELETE method on a collection must act as if a "Depth: infinity" header was used on it
+			factory.invalidate(member.path);
 			MoreFiles.deleteRecursively(member.path, RecursiveDeleteOption.ALLOW_INSECURE);
 		} catch (NoSuchFileException e) {
 			throw new DavException(DavServletResponse.SC_NOT_FOUND);
 		} catch (IOException e) {
 			throw new DavException(DavServletResponse.SC_INTERNAL_SERVER_ERROR, e);
+		} finally {
+			factory.invalidate(member.path);
 		}
 	}
 
@@ -166,7 +331,11 @@ class DavFolder extends DavNode {
 	private void moveInternal(DavNode destination) throws DavException {
 		if (Files.isDirectory(destination.path.getParent())) {
 			try {
+				factory.invalidate(path);
+				factory.invalidate(destination.path);
 				Files.move(path, destination.path, StandardCopyOption.REPLACE_EXISTING);
+				factory.invalidate(path);
+				factory.invalidate(destination.path);
 			} catch (FileSystemException e) {
 				String reason = Strings.nullToEmpty(e.getReason());
 				if (reason.contains("path too long")) {
@@ -204,6 +373,7 @@ class DavFolder extends DavNode {
 		}
 
 		try {
+			factory.invalidate(destination.path);
 			if (shallow && destination instanceof DavFolder) {
 				// http://www.webdav.org/specs/rfc2518.html#copy.for.collections
 				Files.createDirectory(destination.path);
@@ -213,8 +383,9 @@ class DavFolder extends DavNode {
 					attrView.setTimes(a.lastModifiedTime(), a.lastAccessTime(), a.creationTime());
 				}
 			} else {
-				Files.walkFileTree(path, new CopyingFileVisitor(path, destination.path, StandardCopyOption.REPLACE_EXISTING));
+				Files.walkFileTree(path, new CopyingFileVisitor(path, destination.path, factory.getFileDigests(), StandardCopyOption.REPLACE_EXISTING));
 			}
+			factory.invalidate(destination.path);
 		} catch (FileSystemException e) {
 			String reason = Strings.nullToEmpty(e.getReason());
 			if (reason.contains("path too long")) {
@@ -232,21 +403,34 @@ class DavFolder extends DavNode {
 
 	@Override
 	public DavPropertyName[] getPropertyNames() {
-		List<DavPropertyName> list = Arrays.asList(super.getPropertyNames());
-		list.add(PROPERTY_QUOTA_AVAILABLE);
-		list.add(PROPERTY_QUOTA_USED);
-		return Iterables.toArray(list, DavPropertyName.class);
+		// quota properties are not part of allprop responses, as they are expensive to compute:
+		DavPropertyName[] names = super.getPropertyNames();
+		DavPropertyName[] result = Arrays.copyOf(names, names.length + 2);
+		result[names.length] = PROPERTY_QUOTA_AVAILABLE;
+		result[names.length + 1] = PROPERTY_QUOTA_USED;
+		return result;
+	}
+
+	@Override
+	protected void addAllPropNames(Set<DavPropertyName> names) {
+		names.add(DavPropertyName.RESOURCETYPE);
+		names.add(DavPropertyName.ISCOLLECTION);
+		super.addAllPropNames(names);
 	}
 
 	@Override
 	public DavProperty<?> getProperty(DavPropertyName name) {
-		if (PROPERTY_QUOTA_AVAILABLE.equals(name)) {
+		if (DavPropertyName.RESOURCETYPE.equals(name)) {
+			return RESOURCE_TYPE_PROPERTY;
+		} else if (DavPropertyName.ISCOLLECTION.equals(name)) {
+			return ISCOLLECTION_PROPERTY;
+		} else if (PROPERTY_QUOTA_AVAILABLE.equals(name)) {
 			if (OSUtil.isMacOS15_4orNewer()) {
 				// macOS 15.4+ has a bug that causes the file system to mount with a 90s delay
 				return null;
 			}
 			try {
-				long availableBytes = Files.getFileStore(path).getUsableSpace();
+				long availableBytes = factory.getSpaceCache().getSpace(path).getUsableSpace();
 				return new DefaultDavProperty<Long>(name, availableBytes);
 			} catch (IOException e) {
 				return null;
@@ -257,9 +441,7 @@ class DavFolder extends DavNode {
 				return null;
 			}
 			try {
-				long availableBytes = Files.getFileStore(path).getTotalSpace();
-				long freeBytes = Files.getFileStore(path).getUsableSpace();
-				long usedBytes = availableBytes - freeBytes;
+				long usedBytes = factory.getSpaceCache().getSpace(path).getUsedSpace();
 				return new DefaultDavProperty<Long>(name, usedBytes);
 			} catch (IOException e) {
 				return null;
@@ -0,0 +1,154 @@
+package org.cryptomator.webdav.core.servlet;
+
+import org.apache.jackrabbit.webdav.DavResource;
+import org.apache.jackrabbit.webdav.DavResourceIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.function.Consumer;
+
+/**
+ * Lazily creates the members of a folder while they are iterated, so only a small batch of resources exists at any time,
+ * regardless of the size of the folder.
+ * <p>
+ * Member paths are pulled from the underlying source, usually a {@link java.nio.file.DirectoryStream}, in batches, whose attributes are read
+ * by the {@link AttributeLoader}. The source is closed as soon as it is exhausted or this iterator is {@link #close() closed}.
+ */
+class DavFolderMemberIterator implements DavResourceIterator, Closeable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(DavFolderMemberIterator.class);
+	private static final int BATCH_SIZE = 256;
+
+	private final Iterator<Path> paths;
+	private final Closeable source;
+	private final AttributeLoader attributeLoader;
+	private final ChildFactory childFactory;
+	private final Queue<DavNode> batch = new ArrayDeque<>(BATCH_SIZE);
+	private final Consumer<List<String>> listingConsumer;
+	private final int maxListingSize;
+	private List<String> listing;
+	private boolean exhausted;
+
+	/**
+	 * @param paths The paths of the members
+	 * @param source Closed when all paths have been consumed
+	 * @param attributeLoader Reads the attributes of each batch of members
+	 * @param childFactory Creates a member resource from its attributes
+	 * @param listingConsumer Receives all members after the last one has been created, if they don't exceed <code>maxListingSize</code>, or <code>null</code>
+	 * @param maxListingSize Maximum number of members recorded for the <code>listingConsumer</code>
+	 */
+	public DavFolderMemberIterator(Iterator<Path> paths, Closeable source, AttributeLoader attributeLoader, ChildFactory childFactory, Consumer<List<String>> listingConsumer, int maxListingSize) {
+		this.paths = paths;
+		this.source = source;
+		this.attributeLoader = attributeLoader;
+		this.childFactory = childFactory;
+		this.listingConsumer = listingConsumer;
+		this.maxListingSize = maxListingSize;
+		this.listing = listingConsumer != null && maxListingSize > 0 ? new ArrayList<>() : null;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (batch.isEmpty() && !exhausted) {
+			loadBatch();
+		}
+		return !batch.isEmpty();
+	}
+
+	@Override
+	public DavResource next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return batch.remove();
+	}
+
+	@Override
+	public DavResource nextResource() {
+		return next();
+	}
+
+	/**
+	 * @return <code>-1</code>, as the number of members is unknown until all members have been created
+	 */
+	@Override
+	public int size() {
+		return -1;
+	}
+
+	private void loadBatch() {
+		List<Path> batchPaths = new ArrayList<>(BATCH_SIZE);
+		try {
+			while (batchPaths.size() < BATCH_SIZE && paths.hasNext()) {
+				batchPaths.add(paths.next());
+			}
+			exhausted = !paths.hasNext();
+		} catch (DirectoryIteratorException e) {
+			close();
+			throw new UncheckedIOException(e.getCause());
+		}
+		if (exhausted) {
+			close();
+		}
+		List<Optional<BasicFileAttributes>> attrs = attributeLoader.load(batchPaths);
+		for (int i = 0; i < batchPaths.size(); i++) {
+			DavNode child = childFactory.create(batchPaths.get(i), attrs.get(i));
+			if (child != null) {
+				batch.add(child);
+				record(child);
+			}
+		}
+		if (exhausted && listing != null) {
+			listingConsumer.accept(listing);
+			listing = null;
+		}
+	}
+
+	private void record(DavNode child) {
+		if (listing == null) {
+			return;
+		} else if (listing.size() < maxListingSize) {
+			listing.add(child.path.getFileName().toString());
+		} else {
+			listing = null; // too large to be cached
+		}
+	}
+
+	/**
+	 * Closes the underlying source. Members not iterated yet are skipped.
+	 */
+	@Override
+	public void close() {
+		exhausted = true;
+		batch.clear();
+		try {
+			source.close();
+		} catch (IOException e) {
+			LOG.warn("Failed to close directory stream.", e);
+		}
+	}
+
+	@FunctionalInterface
+	interface ChildFactory {
+
+		/**
+		 * @return A resource for the member or <code>null</code> if it should be skipped
+		 */
+		DavNode create(Path path, Optional<BasicFileAttributes> attr);
+
+	}
+
+}
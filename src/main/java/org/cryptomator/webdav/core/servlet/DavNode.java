@@ -9,6 +9,9 @@
 package org.cryptomator.webdav.core.servlet;
 
 import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import org.apache.jackrabbit.webdav.*;
 import org.apache.jackrabbit.webdav.lock.*;
@@ -17,7 +20,6 @@ import org.apache.jackrabbit.webdav.property.*;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Files;
-import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributeView;
 import java.nio.file.attribute.BasicFileAttributes;
@@ -27,16 +29,20 @@ import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Stream;
 
 abstract class DavNode implements DavResource {
 
 	private static final String DAV_COMPLIANCE_CLASSES = "1, 2";
-	private static final String[] DAV_CREATIONDATE_PROPNAMES = {DavConstants.PROPERTY_CREATIONDATE, "Win32CreationTime"};
-	private static final String[] DAV_MODIFIEDDATE_PROPNAMES = {DavConstants.PROPERTY_GETLASTMODIFIED, "Win32LastModifiedTime"};
+	private static final Set<String> DAV_CREATIONDATE_PROPNAMES = ImmutableSet.of(DavConstants.PROPERTY_CREATIONDATE, "Win32CreationTime");
+	private static final Set<String> DAV_MODIFIEDDATE_PROPNAMES = ImmutableSet.of(DavConstants.PROPERTY_GETLASTMODIFIED, "Win32LastModifiedTime");
+	private static final int MAX_FORMATTED_DATES = 4096;
+	private static final Cache<Long, String> FORMATTED_DATES = CacheBuilder.newBuilder().maximumSize(MAX_FORMATTED_DATES).build();
 
 	protected final DavResourceFactoryImpl factory;
 	protected final LockManager lockManager;
@@ -44,7 +50,7 @@ abstract class DavNode implements DavResource {
 	protected final Path path;
 	protected final Optional<BasicFileAttributes> attr;
 	protected final DavSession session;
-	protected final DavPropertySet properties;
+	private DavPropertySet deadProperties;
 
 	public DavNode(DavResourceFactoryImpl factory, LockManager lockManager, DavLocatorImpl locator, Path path, Optional<BasicFileAttributes> attr, DavSession session) {
 		this.factory = factory;
@@ -53,7 +59,6 @@ abstract class DavNode implements DavResource {
 		this.path = path;
 		this.attr = attr;
 		this.session = session;
-		this.properties = new DavPropertySet();
 	}
 
 	@Override
@@ -101,6 +106,7 @@ abstract class DavNode implements DavResource {
 		if (attrView != null) {
 			try {
 				attrView.setTimes(FileTime.from(instant), null, null);
+				factory.invalidate(path);
 			} catch (IOException e) {
 				throw new DavException(DavServletResponse.SC_INTERNAL_SERVER_ERROR, e);
 			}
@@ -112,6 +118,7 @@ abstract class DavNode implements DavResource {
 		if (attrView != null) {
 			try {
 				attrView.setTimes(null, null, FileTime.from(instant));
+				factory.invalidate(path);
 			} catch (IOException e) {
 				throw new DavException(DavServletResponse.SC_INTERNAL_SERVER_ERROR, e);
 			}
@@ -120,63 +127,89 @@ abstract class DavNode implements DavResource {
 
 	@Override
 	public DavPropertyName[] getPropertyNames() {
-		return getProperties().getPropertyNames();
+		Set<DavPropertyName> names = new LinkedHashSet<>();
+		addAllPropNames(names);
+		return names.toArray(new DavPropertyName[0]);
+	}
+
+	/**
+	 * Adds the names of the properties included in <code>allprop</code> responses. Subclasses add their own properties.
+	 * The values of these properties are only computed when requested via {@link #getProperty(DavPropertyName)}.
+	 *
+	 * @param names The set to add property names to
+	 */
+	protected void addAllPropNames(Set<DavPropertyName> names) {
+		if (exists()) {
+			names.add(DavPropertyName.CREATIONDATE);
+			names.add(DavPropertyName.GETLASTMODIFIED);
+		}
+		if (deadProperties != null) {
+			names.addAll(Arrays.asList(deadProperties.getPropertyNames()));
+		}
 	}
 
 	@Override
 	public DavProperty<?> getProperty(DavPropertyName name) {
 		final String namespacelessPropertyName = name.getName();
-		if (Arrays.asList(DAV_CREATIONDATE_PROPNAMES).contains(namespacelessPropertyName)) {
-			return creationDateProperty(name).orElse(null);
-		} else if (Arrays.asList(DAV_MODIFIEDDATE_PROPNAMES).contains(namespacelessPropertyName)) {
-			return lastModifiedDateProperty(name).orElse(null);
+		if (DAV_CREATIONDATE_PROPNAMES.contains(namespacelessPropertyName)) {
+			return attr.map(a -> new DefaultDavProperty<>(name, formatDate(a.creationTime()))).orElse(null);
+		} else if (DAV_MODIFIEDDATE_PROPNAMES.contains(namespacelessPropertyName)) {
+			return attr.map(a -> new DefaultDavProperty<>(name, formatDate(a.lastModifiedTime()))).orElse(null);
 		} else {
-			return properties.get(name);
+			return deadProperties == null ? null : deadProperties.get(name);
 		}
 	}
 
 	/**
-	 * Returns a current snapshot of all available properties.
+	 * Returns a current snapshot of all properties included in <code>allprop</code> responses.
+	 * PROPFIND requests for specific properties don't use this method, but only compute the requested properties.
 	 */
 	@Override
 	public DavPropertySet getProperties() {
-		creationDateProperty(DavPropertyName.CREATIONDATE).ifPresent(properties::add);
-		lastModifiedDateProperty(DavPropertyName.GETLASTMODIFIED).ifPresent(properties::add);
-		return properties;
-	}
-
-	private Optional<DavProperty<?>> lastModifiedDateProperty(DavPropertyName name) {
-		return attr.map(BasicFileAttributes::lastModifiedTime) //
-				.map(FileTime::toInstant) //
-				.map(creationTime -> OffsetDateTime.ofInstant(creationTime, ZoneOffset.UTC)) //
-				.map(creationDate -> new DefaultDavProperty<>(name, DateTimeFormatter.RFC_1123_DATE_TIME.format(creationDate)));
+		Set<DavPropertyName> names = new LinkedHashSet<>();
+		addAllPropNames(names);
+		DavPropertySet result = new DavPropertySet();
+		for (DavPropertyName name : names) {
+			DavProperty<?> property = getProperty(name);
+			if (property != null) {
+				result.add(property);
+			}
+		}
+		return result;
 	}
 
-	private Optional<DavProperty<?>> creationDateProperty(DavPropertyName name) {
-		return attr.map(BasicFileAttributes::creationTime) //
-				.map(FileTime::toInstant) //
-				.map(creationTime -> OffsetDateTime.ofInstant(creationTime, ZoneOffset.UTC)) //
-				.map(creationDate -> new DefaultDavProperty<>(name, DateTimeFormatter.RFC_1123_DATE_TIME.format(creationDate)));
+	/**
+	 * Formats a file time as HTTP date. As HTTP dates have a resolution of one second, formatted dates are shared by all times within the same second,
+	 * which saves formatting the same dates over and over again for clients polling a folder.
+	 */
+	static String formatDate(FileTime time) {
+		long epochSecond = time.toInstant().getEpochSecond();
+		return FORMATTED_DATES.asMap().computeIfAbsent(epochSecond, s -> DateTimeFormatter.RFC_1123_DATE_TIME.format(OffsetDateTime.ofInstant(Instant.ofEpochSecond(s), ZoneOffset.UTC)));
 	}
 
 	@Override
 	public void setProperty(DavProperty<?> property) throws DavException {
 		final String namespacelessPropertyName = property.getName().getName();
-		if (Arrays.asList(DAV_CREATIONDATE_PROPNAMES).contains(namespacelessPropertyName) && property.getValue() instanceof String) {
+		if (DAV_CREATIONDATE_PROPNAMES.contains(namespacelessPropertyName) && property.getValue() instanceof String) {
 			String createDateStr = (String) property.getValue();
 			OffsetDateTime creationDate = OffsetDateTime.from(DateTimeFormatter.RFC_1123_DATE_TIME.parse(createDateStr));
 			this.setCreationTime(creationDate.toInstant());
-		} else if (Arrays.asList(DAV_MODIFIEDDATE_PROPNAMES).contains(namespacelessPropertyName) && property.getValue() instanceof String) {
+		} else if (DAV_MODIFIEDDATE_PROPNAMES.contains(namespacelessPropertyName) && property.getValue() instanceof String) {
 			String lastModifiedDateStr = (String) property.getValue();
 			OffsetDateTime lastModifiedDate = OffsetDateTime.from(DateTimeFormatter.RFC_1123_DATE_TIME.parse(lastModifiedDateStr));
 			this.setModificationTime(lastModifiedDate.toInstant());
 		}
-		properties.add(property);
+		if (deadProperties == null) {
+			deadProperties = new DavPropertySet();
+		}
+		deadProperties.add(property);
 	}
 
 	@Override
 	public void removeProperty(DavPropertyName propertyName) {
-		getProperties().remove(propertyName);
+		if (deadProperties != null) {
+			deadProperties.remove(propertyName);
+		}
 	}
 
 	@Override
@@ -203,15 +236,13 @@ abstract class DavNode implements DavResource {
 			return null;
 		} else {
 			Path parentPath = path.getParent();
-			BasicFileAttributes parentAttr;
+			Optional<BasicFileAttributes> parentAttr;
 			try {
-				parentAttr = Files.readAttributes(parentPath, BasicFileAttributes.class);
-			} catch (NoSuchFileException e) {
-				parentAttr = null;
+				parentAttr = factory.getAttributeCache().get(parentPath);
 			} catch (IOException e) {
 				throw new UncheckedIOException(e);
 			}
-			return factory.createFolder(parentLocator, parentPath, Optional.ofNullable(parentAttr), session);
+			return factory.createFolder(parentLocator, parentPath, parentAttr, session);
 		}
 	}
 
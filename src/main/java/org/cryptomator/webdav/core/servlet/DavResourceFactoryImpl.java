@@ -8,32 +8,175 @@
  *******************************************************************************/
 package org.cryptomator.webdav.core.servlet;
 
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.jackrabbit.webdav.*;
 import org.apache.jackrabbit.webdav.lock.LockManager;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.nio.file.Files;
-import java.nio.file.LinkOption;
-import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.time.Instant;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 
-class DavResourceFactoryImpl implements DavResourceFactory {
+class DavResourceFactoryImpl implements DavResourceFactory, Closeable {
 
 	private static final String RANGE_HEADER = "Range";
 	private static final String IF_RANGE_HEADER = "If-Range";
+	private static final int MAX_RANGES = 16;
+	private static final String IF_MATCH_HEADER = "If-Match";
+	private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+	private static final String IF_UNMODIFIED_SINCE_HEADER = "If-Unmodified-Since";
+	private static final String X_EXPECTED_ENTITY_LENGTH_HEADER = "X-Expected-Entity-Length";
+	private static final String USER_AGENT_HEADER = "User-Agent";
+	private static final long SPACE_CACHE_TTL_MILLIS = 1000;
+	private static final Set<String> CACHEABLE_METHODS = ImmutableSet.of(DavMethods.METHOD_GET, DavMethods.METHOD_HEAD, DavMethods.METHOD_PROPFIND);
 
 	private final LockManager lockManager = new ExclusiveSharedLockManager();
 	private final Function<String, Path> urlResolver;
+	private final BufferPool bufferPool;
+	private final ExecutorService uploadExecutor;
+	private final PipelinedUpload pipelinedUpload;
+	private final Durability durability;
+	private final FileDigests fileDigests;
+	private final MappedRegionCache mappedRegionCache;
+	private final ContentCache contentCache;
+	private final FileHandleCache fileHandleCache;
+	private final ReadAheadCache readAheadCache;
+	private final SpaceCache spaceCache = new SpaceCache(SPACE_CACHE_TTL_MILLIS);
+	private final AttributeCache attributeCache;
+	private final DirectoryListingCache directoryListingCache;
+	private final AttributeLoader attributeLoader;
+	private final InfiniteDepthPropFind infiniteDepthPropFind;
+	private final FileTime startTime = FileTime.from(Instant.now());
+	private final AtomicBoolean backgroundTasksStarted = new AtomicBoolean();
 
-	public DavResourceFactoryImpl(Function<String, Path> urlResolver) {
+	public DavResourceFactoryImpl(Function<String, Path> urlResolver, ServletSettings settings) {
 		this.urlResolver = urlResolver;
+		this.bufferPool = new BufferPool(settings.getBufferSize(), settings.getBufferPoolSize());
+		this.uploadExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("webdav-upload-%d").setDaemon(true).build());
+		this.pipelinedUpload = new PipelinedUpload(bufferPool, uploadExecutor);
+		this.durability = new Durability(settings.getDurability(), settings.getGroupCommitWindow());
+		this.fileDigests = new FileDigests(settings.getDigestAlgorithm());
+		this.mappedRegionCache = new MappedRegionCache(settings.getMmapThreshold());
+		this.contentCache = new ContentCache(settings.getContentCacheSize(), settings.getContentCacheEntrySize());
+		this.fileHandleCache = new FileHandleCache(settings.getFileHandleIdleTime());
+		this.readAheadCache = new ReadAheadCache(settings.getReadAheadSize(), fileHandleCache);
+		this.attributeCache = new AttributeCache(settings.getAttributeCacheTtl());
+		this.directoryListingCache = new DirectoryListingCache(settings.getDirectoryCacheTtl(), settings.getDirectoryCacheSize());
+		this.attributeLoader = new AttributeLoader(attributeCache, settings.getAttributeReadParallelism());
+		this.infiniteDepthPropFind = new InfiniteDepthPropFind(settings.getPropFindParallelism(), settings.getPropFindMaxResources(), settings.getPropFindTimeout());
+	}
+
+	/**
+	 * Removes staging files of uploads interrupted by a previous shutdown in the background and starts watching the served directory tree.
+	 * Deferred until the first request, as the url resolver might not be fully initialized during construction.
+	 */
+	private void startBackgroundTasks() {
+		if (!backgroundTasksStarted.compareAndSet(false, true)) {
+			return;
+		}
+		Path root;
+		try {
+			root = urlResolver.apply("");
+		} catch (IllegalArgumentException e) {
+			return; // root not resolvable, nothing to clean up or watch
+		}
+		uploadExecutor.execute(() -> StagingFiles.deleteOrphans(root, startTime));
+		attributeCache.watch(root);
+	}
+
+	BufferPool getBufferPool() {
+		return bufferPool;
+	}
+
+	PipelinedUpload getPipelinedUpload() {
+		return pipelinedUpload;
+	}
+
+	Durability getDurability() {
+		return durability;
+	}
+
+	FileDigests getFileDigests() {
+		return fileDigests;
+	}
+
+	MappedRegionCache getMappedRegionCache() {
+		return mappedRegionCache;
+	}
+
+	ContentCache getContentCache() {
+		return contentCache;
+	}
+
+	FileHandleCache getFileHandleCache() {
+		return fileHandleCache;
+	}
+
+	ReadAheadCache getReadAheadCache() {
+		return readAheadCache;
+	}
+
+	AttributeCache getAttributeCache() {
+		return attributeCache;
+	}
+
+	DirectoryListingCache getDirectoryListingCache() {
+		return directoryListingCache;
+	}
+
+	AttributeLoader getAttributeLoader() {
+		return attributeLoader;
+	}
+
+	SpaceCache getSpaceCache() {
+		return spaceCache;
+	}
+
+	InfiniteDepthPropFind getInfiniteDepthPropFind() {
+		return infiniteDepthPropFind;
+	}
+
+	/**
+	 * Discards any cached state of the given path and its descendants. Must be invoked whenever a node is created, modified, moved or deleted:
+	 * Before the modification to release cached file handles and afterwards to discard attributes read meanwhile by concurrent requests.
+	 *
+	 * @param path The modified path
+	 */
+	void invalidate(Path path) {
+		mappedRegionCache.invalidate(path);
+		contentCache.invalidate(path);
+		fileHandleCache.invalidate(path);
+		readAheadCache.invalidate(path);
+		attributeCache.invalidate(path);
+		directoryListingCache.invalidate(path);
+		spaceCache.invalidate(path);
+	}
+
+	@Override
+	public void close() {
+		mappedRegionCache.close();
+		readAheadCache.close();
+		fileHandleCache.close();
+		uploadExecutor.shutdown();
+		durability.close();
+		attributeCache.close();
+		attributeLoader.close();
+		spaceCache.close();
+		infiniteDepthPropFind.close();
 	}
 
 	private Path resolveUrl(String relativeUrl) throws DavException {
@@ -46,6 +189,7 @@ class DavResourceFactoryImpl implements DavResourceFactory {
 
 	@Override
 	public DavResource createResource(DavResourceLocator locator, DavServletRequest request, DavServletResponse response) throws DavException {
+		startBackgroundTasks();
 		if (locator instanceof DavLocatorImpl && locator.equals(request.getRequestLocator())) {
 			return createRequestResource((DavLocatorImpl) locator, request, response);
 		} else if (locator instanceof DavLocatorImpl && locator.equals(request.getDestinationLocator())) {
@@ -58,9 +202,9 @@ class DavResourceFactoryImpl implements DavResourceFactory {
 	private DavResource createRequestResource(DavLocatorImpl locator, DavServletRequest request, DavServletResponse response) throws DavException {
 		assert locator.equals(request.getRequestLocator());
 		Path p = resolveUrl(locator.getResourcePath());
-		Optional<BasicFileAttributes> attr = readBasicFileAttributes(p);
+		Optional<BasicFileAttributes> attr = readBasicFileAttributes(p, CACHEABLE_METHODS.contains(request.getMethod()));
 		if (DavMethods.METHOD_PUT.equals(request.getMethod())) {
-			checkPreconditionsForPut(p, attr);
+			checkPreconditionsForPut(p, attr, request);
 			return createFile(locator, p, Optional.empty(), request.getDavSession());
 		} else if (DavMethods.METHOD_MKCOL.equals(request.getMethod())) {
 			checkPreconditionsForMkcol(p, attr);
@@ -83,10 +227,70 @@ class DavResourceFactoryImpl implements DavResourceFactory {
 		}
 	}
 
-	private void checkPreconditionsForPut(Path p, Optional<BasicFileAttributes> attr) throws DavException {
+	/**
+	 * Checks everything that can be decided before the request body is read, so that clients sending <code>Expect: 100-continue</code>
+	 * are rejected before transmitting the body.
+	 */
+	private void checkPreconditionsForPut(Path p, Optional<BasicFileAttributes> attr, DavServletRequest request) throws DavException {
 		if (attr.isPresent() && !attr.get().isRegularFile()) {
 			throw new DavException(DavServletResponse.SC_CONFLICT, p + " already exists.");
 		}
+		checkConditionalHeadersForPut(attr, request);
+		checkUsableSpaceForPut(p, request);
+	}
+
+	/**
+	 * Evaluates <code>If-Match</code>, <code>If-Unmodified-Since</code> and <code>If-None-Match</code>
+	 * in the order defined by <a href="https://tools.ietf.org/html/rfc7232#section-6">RFC 7232 Section 6</a>.
+	 */
+	private void checkConditionalHeadersForPut(Optional<BasicFileAttributes> attr, DavServletRequest request) throws DavException {
+		String ifMatch = request.getHeader(IF_MATCH_HEADER);
+		String ifNoneMatch = request.getHeader(IF_NONE_MATCH_HEADER);
+		if (ifMatch != null) {
+			if (!attr.isPresent() || !ETag.matches(ifMatch, ETag.of(attr.get()), false)) {
+				throw new DavException(DavServletResponse.SC_PRECONDITION_FAILED, "If-Match not satisfied.");
+			}
+		} else if (attr.isPresent()) {
+			long ifUnmodifiedSince;
+			try {
+				ifUnmodifiedSince = request.getDateHeader(IF_UNMODIFIED_SINCE_HEADER);
+			} catch (IllegalArgumentException e) {
+				// invalid dates must be ignored
+				ifUnmodifiedSince = -1;
+			}
+			// HTTP dates have a resolution of one second:
+			if (ifUnmodifiedSince != -1 && attr.get().lastModifiedTime().toMillis() / 1000 * 1000 > ifUnmodifiedSince) {
+				throw new DavException(DavServletResponse.SC_PRECONDITION_FAILED, "If-Unmodified-Since not satisfied.");
+			}
+		}
+		if (ifNoneMatch != null && attr.isPresent() && ETag.matches(ifNoneMatch, ETag.of(attr.get()), true)) {
+			throw new DavException(DavServletResponse.SC_PRECONDITION_FAILED, "If-None-Match not satisfied.");
+		}
+	}
+
+	/**
+	 * Rejects uploads announcing more bytes than the file store has left. The old content of an overwritten file is not taken into account,
+	 * as it is only replaced after the upload completed.
+	 */
+	private void checkUsableSpaceForPut(Path p, DavServletRequest request) throws DavException {
+		long expectedLength = request.getContentLengthLong();
+		if (expectedLength < 0 && request.getHeader(X_EXPECTED_ENTITY_LENGTH_HEADER) != null) {
+			try {
+				expectedLength = Long.parseLong(request.getHeader(X_EXPECTED_ENTITY_LENGTH_HEADER).trim());
+			} catch (NumberFormatException e) {
+				// unknown length
+			}
+		}
+		if (expectedLength <= 0 || p.getParent() == null) {
+			return;
+		}
+		try {
+			if (expectedLength > spaceCache.getUsableSpace(p.getParent())) {
+				throw new DavException(DavServletResponse.SC_INSUFFICIENT_SPACE_ON_RESOURCE, "Not enough space for " + expectedLength + " bytes.");
+			}
+		} catch (IOException e) {
+			// e.g. parent doesn't exist, which is reported later on
+		}
 	}
 
 	private void checkPreconditionsForMkcol(Path p, Optional<BasicFileAttributes> attr) throws DavException {
@@ -101,8 +305,8 @@ class DavResourceFactoryImpl implements DavResourceFactory {
 		assert ImmutableSet.of(DavMethods.METHOD_MOVE, DavMethods.METHOD_COPY).contains(request.getMethod());
 		Path srcP = resolveUrl(request.getRequestLocator().getResourcePath());
 		Path dstP = resolveUrl(locator.getResourcePath());
-		Optional<BasicFileAttributes> srcAttr = readBasicFileAttributes(srcP);
-		Optional<BasicFileAttributes> dstAttr = readBasicFileAttributes(dstP);
+		Optional<BasicFileAttributes> srcAttr = readBasicFileAttributes(srcP, false);
+		Optional<BasicFileAttributes> dstAttr = readBasicFileAttributes(dstP, false);
 		if (!srcAttr.isPresent()) {
 			throw new DavException(DavServletResponse.SC_NOT_FOUND);
 		} else if (srcAttr.get().isDirectory()) {
@@ -123,7 +327,7 @@ class DavResourceFactoryImpl implements DavResourceFactory {
 
 	private DavResource createResourceInternal(DavLocatorImpl locator, DavSession session) throws DavException {
 		Path p = resolveUrl(locator.getResourcePath());
-		Optional<BasicFileAttributes> attr = readBasicFileAttributes(p);
+		Optional<BasicFileAttributes> attr = readBasicFileAttributes(p, true);
 		if (!attr.isPresent()) {
 			throw new DavException(DavServletResponse.SC_NOT_FOUND);
 		} else if (attr.get().isDirectory()) {
@@ -134,14 +338,13 @@ class DavResourceFactoryImpl implements DavResourceFactory {
 	}
 
 	/**
+	 * @param cached Whether cached attributes may be used. Must be <code>false</code> if the attributes are used to decide about a modification.
 	 * @return BasicFileAttributes or {@link Optional#empty()} if the file/folder for the given path does not exist.
 	 * @throws DavException If an {@link IOException} occured during {@link Files#readAttributes(Path, Class, java.nio.file.LinkOption...)}.
 	 */
-	private Optional<BasicFileAttributes> readBasicFileAttributes(Path path) throws DavException {
+	private Optional<BasicFileAttributes> readBasicFileAttributes(Path path, boolean cached) throws DavException {
 		try {
-			return Optional.of(Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
-		} catch (NoSuchFileException e) {
-			return Optional.empty();
+			return cached ? attributeCache.get(path) : attributeCache.load(path);
 		} catch (IOException e) {
 			throw new DavException(DavServletResponse.SC_INTERNAL_SERVER_ERROR, e);
 		}
@@ -164,10 +367,21 @@ class DavResourceFactoryImpl implements DavResourceFactory {
 
 		final String rangeHeader = request.getHeader(RANGE_HEADER);
 		try {
+			final List<ByteRange> byteRanges = ByteRange.parseSet(rangeHeader);
+			final List<ByteRange> effectiveRanges = ByteRange.coalesce(byteRanges, attr.size());
+			if (effectiveRanges.size() > MAX_RANGES) {
+				// servers may ignore range sets consisting of many small ranges, see https://tools.ietf.org/html/rfc7233#section-6.1
+				return createFile(locator, path, Optional.of(attr), session);
+			}
 			// 206 for ranged resources:
-			final ByteRange byteRange = ByteRange.parse(rangeHeader);
 			response.setStatus(DavServletResponse.SC_PARTIAL_CONTENT);
-			return new DavFileWithRange(this, lockManager, locator, path, attr, session, byteRange);
+			if (effectiveRanges.size() > 1) {
+				return new DavFileWithMultipleRanges(this, lockManager, locator, path, attr, session, effectiveRanges);
+			} else {
+				// if no range is satisfiable, DavFileWithRange will respond with 416:
+				final ByteRange byteRange = effectiveRanges.isEmpty() ? byteRanges.get(0) : effectiveRanges.get(0);
+				return new DavFileWithRange(this, lockManager, locator, path, attr, session, byteRange, readAheadClient(request));
+			}
 		} catch (ByteRange.UnsupportedRangeException ex) {
 			return createFile(locator, path, Optional.of(attr), session);
 		} catch (ByteRange.MalformedByteRangeException e) {
@@ -175,6 +389,13 @@ class DavResourceFactoryImpl implements DavResourceFactory {
 		}
 	}
 
+	/**
+	 * @return Key distinguishing clients for the {@link ReadAheadCache}. The remote address alone doesn't suffice, as local clients all connect via loopback.
+	 */
+	private static String readAheadClient(DavServletRequest request) {
+		return request.getRemoteAddr() + " " + Strings.nullToEmpty(request.getHeader(USER_AGENT_HEADER));
+	}
+
 	/**
 	 * @return <code>true</code> if a partial response should be generated according to an If-Range precondition.
 	 */
@@ -182,6 +403,9 @@ class DavResourceFactoryImpl implements DavResourceFactory {
 		if (ifRangeHeader == null) {
 			// no header set -> satisfied implicitly
 			return true;
+		} else if (ETag.isETag(ifRangeHeader)) {
+			// If-Range requires the strong comparison function, see https://tools.ietf.org/html/rfc7233#section-3.2
+			return ETag.matches(ifRangeHeader, ETag.of(attr), false);
 		} else {
 			try {
 				Instant expectedTime = Instant.from(DateTimeFormatter.RFC_1123_DATE_TIME.parse(ifRangeHeader));
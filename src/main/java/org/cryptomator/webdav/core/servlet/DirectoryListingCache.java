@@ -0,0 +1,100 @@
+package org.cryptomator.webdav.core.servlet;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the members of recently listed directories, as clients tend to repeat the same <code>Depth: 1</code> PROPFIND requests every few seconds.
+ * <p>
+ * A listing is only used as long as the modification time of the directory matches the one recorded when the listing was created, which
+ * detects members added or removed by other processes. Additionally listings are invalidated by {@link DavResourceFactoryImpl#invalidate(Path)}
+ * and expire after a TTL. The cache is bounded by the total number of members of all cached listings.
+ * <p>
+ * Only names are cached. The attributes of the members are read when they are listed, usually served by the {@link AttributeCache}.
+ */
+class DirectoryListingCache {
+
+	private final Cache<Path, Listing> cache;
+	private final int maxListingSize;
+
+	/**
+	 * @param ttlMillis Time in milliseconds after which directories are listed again. The cache is disabled if not positive.
+	 * @param maxMembers Maximum number of members held by all cached listings together
+	 */
+	public DirectoryListingCache(long ttlMillis, long maxMembers) {
+		if (ttlMillis > 0 && maxMembers > 0) {
+			this.cache = CacheBuilder.newBuilder() //
+					.maximumWeight(maxMembers) //
+					.weigher((Path path, Listing listing) -> 1 + listing.members.size()) //
+					.expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS) //
+					.build();
+			this.maxListingSize = (int) Math.min(maxMembers - 1, Integer.MAX_VALUE);
+		} else {
+			this.cache = null;
+			this.maxListingSize = 0;
+		}
+	}
+
+	/**
+	 * @return Maximum number of members of a listing that can be cached, <code>0</code> if the cache is disabled
+	 */
+	public int getMaxListingSize() {
+		return maxListingSize;
+	}
+
+	/**
+	 * @param dir A directory
+	 * @param lastModifiedTime Current modification time of the directory
+	 * @return The cached names of the directory's members, if listed since its last modification
+	 */
+	public Optional<List<String>> get(Path dir, FileTime lastModifiedTime) {
+		Listing listing = cache == null ? null : cache.getIfPresent(dir);
+		if (listing != null && listing.lastModifiedTime.equals(lastModifiedTime)) {
+			return Optional.of(listing.members);
+		} else {
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * @param dir A directory
+	 * @param lastModifiedTime The modification time of the directory read before listing it
+	 * @param members The names of the directory's members
+	 */
+	public void put(Path dir, FileTime lastModifiedTime, List<String> members) {
+		if (cache != null) {
+			cache.put(dir, new Listing(lastModifiedTime, List.copyOf(members)));
+		}
+	}
+
+	/**
+	 * Discards the listings of the given path, its descendants and its parent, whose members change whenever the path is created, moved or deleted.
+	 *
+	 * @param path A created, modified, moved or deleted path
+	 */
+	public void invalidate(Path path) {
+		if (cache != null) {
+			Path parent = path.getParent();
+			cache.asMap().keySet().removeIf(p -> p.startsWith(path) || p.equals(parent));
+		}
+	}
+
+	private static class Listing {
+
+		private final FileTime lastModifiedTime;
+		private final List<String> members;
+
+		private Listing(FileTime lastModifiedTime, List<String> members) {
+			this.lastModifiedTime = lastModifiedTime;
+			this.members = members;
+		}
+
+	}
+
+}
@@ -0,0 +1,237 @@
+package org.cryptomator.webdav.core.servlet;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channel;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forces written files and the directories containing them to the storage device according to the configured {@link Mode}.
+ * <p>
+ * In {@link Mode#GROUP_COMMIT group commit} mode, all commits requested within a short window are forced together by a background thread.
+ * Each directory is forced only once per batch, no matter how many files have been written to it, and the requesting uploads only
+ * complete after the whole batch is durable.
+ */
+class Durability implements Closeable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(Durability.class);
+
+	enum Mode {
+		/**
+		 * Leave flushing to the operating system.
+		 */
+		NONE,
+
+		/**
+		 * Force each upload before responding.
+		 */
+		FSYNC,
+
+		/**
+		 * Force uploads completed within a short window together before responding.
+		 */
+		GROUP_COMMIT;
+
+		/**
+		 * @param value One of <code>none</code>, <code>fsync</code> or <code>group-commit</code>
+		 * @return The corresponding mode
+		 * @throws IllegalArgumentException If the value is not a known mode
+		 */
+		static Mode parse(String value) throws IllegalArgumentException {
+			return Mode.valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+		}
+	}
+
+	/**
+	 * Forces a single file.
+	 */
+	@FunctionalInterface
+	interface Sync {
+		void force() throws IOException;
+	}
+
+	private final Mode mode;
+	private final long windowMillis;
+	private final ScheduledExecutorService committer;
+	private List<Commit> pending = new ArrayList<>();
+
+	/**
+	 * @param mode When to force written data
+	 * @param windowMillis Time in milliseconds to wait for further commits before forcing a batch, only relevant for {@link Mode#GROUP_COMMIT}
+	 */
+	public Durability(Mode mode, long windowMillis) {
+		this.mode = mode;
+		this.windowMillis = Math.max(windowMillis, 0);
+		if (mode == Mode.GROUP_COMMIT) {
+			this.committer = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder().setNameFormat("webdav-group-commit-%d").setDaemon(true).build());
+		} else {
+			this.committer = null;
+		}
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Returns a sync forcing the given channel including its metadata, if it is a {@link FileChannel}.
+	 *
+	 * @param channel A channel a file has been written to
+	 * @return A sync or <code>null</code> if the channel can not be forced
+	 */
+	static Sync of(Channel channel) {
+		if (channel instanceof FileChannel) {
+			return () -> ((FileChannel) channel).force(true);
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Makes a written file and its directory entry durable.
+	 *
+	 * @param file Forces the written file, may be <code>null</code> if only a directory has been modified. Will be called on a different thread in group commit mode.
+	 * @param directory The directory in which the file has been created or <code>null</code>
+	 * @return A future completing as soon as both file and directory are durable
+	 */
+	public CompletableFuture<Void> commit(Sync file, Path directory) {
+		switch (mode) {
+			case NONE:
+				return CompletableFuture.completedFuture(null);
+			case FSYNC:
+				CompletableFuture<Void> result = new CompletableFuture<>();
+				try {
+					if (file != null) {
+						file.force();
+					}
+					if (directory != null) {
+						forceDirectory(directory);
+					}
+					result.complete(null);
+				} catch (IOException | RuntimeException e) {
+					result.completeExceptionally(e);
+				}
+				return result;
+			case GROUP_COMMIT:
+				return enqueue(new Commit(file, directory));
+			default:
+				throw new IllegalStateException("Unknown mode " + mode);
+		}
+	}
+
+	/**
+	 * Blocking variant of {@link #commit(Sync, Path)}.
+	 *
+	 * @param file Forces the written file, may be <code>null</code> if only a directory has been modified
+	 * @param directory The directory in which the file has been created or <code>null</code>
+	 * @throws IOException If forcing the file failed
+	 */
+	public void commitAndWait(Sync file, Path directory) throws IOException {
+		try {
+			commit(file, directory).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for commit.");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			} else if (e.getCause() instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			} else {
+				throw new IOException("Commit failed.", e.getCause());
+			}
+		}
+	}
+
+	private synchronized CompletableFuture<Void> enqueue(Commit commit) {
+		if (pending.isEmpty()) {
+			try {
+				committer.schedule(this::forceBatch, windowMillis, TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException e) {
+				commit.result.completeExceptionally(new IOException("Durability already closed.", e));
+				return commit.result;
+			}
+		}
+		pending.add(commit);
+		return commit.result;
+	}
+
+	private void forceBatch() {
+		List<Commit> batch;
+		synchronized (this) {
+			batch = pending;
+			pending = new ArrayList<>();
+		}
+		Set<Path> directories = new LinkedHashSet<>();
+		for (Commit commit : batch) {
+			try {
+				if (commit.file != null) {
+					commit.file.force();
+				}
+			} catch (IOException | RuntimeException e) {
+				commit.result.completeExceptionally(e);
+			}
+			if (commit.directory != null) {
+				directories.add(commit.directory);
+			}
+		}
+		for (Path directory : directories) {
+			forceDirectory(directory);
+		}
+		for (Commit commit : batch) {
+			commit.result.complete(null); // no-op if already failed
+		}
+		LOG.trace("Committed {} files in {} directories.", batch.size(), directories.size());
+	}
+
+	/**
+	 * Forces a directory, making newly created entries durable. Best effort, as not all platforms support opening directories.
+	 */
+	private static void forceDirectory(Path directory) {
+		try (FileChannel ch = FileChannel.open(directory, StandardOpenOption.READ)) {
+			ch.force(true);
+		} catch (IOException | UnsupportedOperationException e) {
+			LOG.trace("Unable to force directory {}.", directory, e);
+		}
+	}
+
+	@Override
+	public void close() {
+		if (committer != null) {
+			committer.shutdown(); // pending batches are still forced
+		}
+	}
+
+	private static class Commit {
+
+		private final Sync file;
+		private final Path directory;
+		private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+		private Commit(Sync file, Path directory) {
+			this.file = file;
+			this.directory = directory;
+		}
+
+	}
+
+}
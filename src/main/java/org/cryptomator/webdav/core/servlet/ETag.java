@@ -0,0 +1,82 @@
+package org.cryptomator.webdav.core.servlet;
+
+import com.google.common.base.CharMatcher;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entity tags (<a href="https://tools.ietf.org/html/rfc7232#section-2.3">RFC 7232 Section 2.3</a>) derived from file attributes.
+ */
+final class ETag {
+
+	private static final String WEAK_PREFIX = "W/";
+	private static final String ANY = "*";
+	private static final char QUOTE = '"';
+
+	private ETag() {
+	}
+
+	/**
+	 * Creates a strong validator from the file key, size and modification time of a file.
+	 *
+	 * @param attr Attributes of the file
+	 * @return A quoted entity tag, e.g. <code>"1f2e3d-400-5d6a3b2c1f000"</code>
+	 */
+	public static String of(BasicFileAttributes attr) {
+		String fileKeyHash = Integer.toHexString(Objects.hashCode(attr.fileKey()));
+		String size = Long.toHexString(attr.size());
+		String mtime = Long.toHexString(attr.lastModifiedTime().to(TimeUnit.MICROSECONDS));
+		return QUOTE + fileKeyHash + '-' + size + '-' + mtime + QUOTE;
+	}
+
+	/**
+	 * Checks whether the given entity tag is contained in a header value like the one of <code>If-None-Match</code> or <code>If-Match</code>.
+	 *
+	 * @param headerValue Either <code>*</code> or a comma-separated list of (possibly weak) entity tags
+	 * @param etag A strong entity tag as created by {@link #of(BasicFileAttributes)}
+	 * @param weakComparison <code>true</code> to use the weak comparison function, <code>false</code> for the strong comparison function
+	 * @return <code>true</code> if any of the listed entity tags matches
+	 * @see <a href="https://tools.ietf.org/html/rfc7232#section-2.3.2">RFC 7232 Section 2.3.2</a>
+	 */
+	public static boolean matches(String headerValue, String etag, boolean weakComparison) {
+		if (ANY.equals(headerValue.trim())) {
+			return true;
+		}
+		int pos = 0;
+		while (pos < headerValue.length()) {
+			// skip separators:
+			while (pos < headerValue.length() && (headerValue.charAt(pos) == ',' || CharMatcher.whitespace().matches(headerValue.charAt(pos)))) {
+				pos++;
+			}
+			boolean weak = headerValue.startsWith(WEAK_PREFIX, pos);
+			if (weak) {
+				pos += WEAK_PREFIX.length();
+			}
+			if (pos >= headerValue.length() || headerValue.charAt(pos) != QUOTE) {
+				return false; // malformed
+			}
+			int end = headerValue.indexOf(QUOTE, pos + 1);
+			if (end == -1) {
+				return false; // malformed
+			}
+			String candidate = headerValue.substring(pos, end + 1);
+			if ((weakComparison || !weak) && candidate.equals(etag)) {
+				return true;
+			}
+			pos = end + 1;
+		}
+		return false;
+	}
+
+	/**
+	 * @param headerValue A header value like the one of <code>If-Range</code>
+	 * @return <code>true</code> if the value is an entity tag rather than an HTTP date
+	 */
+	public static boolean isETag(String headerValue) {
+		String trimmed = headerValue.trim();
+		return trimmed.startsWith(WEAK_PREFIX) || trimmed.indexOf(QUOTE) == 0;
+	}
+
+}
@@ -0,0 +1,190 @@
+package org.cryptomator.webdav.core.servlet;
+
+import com.google.common.base.Splitter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores digests of uploaded files in a user-defined file attribute, so they can be served without reading the file again.
+ * <p>
+ * A stored digest is bound to the size and modification time of the file at the time it has been computed.
+ * Any later modification by other means than a full PUT invalidates it.
+ */
+class FileDigests {
+
+	private static final Logger LOG = LoggerFactory.getLogger(FileDigests.class);
+	private static final String ATTRIBUTE_NAME = "org.cryptomator.webdav.digest";
+	private static final char FIELD_SEP = ':';
+	private static final Splitter FIELD_SPLITTER = Splitter.on(FIELD_SEP);
+	private static final Splitter DIGEST_LIST_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+
+	private final String algorithm;
+
+	/**
+	 * @param algorithm Name of a {@link MessageDigest} algorithm, e.g. <code>SHA-256</code>, or <code>null</code> to disable digests
+	 * @throws IllegalArgumentException If the algorithm is not supported
+	 */
+	public FileDigests(String algorithm) throws IllegalArgumentException {
+		if (algorithm != null) {
+			try {
+				MessageDigest.getInstance(algorithm);
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalArgumentException("Unsupported digest algorithm " + algorithm, e);
+			}
+		}
+		this.algorithm = algorithm;
+	}
+
+	public boolean isEnabled() {
+		return algorithm != null;
+	}
+
+	/**
+	 * @return A new instance of the configured message digest
+	 * @throws IllegalStateException If digests are disabled
+	 */
+	public MessageDigest newMessageDigest() throws IllegalStateException {
+		if (algorithm == null) {
+			throw new IllegalStateException("Digests disabled.");
+		}
+		try {
+			return MessageDigest.getInstance(algorithm);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("Algorithm checked during construction.", e);
+		}
+	}
+
+	/**
+	 * Stores the digest of a completely written file. Failures, e.g. due to missing support for user-defined attributes, are only logged.
+	 *
+	 * @param file The file the digest has been computed of
+	 * @param digest The digest of the file's content
+	 */
+	public void store(Path file, byte[] digest) {
+		UserDefinedFileAttributeView view = Files.getFileAttributeView(file, UserDefinedFileAttributeView.class, LinkOption.NOFOLLOW_LINKS);
+		if (view == null) {
+			return;
+		}
+		try {
+			BasicFileAttributes attr = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+			String value = algorithm + FIELD_SEP + attr.size() + FIELD_SEP + attr.lastModifiedTime().to(TimeUnit.MICROSECONDS) + FIELD_SEP + Base64.getEncoder().encodeToString(digest);
+			view.write(ATTRIBUTE_NAME, StandardCharsets.US_ASCII.encode(value));
+		} catch (IOException | UnsupportedOperationException e) {
+			LOG.debug("Failed to store digest of {}.", file, e);
+		}
+	}
+
+	/**
+	 * @param file A file
+	 * @param attr Current attributes of the file
+	 * @return The stored digest, if it has been computed using the configured algorithm and the file hasn't been modified since
+	 */
+	public Optional<byte[]> load(Path file, BasicFileAttributes attr) {
+		if (algorithm == null) {
+			return Optional.empty();
+		}
+		UserDefinedFileAttributeView view = Files.getFileAttributeView(file, UserDefinedFileAttributeView.class, LinkOption.NOFOLLOW_LINKS);
+		if (view == null) {
+			return Optional.empty();
+		}
+		try {
+			ByteBuffer buf = ByteBuffer.allocate(view.size(ATTRIBUTE_NAME));
+			view.read(ATTRIBUTE_NAME, buf);
+			buf.flip();
+			List<String> fields = FIELD_SPLITTER.splitToList(StandardCharsets.US_ASCII.decode(buf));
+			if (fields.size() == 4 //
+					&& algorithm.equals(fields.get(0)) //
+					&& Long.toString(attr.size()).equals(fields.get(1)) //
+					&& Long.toString(attr.lastModifiedTime().to(TimeUnit.MICROSECONDS)).equals(fields.get(2))) {
+				return Optional.of(Base64.getDecoder().decode(fields.get(3)));
+			} else {
+				return Optional.empty(); // outdated
+			}
+		} catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+			// attribute not present, unsupported or malformed
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Carries a valid digest over to a copy of the file.
+	 *
+	 * @param src The original file
+	 * @param dst A copy of the original file
+	 */
+	public void copy(Path src, Path dst) {
+		if (algorithm == null) {
+			return;
+		}
+		try {
+			BasicFileAttributes srcAttr = Files.readAttributes(src, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+			load(src, srcAttr).ifPresent(digest -> store(dst, digest));
+		} catch (IOException e) {
+			LOG.debug("Failed to copy digest of {}.", src, e);
+		}
+	}
+
+	/**
+	 * Checks a computed digest against the digests sent by the client.
+	 *
+	 * @param contentDigestHeader Value of the <code>Content-Digest</code> header (<a href="https://www.rfc-editor.org/rfc/rfc9530">RFC 9530</a>), e.g. <code>sha-256=:base64:</code>, or <code>null</code>
+	 * @param digestHeader Value of the legacy <code>Digest</code> header (<a href="https://tools.ietf.org/html/rfc3230">RFC 3230</a>), e.g. <code>SHA-256=base64</code>, or <code>null</code>
+	 * @param digest The digest computed from the received content
+	 * @return <code>false</code> if the client sent a digest using the configured algorithm that differs from the computed one
+	 */
+	public boolean matches(String contentDigestHeader, String digestHeader, byte[] digest) {
+		return matches(contentDigestHeader, digest, true) && matches(digestHeader, digest, false);
+	}
+
+	private boolean matches(String headerValue, byte[] digest, boolean colonDelimited) {
+		if (headerValue == null) {
+			return true;
+		}
+		for (String entry : DIGEST_LIST_SPLITTER.split(headerValue)) {
+			int eq = entry.indexOf('=');
+			if (eq == -1 || !isConfiguredAlgorithm(entry.substring(0, eq).trim())) {
+				continue; // other algorithms are ignored
+			}
+			String value = entry.substring(eq + 1).trim();
+			if (colonDelimited && value.length() >= 2 && value.charAt(0) == FIELD_SEP && value.charAt(value.length() - 1) == FIELD_SEP) {
+				value = value.substring(1, value.length() - 1);
+			}
+			try {
+				return Arrays.equals(digest, Base64.getDecoder().decode(value));
+			} catch (IllegalArgumentException e) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean isConfiguredAlgorithm(String name) {
+		return algorithm.equalsIgnoreCase(name) || "SHA-1".equalsIgnoreCase(algorithm) && "sha".equalsIgnoreCase(name);
+	}
+
+	/**
+	 * @param digest A digest computed using the configured algorithm
+	 * @return The digest formatted as value of a <code>Content-Digest</code> header, e.g. <code>sha-256=:base64:</code>
+	 */
+	public String toContentDigest(byte[] digest) {
+		return algorithm.toLowerCase(Locale.ROOT) + '=' + FIELD_SEP + Base64.getEncoder().encodeToString(digest) + FIELD_SEP;
+	}
+
+}
@@ -0,0 +1,189 @@
+package org.cryptomator.webdav.core.servlet;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares read-only {@link FileChannel}s between concurrent and consecutive reads of the same file.
+ * <p>
+ * Clients streaming a file as many small ranged requests would otherwise open (and on an encrypted file system: read the header of) the file once per request.
+ * Channels are reference-counted and closed after they haven't been used for the configured idle time, or as soon as the path is modified by this servlet.
+ * Since a channel is shared, readers must only use positional reads, i.e. never change the channel's position.
+ */
+class FileHandleCache implements Closeable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(FileHandleCache.class);
+
+	private final long idleMillis;
+	private final ConcurrentMap<Path, Handle> handles = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService evictionScheduler;
+
+	/**
+	 * @param idleMillis Time in milliseconds after which unused channels are closed. Channels are not shared at all if not positive.
+	 */
+	public FileHandleCache(long idleMillis) {
+		this.idleMillis = idleMillis;
+		if (idleMillis > 0) {
+			long evictionInterval = Math.max(idleMillis / 2, 1);
+			this.evictionScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("webdav-handle-eviction-%d").setDaemon(true).build());
+			this.evictionScheduler.scheduleWithFixedDelay(this::evictIdleHandles, evictionInterval, evictionInterval, TimeUnit.MILLISECONDS);
+		} else {
+			this.evictionScheduler = null;
+		}
+	}
+
+	/**
+	 * Returns a handle for reading the given file. The handle must be {@link Handle#close() closed} after use, which doesn't necessarily close the underlying channel.
+	 *
+	 * @param path The file to read from
+	 * @param attr Current attributes of the file. Previously opened channels are only reused if size, modification time and file key match.
+	 * @return A handle whose channel is either a {@link FileChannel} safe for concurrent positional reads or an unshared channel, if the file system doesn't support file channels
+	 * @throws IOException If opening the file fails
+	 */
+	public Handle open(Path path, BasicFileAttributes attr) throws IOException {
+		if (evictionScheduler == null) {
+			return Handle.unshared(Files.newByteChannel(path, StandardOpenOption.READ));
+		}
+		try {
+			while (true) {
+				Handle handle = handles.computeIfAbsent(path, p -> openShared(p, attr));
+				if (handle.channel == null) {
+					handles.remove(path, handle);
+					return Handle.unshared(Files.newByteChannel(path, StandardOpenOption.READ));
+				} else if (!handle.isValidFor(attr) || !handle.channel.isOpen()) {
+					// file changed since opening the channel or channel closed due to an interrupt
+					if (handles.remove(path, handle)) {
+						handle.retire();
+					}
+				} else if (handle.retain()) {
+					return handle;
+				} else {
+					// evicted concurrently
+					handles.remove(path, handle);
+				}
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	private Handle openShared(Path path, BasicFileAttributes attr) throws UncheckedIOException {
+		try {
+			return new Handle(FileChannel.open(path, StandardOpenOption.READ), attr);
+		} catch (UnsupportedOperationException e) {
+			LOG.debug("File channels not supported for {}", path);
+			return new Handle(null, attr);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Closes the channels of the given path and its descendants as soon as they are no longer in use.
+	 *
+	 * @param path A modified or deleted path
+	 */
+	public void invalidate(Path path) {
+		handles.entrySet().removeIf(entry -> {
+			if (entry.getKey().startsWith(path)) {
+				entry.getValue().retire();
+				return true;
+			} else {
+				return false;
+			}
+		});
+	}
+
+	private void evictIdleHandles() {
+		long idleSince = System.currentTimeMillis() - idleMillis;
+		handles.values().removeIf(handle -> handle.retireIfIdle(idleSince));
+	}
+
+	@Override
+	public void close() {
+		if (evictionScheduler != null) {
+			evictionScheduler.shutdownNow();
+		}
+		handles.values().forEach(Handle::retire);
+		handles.clear();
+	}
+
+	/**
+	 * A lease on a (possibly shared) read-only channel.
+	 */
+	static class Handle extends RefCounted implements Closeable {
+
+		private final SeekableByteChannel channel;
+		private final long size;
+		private final long lastModified;
+		private final Object fileKey;
+
+		private Handle(SeekableByteChannel channel, BasicFileAttributes attr) {
+			this.channel = channel;
+			this.size = attr.size();
+			this.lastModified = attr.lastModifiedTime().toMillis();
+			this.fileKey = attr.fileKey();
+		}
+
+		private Handle(SeekableByteChannel channel) {
+			this.channel = channel;
+			this.size = -1;
+			this.lastModified = -1;
+			this.fileKey = null;
+		}
+
+		private static Handle unshared(SeekableByteChannel channel) {
+			Handle handle = new Handle(channel);
+			handle.retain();
+			handle.retire(); // closes the channel when the only user closes the handle
+			return handle;
+		}
+
+		/**
+		 * @return The channel to read from. Use positional reads only, if it is a {@link FileChannel}.
+		 */
+		public SeekableByteChannel channel() {
+			return channel;
+		}
+
+		private boolean isValidFor(BasicFileAttributes attr) {
+			return size == attr.size() && lastModified == attr.lastModifiedTime().toMillis() && Objects.equals(fileKey, attr.fileKey());
+		}
+
+		@Override
+		public void close() {
+			release();
+		}
+
+		@Override
+		protected void dispose() {
+			if (channel == null) {
+				return;
+			}
+			try {
+				channel.close();
+			} catch (IOException e) {
+				LOG.warn("Failed to close channel.", e);
+			}
+		}
+
+	}
+
+}
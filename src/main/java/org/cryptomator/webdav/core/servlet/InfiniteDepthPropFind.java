@@ -0,0 +1,343 @@
+package org.cryptomator.webdav.core.servlet;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.apache.jackrabbit.webdav.DavResource;
+import org.apache.jackrabbit.webdav.DavResourceIterator;
+import org.apache.jackrabbit.webdav.MultiStatusResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Enumerates a resource and all of its descendants for a <code>Depth: infinity</code> PROPFIND request, passing the response of each resource
+ * to a {@link ResponseSink} as soon as it has been created.
+ * <p>
+ * If configured, the subfolders are listed by multiple threads concurrently. Their responses are handed over to the request thread via a bounded
+ * queue, so memory usage doesn't depend on the size of the tree, even if the client reads the response slower than the tree is traversed.
+ * The traversal stops once the configured number of resources or time has been exceeded.
+ */
+class InfiniteDepthPropFind implements Closeable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(InfiniteDepthPropFind.class);
+	private static final int QUEUE_CAPACITY = 1024;
+	private static final Object END = new Object();
+
+	private final int parallelism;
+	private final long maxResources;
+	private final long timeoutMillis;
+	private final ExecutorService executor;
+
+	/**
+	 * @param parallelism Maximum number of folders listed concurrently per request. Folders are listed sequentially by the request thread if less than 2.
+	 * @param maxResources Maximum number of resources enumerated per request, unlimited if not positive
+	 * @param timeoutMillis Maximum time in milliseconds spent enumerating resources per request, unlimited if not positive
+	 */
+	public InfiniteDepthPropFind(int parallelism, long maxResources, long timeoutMillis) {
+		this.parallelism = parallelism;
+		this.maxResources = maxResources;
+		this.timeoutMillis = timeoutMillis;
+		if (parallelism > 1) {
+			this.executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("webdav-propfind-%d").setDaemon(true).build());
+		} else {
+			this.executor = null;
+		}
+	}
+
+	/**
+	 * @param root The requested resource
+	 * @param responseFactory Creates the response for a resource, i.e. reads the requested properties
+	 * @param sink Receives the responses of the enumerated resources, always invoked by the calling thread
+	 * @return {@link Outcome#COMPLETE} if all resources have been enumerated, otherwise the limit that has been exceeded
+	 * @throws IOException If the sink fails to write a response or the calling thread is interrupted
+	 */
+	public Outcome run(DavResource root, Function<DavResource, MultiStatusResponse> responseFactory, ResponseSink sink) throws IOException {
+		if (executor == null) {
+			return new SequentialTraversal(responseFactory, sink).run(root);
+		} else {
+			return new ParallelTraversal(responseFactory).run(root, sink);
+		}
+	}
+
+	@Override
+	public void close() {
+		if (executor != null) {
+			executor.shutdown();
+		}
+	}
+
+	private long deadline() {
+		return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+	}
+
+	private static void close(DavResourceIterator members) {
+		if (members instanceof Closeable) {
+			try {
+				((Closeable) members).close();
+			} catch (IOException e) {
+				LOG.warn("Failed to close member iterator.", e);
+			}
+		}
+	}
+
+	public enum Outcome {
+		COMPLETE, TOO_MANY_RESOURCES, TIMEOUT
+	}
+
+	@FunctionalInterface
+	interface ResponseSink {
+
+		void write(MultiStatusResponse response) throws IOException;
+
+	}
+
+	/**
+	 * Depth-first traversal by the request thread, writing each response before enumerating the next resource.
+	 */
+	private class SequentialTraversal {
+
+		private final Function<DavResource, MultiStatusResponse> responseFactory;
+		private final ResponseSink sink;
+		private final long deadline = deadline();
+		private long count;
+		private Outcome outcome = Outcome.COMPLETE;
+
+		SequentialTraversal(Function<DavResource, MultiStatusResponse> responseFactory, ResponseSink sink) {
+			this.responseFactory = responseFactory;
+			this.sink = sink;
+		}
+
+		Outcome run(DavResource root) throws IOException {
+			visit(root);
+			return outcome;
+		}
+
+		private boolean visit(DavResource resource) throws IOException {
+			if (maxResources > 0 && ++count > maxResources) {
+				outcome = Outcome.TOO_MANY_RESOURCES;
+				return false;
+			} else if (timeoutMillis > 0 && System.nanoTime() - deadline > 0) {
+				outcome = Outcome.TIMEOUT;
+				return false;
+			}
+			sink.write(responseFactory.apply(resource));
+			if (resource.isCollection()) {
+				DavResourceIterator members = resource.getMembers();
+				try {
+					while (members.hasNext()) {
+						if (!visit(members.nextResource())) {
+							return false;
+						}
+					}
+				} finally {
+					close(members);
+				}
+			}
+			return true;
+		}
+
+	}
+
+	/**
+	 * Traversal by up to <code>parallelism</code> workers, each listing one folder at a time and pushing subfolders to a shared stack.
+	 * The request thread writes the responses produced by the workers and waits for all workers to finish before returning.
+	 */
+	private class ParallelTraversal {
+
+		private final Function<DavResource, MultiStatusResponse> responseFactory;
+		private final BlockingQueue<Object> output = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+		private final Deque<DavResource> pending = new ArrayDeque<>(); // guarded by this
+		private final AtomicLong count = new AtomicLong();
+		private int busyWorkers; // guarded by this
+		private int runningWorkers; // guarded by this
+		private volatile boolean stopped;
+		private volatile Outcome outcome = Outcome.COMPLETE;
+		private volatile RuntimeException failure;
+
+		ParallelTraversal(Function<DavResource, MultiStatusResponse> responseFactory) {
+			this.responseFactory = responseFactory;
+		}
+
+		Outcome run(DavResource root, ResponseSink sink) throws IOException {
+			long deadline = deadline();
+			if (maxResources > 0 && count.incrementAndGet() > maxResources) {
+				return Outcome.TOO_MANY_RESOURCES;
+			}
+			sink.write(responseFactory.apply(root));
+			if (!root.isCollection()) {
+				return Outcome.COMPLETE;
+			}
+			startWorkers(root);
+			boolean ended = false;
+			try {
+				boolean writing = true;
+				while (!ended) {
+					Object item = stopped || timeoutMillis <= 0 ? output.take() : output.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+					if (item == null) {
+						exceeded(Outcome.TIMEOUT);
+						writing = false;
+					} else if (item == END) {
+						ended = true;
+					} else if (writing) {
+						sink.write((MultiStatusResponse) item);
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for PROPFIND responses");
+			} finally {
+				if (!ended) {
+					stop();
+					awaitWorkers();
+				}
+			}
+			if (failure != null) {
+				throw failure;
+			}
+			return outcome;
+		}
+
+		private void startWorkers(DavResource root) {
+			synchronized (this) {
+				pending.push(root);
+				runningWorkers = parallelism;
+			}
+			for (int i = 0; i < parallelism; i++) {
+				try {
+					executor.execute(this::work);
+				} catch (RejectedExecutionException e) {
+					fail(e);
+					boolean none;
+					synchronized (this) {
+						runningWorkers -= parallelism - i;
+						none = runningWorkers == 0;
+					}
+					if (none) {
+						// no worker left to signal the end, and nobody reads the queue yet:
+						output.clear();
+						output.add(END);
+					}
+					return;
+				}
+			}
+		}
+
+		private void awaitWorkers() {
+			Object item;
+			do {
+				item = Uninterruptibles.takeUninterruptibly(output);
+			} while (item != END);
+		}
+
+		private void work() {
+			try {
+				DavResource folder;
+				while ((folder = nextFolder()) != null) {
+					try {
+						list(folder);
+					} finally {
+						synchronized (this) {
+							busyWorkers--;
+							notifyAll();
+						}
+					}
+				}
+			} catch (RuntimeException e) {
+				fail(e);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				fail(new UncheckedIOException(new InterruptedIOException("Interrupted while enumerating resources")));
+			} finally {
+				workerFinished();
+			}
+		}
+
+		/**
+		 * @return The next folder to list or <code>null</code> if the traversal is complete or has been stopped
+		 */
+		private synchronized DavResource nextFolder() throws InterruptedException {
+			while (!stopped && pending.isEmpty() && busyWorkers > 0) {
+				wait();
+			}
+			if (stopped || pending.isEmpty()) {
+				notifyAll();
+				return null;
+			}
+			busyWorkers++;
+			return pending.pop();
+		}
+
+		private void list(DavResource folder) throws InterruptedException {
+			DavResourceIterator members = folder.getMembers();
+			try {
+				while (!stopped && members.hasNext()) {
+					DavResource member = members.nextResource();
+					if (maxResources > 0 && count.incrementAndGet() > maxResources) {
+						exceeded(Outcome.TOO_MANY_RESOURCES);
+						return;
+					}
+					output.put(responseFactory.apply(member));
+					if (member.isCollection()) {
+						synchronized (this) {
+							pending.push(member);
+							notify();
+						}
+					}
+				}
+			} finally {
+				close(members);
+			}
+		}
+
+		private void workerFinished() {
+			boolean last;
+			synchronized (this) {
+				last = --runningWorkers == 0;
+			}
+			if (last) {
+				Uninterruptibles.putUninterruptibly(output, END);
+			}
+		}
+
+		private void exceeded(Outcome limit) {
+			synchronized (this) {
+				if (!stopped) {
+					outcome = limit;
+				}
+			}
+			stop();
+		}
+
+		private void fail(RuntimeException e) {
+			synchronized (this) {
+				if (failure == null) {
+					failure = e;
+				} else {
+					failure.addSuppressed(e);
+				}
+			}
+			stop();
+		}
+
+		private synchronized void stop() {
+			stopped = true;
+			notifyAll();
+		}
+
+	}
+
+}
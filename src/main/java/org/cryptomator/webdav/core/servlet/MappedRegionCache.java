@@ -0,0 +1,242 @@
+package org.cryptomator.webdav.core.servlet;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves byte ranges of large files from read-only memory-mapped regions.
+ * <p>
+ * Files are mapped in regions of {@value #DEFAULT_REGION_SIZE} bytes. Regions are shared by concurrent requests and reference-counted.
+ * A region that has not been used for {@value #IDLE_MILLIS} ms is unmapped, as are all regions of a file that has been modified by this servlet.
+ * Regions are bound to the size and modification time of the file at the time of mapping, i.e. new file contents result in new regions.
+ */
+class MappedRegionCache implements Closeable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(MappedRegionCache.class);
+	private static final long DEFAULT_REGION_SIZE = 64 * 1024 * 1024;
+	private static final long IDLE_MILLIS = 30_000;
+	private static final MethodHandle INVOKE_CLEANER = lookupInvokeCleaner();
+
+	private final long threshold;
+	private final long regionSize;
+	private final ConcurrentMap<RegionKey, Region> regions = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService evictionScheduler;
+
+	/**
+	 * @param threshold Minimum file size for which memory mapping is used. Negative values disable memory mapping.
+	 */
+	public MappedRegionCache(long threshold) {
+		this(threshold, DEFAULT_REGION_SIZE);
+	}
+
+	MappedRegionCache(long threshold, long regionSize) {
+		this.threshold = threshold;
+		this.regionSize = regionSize;
+		if (threshold >= 0) {
+			this.evictionScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("webdav-mmap-eviction-%d").setDaemon(true).build());
+			this.evictionScheduler.scheduleWithFixedDelay(this::evictIdleRegions, IDLE_MILLIS, IDLE_MILLIS, TimeUnit.MILLISECONDS);
+		} else {
+			this.evictionScheduler = null;
+		}
+	}
+
+	private static MethodHandle lookupInvokeCleaner() {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			MethodHandle invokeCleaner = MethodHandles.lookup().findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class));
+			return invokeCleaner.bindTo(theUnsafe.get(null));
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			LOG.debug("Unable to unmap buffers explicitly. Unused regions will be unmapped by the garbage collector.", e);
+			return null;
+		}
+	}
+
+	/**
+	 * @param attr Attributes of a file
+	 * @return <code>true</code> if ranges of the given file should be served using {@link #transfer(Path, BasicFileAttributes, long, long, OutputStream)}
+	 */
+	public boolean isApplicable(BasicFileAttributes attr) {
+		return threshold >= 0 && attr.size() >= threshold;
+	}
+
+	/**
+	 * Writes <code>count</code> bytes starting at <code>position</code> to the given output stream.
+	 *
+	 * @param path The file to read from
+	 * @param attr Current attributes of the file
+	 * @param position Index of the first byte to be written
+	 * @param count Maximum number of bytes to be written
+	 * @param out Destination of the written bytes
+	 * @return <code>false</code> if the file system doesn't support memory mapping and nothing has been written
+	 * @throws IOException If mapping the file or writing to the output stream fails
+	 */
+	public boolean transfer(Path path, BasicFileAttributes attr, long position, long count, OutputStream out) throws IOException {
+		WritableByteChannel dst = out instanceof WritableByteChannel ? (WritableByteChannel) out : Channels.newChannel(out);
+		long end = Math.min(position + count, attr.size());
+		long pos = position;
+		while (pos < end) {
+			long index = pos / regionSize;
+			RegionKey key = new RegionKey(path, attr.size(), attr.lastModifiedTime().toMillis(), index);
+			Region region;
+			try {
+				region = acquire(key);
+			} catch (UnsupportedOperationException e) {
+				if (pos == position) {
+					LOG.debug("Memory mapping not supported for {}", path);
+					return false;
+				} else {
+					throw new IOException("Failed to map " + path, e);
+				}
+			}
+			try {
+				long regionStart = index * regionSize;
+				int from = (int) (pos - regionStart);
+				int to = (int) Math.min(end - regionStart, region.buffer.capacity());
+				ByteBuffer slice = region.buffer.duplicate();
+				slice.limit(to).position(from);
+				while (slice.hasRemaining()) {
+					dst.write(slice);
+				}
+				pos = regionStart + to;
+			} finally {
+				region.release();
+			}
+		}
+		return true;
+	}
+
+	private Region acquire(RegionKey key) throws IOException {
+		try {
+			while (true) {
+				Region region = regions.computeIfAbsent(key, this::map);
+				if (region.retain()) {
+					return region;
+				} else {
+					// evicted concurrently
+					regions.remove(key, region);
+				}
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	private Region map(RegionKey key) throws UncheckedIOException {
+		long regionStart = key.index * regionSize;
+		long regionLength = Math.min(regionSize, key.size - regionStart);
+		try (FileChannel ch = FileChannel.open(key.path, StandardOpenOption.READ)) {
+			return new Region(ch.map(FileChannel.MapMode.READ_ONLY, regionStart, regionLength));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Unmaps all regions of the given path and its descendants as soon as they are no longer in use.
+	 *
+	 * @param path A modified or deleted path
+	 */
+	public void invalidate(Path path) {
+		regions.entrySet().removeIf(entry -> {
+			if (entry.getKey().path.startsWith(path)) {
+				entry.getValue().retire();
+				return true;
+			} else {
+				return false;
+			}
+		});
+	}
+
+	private void evictIdleRegions() {
+		long idleSince = System.currentTimeMillis() - IDLE_MILLIS;
+		regions.values().removeIf(region -> region.retireIfIdle(idleSince));
+	}
+
+	@Override
+	public void close() {
+		if (evictionScheduler != null) {
+			evictionScheduler.shutdownNow();
+		}
+		regions.values().forEach(Region::retire);
+		regions.clear();
+	}
+
+	private static class RegionKey {
+
+		private final Path path;
+		private final long size;
+		private final long lastModified;
+		private final long index;
+
+		private RegionKey(Path path, long size, long lastModified, long index) {
+			this.path = path;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.index = index;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj instanceof RegionKey) {
+				RegionKey other = (RegionKey) obj;
+				return path.equals(other.path) && size == other.size && lastModified == other.lastModified && index == other.index;
+			} else {
+				return false;
+			}
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(path, size, lastModified, index);
+		}
+
+	}
+
+	private static class Region extends RefCounted {
+
+		private final MappedByteBuffer buffer;
+
+		private Region(MappedByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		protected void dispose() {
+			if (INVOKE_CLEANER != null) {
+				try {
+					INVOKE_CLEANER.invokeExact((ByteBuffer) buffer);
+				} catch (Throwable e) {
+					LOG.warn("Failed to unmap buffer.", e);
+				}
+			}
+		}
+
+	}
+
+}
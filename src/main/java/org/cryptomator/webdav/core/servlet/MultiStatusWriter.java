@@ -0,0 +1,169 @@
+package org.cryptomator.webdav.core.servlet;
+
+import org.apache.jackrabbit.webdav.DavConstants;
+import org.apache.jackrabbit.webdav.MultiStatusResponse;
+import org.apache.jackrabbit.webdav.xml.DomUtil;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Writes a <code>DAV:multistatus</code> document one <code>DAV:response</code> at a time, so a response can be sent while further resources are still enumerated.
+ * <p>
+ * Unlike Jackrabbit's {@link org.apache.jackrabbit.webdav.MultiStatus}, which builds a DOM tree of the whole document before serializing it,
+ * only a single response element is held in memory at any time.
+ */
+class MultiStatusWriter implements Closeable {
+
+	private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+	private static final String DAV_PREFIX = "D";
+
+	private final XMLStreamWriter writer;
+	private final Document document;
+	private final Deque<Map<String, String>> namespaceScopes = new ArrayDeque<>();
+
+	/**
+	 * Writes the XML declaration and the start tag of the <code>DAV:multistatus</code> element.
+	 *
+	 * @param out The stream to write to. Not closed by this writer.
+	 * @throws IOException If writing fails
+	 */
+	public MultiStatusWriter(OutputStream out) throws IOException {
+		try {
+			this.document = DomUtil.createDocument();
+			this.writer = OUTPUT_FACTORY.createXMLStreamWriter(out, StandardCharsets.UTF_8.name());
+			writer.writeStartDocument(StandardCharsets.UTF_8.name(), "1.0");
+			writer.writeStartElement(DAV_PREFIX, DavConstants.XML_MULTISTATUS, DavConstants.NAMESPACE.getURI());
+			writer.writeNamespace(DAV_PREFIX, DavConstants.NAMESPACE.getURI());
+			Map<String, String> rootScope = new HashMap<>();
+			rootScope.put(DAV_PREFIX, DavConstants.NAMESPACE.getURI());
+			namespaceScopes.push(rootScope);
+		} catch (ParserConfigurationException e) {
+			throw new IllegalStateException("Failed to create DOM document.", e);
+		} catch (XMLStreamException e) {
+			throw new IOException("Failed to start multistatus document.", e);
+		}
+	}
+
+	/**
+	 * Serializes a single <code>DAV:response</code> element. The element is buffered by the underlying XML writer and the output stream,
+	 * i.e. bytes are sent whenever these buffers are full.
+	 *
+	 * @param response The response to append to the document
+	 * @throws IOException If writing fails
+	 */
+	public void write(MultiStatusResponse response) throws IOException {
+		try {
+			writeElement(response.toXml(document));
+		} catch (XMLStreamException e) {
+			throw new IOException("Failed to write multistatus response.", e);
+		}
+	}
+
+	/**
+	 * Writes the end tag of the <code>DAV:multistatus</code> element and flushes all buffered bytes.
+	 *
+	 * @throws IOException If writing fails
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			writer.writeEndElement();
+			writer.writeEndDocument();
+			writer.flush();
+			writer.close();
+		} catch (XMLStreamException e) {
+			throw new IOException("Failed to finish multistatus document.", e);
+		}
+	}
+
+	private void writeNode(Node node) throws XMLStreamException {
+		switch (node.getNodeType()) {
+			case Node.ELEMENT_NODE:
+				writeElement((Element) node);
+				break;
+			case Node.TEXT_NODE:
+			case Node.CDATA_SECTION_NODE:
+				writer.writeCharacters(node.getNodeValue());
+				break;
+			default:
+				// comments and processing instructions are not part of multistatus responses
+				break;
+		}
+	}
+
+	private void writeElement(Element element) throws XMLStreamException {
+		namespaceScopes.push(new HashMap<>());
+		String namespaceUri = Objects.toString(element.getNamespaceURI(), XMLConstants.NULL_NS_URI);
+		String prefix = Objects.toString(element.getPrefix(), XMLConstants.DEFAULT_NS_PREFIX);
+		String localName = element.getLocalName() != null ? element.getLocalName() : element.getTagName();
+		writer.writeStartElement(prefix, localName, namespaceUri);
+		declareNamespace(prefix, namespaceUri);
+		NamedNodeMap attributes = element.getAttributes();
+		for (int i = 0; i < attributes.getLength(); i++) {
+			Attr attr = (Attr) attributes.item(i);
+			if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attr.getNamespaceURI())) {
+				// explicit declarations, e.g. of prefixes used in QName-valued content
+				declareNamespace(XMLConstants.XMLNS_ATTRIBUTE.equals(attr.getLocalName()) ? XMLConstants.DEFAULT_NS_PREFIX : attr.getLocalName(), attr.getValue());
+			}
+		}
+		for (int i = 0; i < attributes.getLength(); i++) {
+			Attr attr = (Attr) attributes.item(i);
+			if (attr.getNamespaceURI() == null) {
+				writer.writeAttribute(attr.getLocalName() != null ? attr.getLocalName() : attr.getName(), attr.getValue());
+			} else if (!XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attr.getNamespaceURI())) {
+				String attrPrefix = Objects.toString(attr.getPrefix(), XMLConstants.DEFAULT_NS_PREFIX);
+				declareNamespace(attrPrefix, attr.getNamespaceURI());
+				writer.writeAttribute(attrPrefix, attr.getNamespaceURI(), attr.getLocalName(), attr.getValue());
+			}
+		}
+		for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+			writeNode(child);
+		}
+		writer.writeEndElement();
+		namespaceScopes.pop();
+	}
+
+	/**
+	 * Declares the given prefix on the current element, unless it is already bound to the same namespace in scope.
+	 */
+	private void declareNamespace(String prefix, String namespaceUri) throws XMLStreamException {
+		if (XMLConstants.XML_NS_PREFIX.equals(prefix) || namespaceUri.equals(lookupNamespace(prefix))) {
+			return;
+		}
+		if (prefix.isEmpty()) {
+			writer.writeDefaultNamespace(namespaceUri);
+		} else {
+			writer.writeNamespace(prefix, namespaceUri);
+		}
+		namespaceScopes.peek().put(prefix, namespaceUri);
+	}
+
+	private String lookupNamespace(String prefix) {
+		for (Map<String, String> scope : namespaceScopes) {
+			String uri = scope.get(prefix);
+			if (uri != null) {
+				return uri;
+			}
+		}
+		return XMLConstants.NULL_NS_URI; // the default namespace is unbound initially, all other prefixes don't match any namespace
+	}
+
+}
@@ -2,7 +2,13 @@ package org.cryptomator.webdav.core.servlet;
 
 final class OSUtil {
 
+	private static final boolean MAC_OS_15_4_OR_NEWER = checkMacOS15_4orNewer();
+
 	static boolean isMacOS15_4orNewer() {
+		return MAC_OS_15_4_OR_NEWER;
+	}
+
+	private static boolean checkMacOS15_4orNewer() {
 		var osName = System.getProperty("os.name").toLowerCase();
 		if (osName.contains("mac")) {
 			var osVersion = System.getProperty("os.version").split("\\.");
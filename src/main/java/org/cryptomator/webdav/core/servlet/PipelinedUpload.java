@@ -0,0 +1,121 @@
+package org.cryptomator.webdav.core.servlet;
+
+import com.google.common.io.ByteStreams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Copies a request body to a file using two buffers: While one buffer is written to disk by a background task, the other one is filled from the network.
+ * Buffers are filled completely before being written, resulting in few large writes instead of many small ones.
+ * <p>
+ * Bodies that fit into a single buffer are copied without involving a background task.
+ */
+class PipelinedUpload {
+
+	private final BufferPool bufferPool;
+	private final Executor writeExecutor;
+
+	/**
+	 * @param bufferPool Source of the transfer buffers
+	 * @param writeExecutor Executor for writing buffers to disk while reading the next one from the network
+	 */
+	public PipelinedUpload(BufferPool bufferPool, Executor writeExecutor) {
+		this.bufferPool = bufferPool;
+		this.writeExecutor = writeExecutor;
+	}
+
+	/**
+	 * Reads <code>in</code> until EOF and writes all bytes to <code>dst</code>.
+	 *
+	 * @param in The request body
+	 * @param dst The file to write to
+	 * @param expectedLength The announced size of the body, if known, or <code>-1</code>
+	 * @return Number of bytes copied
+	 * @throws IOException If reading or writing fails
+	 */
+	public long copy(InputStream in, WritableByteChannel dst, long expectedLength) throws IOException {
+		long sizeHint = expectedLength >= 0 ? expectedLength : Long.MAX_VALUE;
+		try (BufferPool.Lease first = bufferPool.acquire(sizeHint)) {
+			int n = ByteStreams.read(in, first.array(), 0, first.array().length);
+			if (n < first.array().length) {
+				// EOF reached, body fits into a single buffer:
+				writeFully(dst, first.buffer(), n);
+				return n;
+			}
+			try (BufferPool.Lease second = bufferPool.acquire(sizeHint)) {
+				return n + copyPipelined(in, dst, first, n, second);
+			}
+		}
+	}
+
+	private long copyPipelined(InputStream in, WritableByteChannel dst, BufferPool.Lease first, int firstLength, BufferPool.Lease second) throws IOException {
+		CompletableFuture<Void> pendingWrite = write(dst, first, firstLength);
+		BufferPool.Lease current = second;
+		BufferPool.Lease other = first;
+		long total = 0;
+		try {
+			while (true) {
+				// pendingWrite is using the other buffer, the current one is free:
+				int n = ByteStreams.read(in, current.array(), 0, current.array().length);
+				await(pendingWrite);
+				if (n == 0) {
+					break;
+				}
+				pendingWrite = write(dst, current, n);
+				total += n;
+				if (n < current.array().length) {
+					break; // EOF
+				}
+				BufferPool.Lease tmp = current;
+				current = other;
+				other = tmp;
+			}
+			await(pendingWrite);
+			return total;
+		} finally {
+			// never release a buffer or close the channel while it is still in use:
+			pendingWrite.handle((result, e) -> null).join();
+		}
+	}
+
+	private CompletableFuture<Void> write(WritableByteChannel dst, BufferPool.Lease buffer, int length) {
+		return CompletableFuture.runAsync(() -> {
+			try {
+				writeFully(dst, buffer.buffer(), length);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}, writeExecutor);
+	}
+
+	private static void writeFully(WritableByteChannel dst, ByteBuffer buffer, int length) throws IOException {
+		buffer.clear().limit(length);
+		while (buffer.hasRemaining()) {
+			dst.write(buffer);
+		}
+	}
+
+	private static void await(CompletableFuture<Void> write) throws IOException {
+		try {
+			write.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for write to complete.");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			} else {
+				throw new IOException("Write failed.", e.getCause());
+			}
+		}
+	}
+
+}
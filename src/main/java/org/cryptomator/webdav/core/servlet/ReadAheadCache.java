@@ -0,0 +1,299 @@
+package org.cryptomator.webdav.core.servlet;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Detects clients reading a file as a series of consecutive ranged requests and reads the following bytes in the background.
+ * <p>
+ * Each sequential reader of a file forms a stream. As long as a stream's requests are consecutive, the next window is prefetched while the current response is sent.
+ * The window starts at twice the size of the requested range and doubles with every further consecutive request, up to <code>maxWindowSize</code> bytes.
+ * <p>
+ * Since clients can't be told apart reliably (e.g. all local clients connect via loopback), up to {@value #STREAMS_PER_CLIENT} streams are tracked
+ * per file and client. A request continuing one of them advances that stream, any other request replaces the least recently used one,
+ * so readers interleaving their requests at different offsets don't reset each other's window. At most {@value #MAX_STREAMS} streams are tracked,
+ * each holding at most one window, which bounds the memory used for prefetched data to <code>MAX_STREAMS * maxWindowSize</code> bytes.
+ */
+class ReadAheadCache implements Closeable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ReadAheadCache.class);
+	private static final int MAX_STREAMS = 64;
+	private static final int STREAMS_PER_CLIENT = 4;
+	private static final long STREAM_IDLE_SECONDS = 30;
+	private static final int PREFETCH_THREADS = 4;
+
+	private final int maxWindowSize;
+	private final FileHandleCache fileHandles;
+	private final Cache<StreamKey, Readers> streams;
+	private final ExecutorService prefetchExecutor;
+	private final LongAdder hitCount = new LongAdder();
+
+	/**
+	 * @param maxWindowSize Maximum number of bytes prefetched per stream. Read-ahead is disabled if not positive.
+	 * @param fileHandles Source of channels used for prefetching
+	 */
+	public ReadAheadCache(int maxWindowSize, FileHandleCache fileHandles) {
+		this.maxWindowSize = maxWindowSize;
+		this.fileHandles = fileHandles;
+		this.streams = CacheBuilder.newBuilder() //
+				.maximumSize(MAX_STREAMS / STREAMS_PER_CLIENT) //
+				.expireAfterAccess(STREAM_IDLE_SECONDS, TimeUnit.SECONDS) //
+				.build();
+		if (maxWindowSize > 0) {
+			this.prefetchExecutor = Executors.newFixedThreadPool(PREFETCH_THREADS, new ThreadFactoryBuilder().setNameFormat("webdav-read-ahead-%d").setDaemon(true).build());
+		} else {
+			this.prefetchExecutor = null;
+		}
+	}
+
+	/**
+	 * Records a read by the given client and writes <code>count</code> bytes starting at <code>position</code> to the given output stream,
+	 * if they have been prefetched.
+	 *
+	 * @param path The file to read from
+	 * @param client Identifies the reading client, e.g. its remote address and user agent
+	 * @param attr Current attributes of the file
+	 * @param position Index of the first byte to be written
+	 * @param count Number of bytes to be written
+	 * @param out Destination of the written bytes
+	 * @return <code>false</code> if the requested bytes have not been prefetched and nothing has been written
+	 * @throws IOException If writing to the output stream fails
+	 */
+	public boolean transfer(Path path, String client, BasicFileAttributes attr, long position, long count, OutputStream out) throws IOException {
+		if (prefetchExecutor == null) {
+			return false;
+		}
+		Stream stream = streams.asMap().computeIfAbsent(new StreamKey(path, client), key -> new Readers(key.path)).select(position, count);
+		Prefetch prefetch = stream.advance(attr, position, count);
+		byte[] prefetched = prefetch == null ? null : prefetch.await();
+		if (prefetched == null) {
+			return false;
+		}
+		hitCount.increment();
+		out.write(prefetched, (int) (position - prefetch.position), (int) count);
+		return true;
+	}
+
+	/**
+	 * Discards all streams reading the given path and its descendants.
+	 *
+	 * @param path A modified or deleted path
+	 */
+	public void invalidate(Path path) {
+		streams.asMap().keySet().removeIf(key -> key.path.startsWith(path));
+	}
+
+	/**
+	 * @return Number of requests served from prefetched data
+	 */
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	@Override
+	public void close() {
+		if (prefetchExecutor != null) {
+			prefetchExecutor.shutdownNow();
+		}
+		streams.invalidateAll();
+	}
+
+	/**
+	 * The streams of one client reading one file, ordered from most to least recently used.
+	 */
+	private class Readers {
+
+		private final Path path;
+		private final List<Stream> streams = new ArrayList<>(STREAMS_PER_CLIENT);
+
+		private Readers(Path path) {
+			this.path = path;
+		}
+
+		/**
+		 * @return The stream continued by the given request or, if there is none, a new stream replacing the least recently used one
+		 */
+		private synchronized Stream select(long position, long count) {
+			Stream selected = null;
+			for (int i = 0; i < streams.size(); i++) {
+				if (streams.get(i).isContinuedBy(position, count)) {
+					selected = streams.remove(i);
+					break;
+				}
+			}
+			if (selected == null) {
+				if (streams.size() == STREAMS_PER_CLIENT) {
+					streams.remove(STREAMS_PER_CLIENT - 1);
+				}
+				selected = new Stream(path);
+			}
+			streams.add(0, selected);
+			return selected;
+		}
+
+	}
+
+	private class Stream {
+
+		private final Path path;
+		private long size = -1;
+		private long lastModified = -1;
+		private long expectedPosition = -1;
+		private int windowSize;
+		private Prefetch prefetch;
+
+		private Stream(Path path) {
+			this.path = path;
+		}
+
+		private synchronized boolean isContinuedBy(long position, long count) {
+			return position == expectedPosition || prefetch != null && prefetch.covers(position, count);
+		}
+
+		/**
+		 * Updates the access pattern of this stream and schedules the next prefetch if the access is consecutive.
+		 *
+		 * @return A prefetch covering the requested bytes or <code>null</code>
+		 */
+		private synchronized Prefetch advance(BasicFileAttributes attr, long position, long count) {
+			if (size != attr.size() || lastModified != attr.lastModifiedTime().toMillis()) {
+				size = attr.size();
+				lastModified = attr.lastModifiedTime().toMillis();
+				expectedPosition = -1;
+				prefetch = null;
+			}
+			Prefetch hit = prefetch != null && prefetch.covers(position, count) ? prefetch : null;
+			boolean consecutive = position == expectedPosition;
+			expectedPosition = position + count;
+			if (!consecutive || count > maxWindowSize) {
+				windowSize = 0;
+				prefetch = hit;
+				return hit;
+			}
+			windowSize = (int) Math.min(maxWindowSize, Math.max(2 * count, 2L * windowSize));
+			long nextPosition = position + count;
+			long nextCount = Math.min(count, size - nextPosition);
+			if (nextCount > 0 && (prefetch == null || !prefetch.covers(nextPosition, nextCount))) {
+				int length = (int) Math.min(windowSize, size - nextPosition);
+				prefetch = new Prefetch(nextPosition, length);
+				prefetch.schedule(path, attr);
+			}
+			return hit;
+		}
+
+	}
+
+	private class Prefetch {
+
+		private final long position;
+		private final int length;
+		private final CompletableFuture<byte[]> data = new CompletableFuture<>();
+
+		private Prefetch(long position, int length) {
+			this.position = position;
+			this.length = length;
+		}
+
+		private boolean covers(long position, long count) {
+			return position >= this.position && position + count <= this.position + length;
+		}
+
+		private void schedule(Path path, BasicFileAttributes attr) {
+			try {
+				prefetchExecutor.execute(() -> load(path, attr));
+			} catch (RejectedExecutionException e) {
+				data.completeExceptionally(e);
+			}
+		}
+
+		private void load(Path path, BasicFileAttributes attr) {
+			ByteBuffer buf = ByteBuffer.allocate(length);
+			try (FileHandleCache.Handle handle = fileHandles.open(path, attr)) {
+				SeekableByteChannel ch = handle.channel();
+				if (ch instanceof FileChannel) {
+					while (buf.hasRemaining() && ((FileChannel) ch).read(buf, position + buf.position()) != -1) {
+						// positional reads don't interfere with concurrent users of a shared channel
+					}
+				} else {
+					ch.position(position);
+					while (buf.hasRemaining() && ch.read(buf) != -1) {
+						// unshared channel
+					}
+				}
+				if (buf.hasRemaining()) {
+					throw new EOFException("File shrunk while prefetching " + path);
+				}
+				data.complete(buf.array());
+			} catch (IOException | RuntimeException e) {
+				LOG.debug("Prefetching {} failed.", path, e);
+				data.completeExceptionally(e);
+			}
+		}
+
+		/**
+		 * @return The prefetched bytes or <code>null</code> if prefetching failed
+		 */
+		private byte[] await() {
+			try {
+				return data.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			} catch (ExecutionException e) {
+				return null;
+			}
+		}
+
+	}
+
+	private static class StreamKey {
+
+		private final Path path;
+		private final String client;
+
+		private StreamKey(Path path, String client) {
+			this.path = path;
+			this.client = client;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj instanceof StreamKey) {
+				StreamKey other = (StreamKey) obj;
+				return path.equals(other.path) && Objects.equals(client, other.client);
+			} else {
+				return false;
+			}
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(path, client);
+		}
+
+	}
+
+}
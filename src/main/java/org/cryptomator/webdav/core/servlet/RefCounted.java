@@ -0,0 +1,69 @@
+package org.cryptomator.webdav.core.servlet;
+
+/**
+ * A resource shared by concurrent users, which is disposed once it has been retired and the last user has released it.
+ * <p>
+ * Users must {@link #retain() retain} the resource before and {@link #release() release} it after use. The owning cache {@link #retire() retires} it
+ * when it is no longer valid or has been {@link #retireIfIdle(long) idle} for too long. A retired resource can not be retained again.
+ */
+abstract class RefCounted {
+
+	private int refCount;
+	private long lastReleased;
+	private boolean retired;
+
+	protected RefCounted() {
+		this.lastReleased = System.currentTimeMillis();
+	}
+
+	/**
+	 * @return <code>true</code> if the resource may be used until {@link #release() released}, <code>false</code> if it has already been retired
+	 */
+	synchronized boolean retain() {
+		if (retired) {
+			return false;
+		}
+		refCount++;
+		return true;
+	}
+
+	synchronized void release() {
+		assert refCount > 0;
+		refCount--;
+		lastReleased = System.currentTimeMillis();
+		if (retired && refCount == 0) {
+			dispose();
+		}
+	}
+
+	/**
+	 * @param idleSince Time in milliseconds since the epoch
+	 * @return <code>true</code> if the resource has been retired, because it is unused and hasn't been released since <code>idleSince</code>
+	 */
+	synchronized boolean retireIfIdle(long idleSince) {
+		if (refCount == 0 && lastReleased < idleSince) {
+			retire();
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	/**
+	 * Prevents further {@link #retain() retains} and disposes the resource as soon as it is no longer in use.
+	 */
+	synchronized void retire() {
+		if (!retired) {
+			retired = true;
+			if (refCount == 0) {
+				dispose();
+			}
+		}
+	}
+
+	/**
+	 * Frees the underlying resource. Invoked exactly once, while holding this object's lock.
+	 */
+	protected abstract void dispose();
+
+}
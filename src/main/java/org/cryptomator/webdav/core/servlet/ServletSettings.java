@@ -0,0 +1,277 @@
+package org.cryptomator.webdav.core.servlet;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.function.Function;
+
+/**
+ * Typed view on the init parameters of an {@link AbstractNioWebDavServlet}.
+ * Missing parameters fall back to defaults that keep the behaviour of earlier versions.
+ */
+final class ServletSettings {
+
+	private final boolean asyncGet;
+	private final long asyncGetTimeout;
+	private final boolean asyncPut;
+	private final long mmapThreshold;
+	private final long contentCacheSize;
+	private final int contentCacheEntrySize;
+	private final long fileHandleIdleTime;
+	private final int readAheadSize;
+	private final int bufferSize;
+	private final long bufferPoolSize;
+	private final Durability.Mode durability;
+	private final long groupCommitWindow;
+	private final String digestAlgorithm;
+	private final long attributeCacheTtl;
+	private final long directoryCacheTtl;
+	private final long directoryCacheSize;
+	private final int attributeReadParallelism;
+	private final boolean propFindInfiniteDepth;
+	private final long propFindMaxResources;
+	private final long propFindTimeout;
+	private final int propFindParallelism;
+
+	private ServletSettings(Function<String, String> initParameters) {
+		this.asyncGet = Boolean.parseBoolean(initParameters.apply(AbstractNioWebDavServlet.INIT_PARAM_ASYNC_GET));
+		this.asyncGetTimeout = parseLong(initParameters, AbstractNioWebDavServlet.INIT_PARAM_ASYNC_GET_TIMEOUT, 3_600_000);
+		this.asyncPut = Boolean.parseBoolean(initParameters.apply(AbstractNioWebDavServlet.INIT_PARAM_ASYNC_PUT));
+		this.mmapThreshold = parseLong(initParameters, AbstractNioWebDavServlet.INIT_PARAM_MMAP_THRESHOLD, -1);
+		this.contentCacheSize = parseLong(initParameters, AbstractNioWebDavServlet.INIT_PARAM_CONTENT_CACHE_SIZE, 0);
+		this.contentCacheEntrySize = parseInt(initParameters, AbstractNioWebDavServlet.INIT_PARAM_CONTENT_CACHE_ENTRY_SIZE, 64 * 1024);
+		this.fileHandleIdleTime = parseLong(initParameters, AbstractNioWebDavServlet.INIT_PARAM_FILE_HANDLE_IDLE_TIME, 0);
+		this.readAheadSize = parseInt(initParameters, AbstractNioWebDavServlet.INIT_PARAM_READ_AHEAD_SIZE, 0);
+		this.bufferSize = parseInt(initParameters, AbstractNioWebDavServlet.INIT_PARAM_BUFFER_SIZE, 64 * 1024);
+		this.bufferPoolSize = parseLong(initParameters, AbstractNioWebDavServlet.INIT_PARAM_BUFFER_POOL_SIZE, 4 * 1024 * 1024);
+		this.durability = parseDurability(initParameters, AbstractNioWebDavServlet.INIT_PARAM_DURABILITY, Durability.Mode.NONE);
+		this.groupCommitWindow = parseLong(initParameters, AbstractNioWebDavServlet.INIT_PARAM_GROUP_COMMIT_WINDOW, 5);
+		this.digestAlgorithm = parseDigestAlgorithm(initParameters, AbstractNioWebDavServlet.INIT_PARAM_DIGEST_ALGORITHM);
+		this.attributeCacheTtl = parseLong(initParameters, AbstractNioWebDavServlet.INIT_PARAM_ATTRIBUTE_CACHE_TTL, 0);
+		this.directoryCacheTtl = parseLong(initParameters, AbstractNioWebDavServlet.INIT_PARAM_DIRECTORY_CACHE_TTL, 0);
+		this.directoryCacheSize = parseLong(initParameters, AbstractNioWebDavServlet.INIT_PARAM_DIRECTORY_CACHE_SIZE, 100_000);
+		this.attributeReadParallelism = parseInt(initParameters, AbstractNioWebDavServlet.INIT_PARAM_ATTRIBUTE_READ_PARALLELISM, 1);
+		this.propFindInfiniteDepth = parseBoolean(initParameters, AbstractNioWebDavServlet.INIT_PARAM_PROPFIND_INFINITE_DEPTH, true);
+		this.propFindMaxResources = parseLong(initParameters, AbstractNioWebDavServlet.INIT_PARAM_PROPFIND_MAX_RESOURCES, 0);
+		this.propFindTimeout = parseLong(initParameters, AbstractNioWebDavServlet.INIT_PARAM_PROPFIND_TIMEOUT, 0);
+		this.propFindParallelism = parseInt(initParameters, AbstractNioWebDavServlet.INIT_PARAM_PROPFIND_PARALLELISM, 1);
+	}
+
+	/**
+	 * @param initParameters Function returning the value of the given init parameter or <code>null</code> if not set
+	 * @return Settings
+	 * @throws IllegalArgumentException If an init parameter can not be parsed
+	 */
+	public static ServletSettings fromInitParameters(Function<String, String> initParameters) throws IllegalArgumentException {
+		return new ServletSettings(initParameters);
+	}
+
+	public static ServletSettings defaults() {
+		return new ServletSettings(name -> null);
+	}
+
+	private static boolean parseBoolean(Function<String, String> initParameters, String name, boolean defaultValue) throws IllegalArgumentException {
+		String value = initParameters.apply(name);
+		if (value == null) {
+			return defaultValue;
+		} else if ("true".equalsIgnoreCase(value.trim())) {
+			return true;
+		} else if ("false".equalsIgnoreCase(value.trim())) {
+			return false;
+		} else {
+			throw new IllegalArgumentException("Invalid value for init parameter " + name + ": " + value);
+		}
+	}
+
+	private static long parseLong(Function<String, String> initParameters, String name, long defaultValue) throws IllegalArgumentException {
+		String value = initParameters.apply(name);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid value for init parameter " + name + ": " + value, e);
+		}
+	}
+
+	private static int parseInt(Function<String, String> initParameters, String name, int defaultValue) throws IllegalArgumentException {
+		long value = parseLong(initParameters, name, defaultValue);
+		if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Value for init parameter " + name + " out of range: " + value);
+		}
+		return (int) value;
+	}
+
+	private static Durability.Mode parseDurability(Function<String, String> initParameters, String name, Durability.Mode defaultValue) throws IllegalArgumentException {
+		String value = initParameters.apply(name);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Durability.Mode.parse(value);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid value for init parameter " + name + ": " + value, e);
+		}
+	}
+
+	private static String parseDigestAlgorithm(Function<String, String> initParameters, String name) throws IllegalArgumentException {
+		String value = initParameters.apply(name);
+		if (value == null || value.isBlank()) {
+			return null;
+		}
+		try {
+			MessageDigest.getInstance(value.trim());
+			return value.trim();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalArgumentException("Invalid value for init parameter " + name + ": " + value, e);
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if GET requests should be served non-blocking
+	 */
+	public boolean isAsyncGet() {
+		return asyncGet;
+	}
+
+	/**
+	 * @return Time in milliseconds after which non-blocking GET responses are aborted, the container's default applies if not positive
+	 */
+	public long getAsyncGetTimeout() {
+		return asyncGetTimeout;
+	}
+
+	/**
+	 * @return <code>true</code> if PUT request bodies should be received non-blocking
+	 */
+	public boolean isAsyncPut() {
+		return asyncPut;
+	}
+
+	/**
+	 * @return Minimum file size for ranged GETs to be served from memory-mapped regions or a negative value if disabled
+	 */
+	public long getMmapThreshold() {
+		return mmapThreshold;
+	}
+
+	/**
+	 * @return Maximum number of bytes held by the content cache, the cache is disabled if not positive
+	 */
+	public long getContentCacheSize() {
+		return contentCacheSize;
+	}
+
+	/**
+	 * @return Maximum number of bytes cached per file
+	 */
+	public int getContentCacheEntrySize() {
+		return contentCacheEntrySize;
+	}
+
+	/**
+	 * @return Time in milliseconds after which unused shared read channels are closed, sharing is disabled if not positive
+	 */
+	public long getFileHandleIdleTime() {
+		return fileHandleIdleTime;
+	}
+
+	/**
+	 * @return Maximum number of bytes prefetched for a client reading a file sequentially, read-ahead is disabled if not positive
+	 */
+	public int getReadAheadSize() {
+		return readAheadSize;
+	}
+
+	/**
+	 * @return Size of the largest transfer buffers
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * @return Maximum number of bytes held in idle transfer buffers
+	 */
+	public long getBufferPoolSize() {
+		return bufferPoolSize;
+	}
+
+	/**
+	 * @return When uploaded data is forced to the storage device
+	 */
+	public Durability.Mode getDurability() {
+		return durability;
+	}
+
+	/**
+	 * @return Time in milliseconds during which uploads are collected to be forced together in group commit mode
+	 */
+	public long getGroupCommitWindow() {
+		return groupCommitWindow;
+	}
+
+	/**
+	 * @return Name of the algorithm used to compute digests of uploaded files or <code>null</code> if disabled
+	 */
+	public String getDigestAlgorithm() {
+		return digestAlgorithm;
+	}
+
+	/**
+	 * @return Time in milliseconds for which file attributes are cached, the cache is disabled if not positive
+	 */
+	public long getAttributeCacheTtl() {
+		return attributeCacheTtl;
+	}
+
+	/**
+	 * @return Time in milliseconds for which directory listings are cached, the cache is disabled if not positive
+	 */
+	public long getDirectoryCacheTtl() {
+		return directoryCacheTtl;
+	}
+
+	/**
+	 * @return Maximum number of directory members held by all cached directory listings together
+	 */
+	public long getDirectoryCacheSize() {
+		return directoryCacheSize;
+	}
+
+	/**
+	 * @return Maximum number of attributes read concurrently when listing directories, attributes are read sequentially if less than 2
+	 */
+	public int getAttributeReadParallelism() {
+		return attributeReadParallelism;
+	}
+
+	/**
+	 * @return Whether PROPFIND requests with <code>Depth: infinity</code> are answered, otherwise they are refused
+	 */
+	public boolean isPropFindInfiniteDepth() {
+		return propFindInfiniteDepth;
+	}
+
+	/**
+	 * @return Maximum number of resources enumerated by a <code>Depth: infinity</code> PROPFIND request, unlimited if not positive
+	 */
+	public long getPropFindMaxResources() {
+		return propFindMaxResources;
+	}
+
+	/**
+	 * @return Maximum time in milliseconds spent enumerating resources for a <code>Depth: infinity</code> PROPFIND request, unlimited if not positive
+	 */
+	public long getPropFindTimeout() {
+		return propFindTimeout;
+	}
+
+	/**
+	 * @return Maximum number of folders listed concurrently by a <code>Depth: infinity</code> PROPFIND request, folders are listed sequentially if less than 2
+	 */
+	public int getPropFindParallelism() {
+		return propFindParallelism;
+	}
+
+}
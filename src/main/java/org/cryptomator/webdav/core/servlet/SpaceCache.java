@@ -0,0 +1,152 @@
+package org.cryptomator.webdav.core.servlet;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the usable and total space of file stores for a short time, as querying a file store is a comparatively expensive system call
+ * that would otherwise be made for every upload and for every folder listed by a PROPFIND requesting quota properties.
+ * <p>
+ * Once the TTL has passed, the space of a file store is refreshed in the background, while the previous value is still returned.
+ * Values not refreshed within {@value #MAX_STALENESS_FACTOR} times the TTL, e.g. because the file store hasn't been used since, are discarded.
+ * <p>
+ * The file store of each directory is looked up once and remembered for a while or until the directory is {@link #invalidate(Path) invalidated},
+ * so file stores mounted within the served directory tree are accounted for correctly.
+ */
+class SpaceCache implements Closeable {
+
+	private static final int MAX_ENTRIES = 1024;
+	private static final int MAX_DIRECTORIES = 10_000;
+	private static final int MAX_STALENESS_FACTOR = 10;
+	private static final long FILE_STORE_TTL_MILLIS = 60_000;
+
+	private final Cache<Path, FileStore> fileStores;
+	private final LoadingCache<FileStore, Space> spaces;
+	private final ExecutorService executor;
+
+	/**
+	 * @param ttlMillis Time in milliseconds after which the space of a file store is queried again
+	 */
+	public SpaceCache(long ttlMillis) {
+		this.executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("webdav-space-refresh-%d").setDaemon(true).build());
+		this.fileStores = CacheBuilder.newBuilder() //
+				.maximumSize(MAX_DIRECTORIES) //
+				.expireAfterWrite(FILE_STORE_TTL_MILLIS, TimeUnit.MILLISECONDS) //
+				.build();
+		this.spaces = CacheBuilder.newBuilder() //
+				.maximumSize(MAX_ENTRIES) //
+				.refreshAfterWrite(ttlMillis, TimeUnit.MILLISECONDS) //
+				.expireAfterWrite(ttlMillis * MAX_STALENESS_FACTOR, TimeUnit.MILLISECONDS) //
+				.build(CacheLoader.asyncReloading(CacheLoader.from(SpaceCache::query), executor));
+	}
+
+	/**
+	 * @param dir An existing directory
+	 * @return Number of bytes available to this JVM on the file store containing <code>dir</code>, possibly outdated by up to the configured TTL
+	 * @throws IOException If the file store can not be determined, e.g. because <code>dir</code> doesn't exist
+	 */
+	public long getUsableSpace(Path dir) throws IOException {
+		return getSpace(dir).getUsableSpace();
+	}
+
+	/**
+	 * @param dir An existing directory
+	 * @return Space of the file store containing <code>dir</code>, possibly outdated by up to the configured TTL
+	 * @throws IOException If the file store can not be determined, e.g. because <code>dir</code> doesn't exist
+	 */
+	public Space getSpace(Path dir) throws IOException {
+		FileStore fileStore = getFileStore(dir);
+		try {
+			return spaces.getUnchecked(fileStore);
+		} catch (UncheckedExecutionException e) {
+			if (e.getCause() instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			} else {
+				throw new IOException("Failed to query space of " + dir, e.getCause());
+			}
+		}
+	}
+
+	private FileStore getFileStore(Path dir) throws IOException {
+		try {
+			return fileStores.get(dir, () -> Files.getFileStore(dir));
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			} else {
+				throw new IOException("Failed to determine file store of " + dir, e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Forgets the file stores of the given path and its descendants, which might be a different file store after the path has been moved or recreated.
+	 *
+	 * @param path A created, moved or deleted path
+	 */
+	public void invalidate(Path path) {
+		fileStores.asMap().keySet().removeIf(dir -> dir.startsWith(path));
+	}
+
+	private static Space query(FileStore fileStore) {
+		try {
+			return new Space(fileStore.getUsableSpace(), fileStore.getTotalSpace());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void close() {
+		executor.shutdown();
+	}
+
+	static final class Space {
+
+		private final long usableSpace;
+		private final long totalSpace;
+
+		Space(long usableSpace, long totalSpace) {
+			this.usableSpace = usableSpace;
+			this.totalSpace = totalSpace;
+		}
+
+		/**
+		 * @return Number of bytes available to this JVM
+		 */
+		public long getUsableSpace() {
+			return usableSpace;
+		}
+
+		/**
+		 * @return Size of the file store in bytes
+		 */
+		public long getTotalSpace() {
+			return totalSpace;
+		}
+
+		/**
+		 * @return Number of bytes not available to this JVM, i.e. used or reserved
+		 */
+		public long getUsedSpace() {
+			return totalSpace - usableSpace;
+		}
+
+	}
+
+}
@@ -0,0 +1,103 @@
+package org.cryptomator.webdav.core.servlet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.UUID;
+
+/**
+ * Uploads are written to a hidden staging file next to their target and moved over the target once complete.
+ * Concurrent readers therefore never see a partially written file, but keep reading the previous version until the move.
+ */
+final class StagingFiles {
+
+	private static final Logger LOG = LoggerFactory.getLogger(StagingFiles.class);
+	private static final String PREFIX = ".webdav-staging-";
+
+	private StagingFiles() {
+	}
+
+	/**
+	 * @param target The file to be written
+	 * @return A new, unique path in the same directory as <code>target</code>
+	 */
+	static Path forTarget(Path target) {
+		return target.resolveSibling(PREFIX + UUID.randomUUID());
+	}
+
+	/**
+	 * @param path Any path
+	 * @return <code>true</code> if the path denotes a staging file, which must be hidden from clients
+	 */
+	static boolean isStagingFile(Path path) {
+		Path fileName = path.getFileName();
+		return fileName != null && fileName.toString().startsWith(PREFIX);
+	}
+
+	/**
+	 * Atomically replaces <code>target</code> with <code>staging</code>, falling back to a non-atomic move if not supported by the file system.
+	 *
+	 * @param staging A completely written staging file
+	 * @param target The file to create or replace
+	 * @throws IOException If moving fails
+	 */
+	static void moveToTarget(Path staging, Path target) throws IOException {
+		try {
+			Files.move(staging, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(staging, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Deletes a staging file after a failed upload. Failures are only logged, as the file will be removed by {@link #deleteOrphans(Path, FileTime)} eventually.
+	 *
+	 * @param staging The staging file, which may or may not exist
+	 */
+	static void delete(Path staging) {
+		try {
+			Files.deleteIfExists(staging);
+		} catch (IOException e) {
+			LOG.warn("Failed to delete staging file {}.", staging, e);
+		}
+	}
+
+	/**
+	 * Deletes staging files left behind by uploads interrupted by a crash or shutdown.
+	 *
+	 * @param root The directory tree to clean up
+	 * @param modifiedBefore Only staging files last modified before this time are deleted, so uploads started meanwhile are not affected
+	 */
+	static void deleteOrphans(Path root, FileTime modifiedBefore) {
+		try {
+			Files.walkFileTree(root, new SimpleFileVisitor<>() {
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+					if (isStagingFile(file) && attrs.lastModifiedTime().compareTo(modifiedBefore) < 0) {
+						LOG.info("Deleting orphaned staging file {}.", file);
+						delete(file);
+					}
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFileFailed(Path file, IOException exc) {
+					LOG.debug("Skipping {} during staging file cleanup.", file, exc);
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (IOException e) {
+			LOG.warn("Failed to clean up staging files in {}.", root, e);
+		}
+	}
+
+}
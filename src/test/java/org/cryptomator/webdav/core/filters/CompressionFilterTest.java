@@ -0,0 +1,223 @@
+package org.cryptomator.webdav.core.filters;
+
+import com.google.common.io.ByteStreams;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+public class CompressionFilterTest {
+
+	private static final byte[] CONTENT = new byte[10_000];
+
+	static {
+		Arrays.fill(CONTENT, (byte) 'a');
+	}
+
+	private CompressionFilter filter;
+	private HttpServletRequest request;
+	private HttpServletResponse response;
+	private ByteArrayOutputStream sent;
+
+	@BeforeEach
+	public void setup() throws IOException {
+		filter = new CompressionFilter();
+		request = Mockito.mock(HttpServletRequest.class);
+		response = Mockito.mock(HttpServletResponse.class);
+		sent = new ByteArrayOutputStream();
+		Mockito.when(request.getMethod()).thenReturn("GET");
+		Mockito.when(request.getRequestURI()).thenReturn("/foo/bar.txt");
+		Mockito.when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+			@Override
+			public boolean isReady() {
+				return true;
+			}
+
+			@Override
+			public void setWriteListener(WriteListener writeListener) {
+				// no-op
+			}
+
+			@Override
+			public void write(int b) {
+				sent.write(b);
+			}
+		});
+	}
+
+	@ParameterizedTest
+	@CsvSource(value = {
+			"gzip, gzip",
+			"'gzip, deflate, br', gzip",
+			"'deflate, gzip;q=0.5', deflate",
+			"'gzip;q=0, deflate', deflate",
+			"'*', gzip",
+			"'*;q=0', ",
+			"'identity', ",
+			"'x-gzip', gzip",
+			"'gzip;q=0', ",
+	})
+	public void testNegotiateEncoding(String acceptEncoding, String expected) {
+		Assertions.assertEquals(Optional.ofNullable(expected), CompressionFilter.negotiateEncoding(acceptEncoding));
+	}
+
+	@Test
+	public void testUnfilteredWithoutAcceptEncoding() throws IOException, ServletException {
+		FilterChain chain = Mockito.mock(FilterChain.class);
+		filter.doFilter(request, response, chain);
+
+		Mockito.verify(chain).doFilter(request, response);
+		Mockito.verify(response).addHeader("Vary", "Accept-Encoding");
+	}
+
+	@Test
+	public void testUnfilteredRangeRequest() throws IOException, ServletException {
+		Mockito.when(request.getHeader("Accept-Encoding")).thenReturn("gzip");
+		Mockito.when(request.getHeader("Range")).thenReturn("bytes=0-10");
+		FilterChain chain = Mockito.mock(FilterChain.class);
+		filter.doFilter(request, response, chain);
+
+		Mockito.verify(chain).doFilter(request, response);
+	}
+
+	@Test
+	public void testUnfilteredCompressedFileType() throws IOException, ServletException {
+		Mockito.when(request.getHeader("Accept-Encoding")).thenReturn("gzip");
+		Mockito.when(request.getRequestURI()).thenReturn("/foo/bar.JPG");
+		FilterChain chain = Mockito.mock(FilterChain.class);
+		filter.doFilter(request, response, chain);
+
+		Mockito.verify(chain).doFilter(request, response);
+	}
+
+	@Test
+	public void testGzipGetResponse() throws IOException, ServletException {
+		Mockito.when(request.getHeader("Accept-Encoding")).thenReturn("gzip, deflate");
+		Mockito.when(response.getStatus()).thenReturn(200);
+		Mockito.when(response.getHeader("ETag")).thenReturn("\"abc\"");
+		filter.doFilter(request, response, (req, res) -> {
+			res.setContentLength(CONTENT.length);
+			res.getOutputStream().write(CONTENT);
+			res.flushBuffer();
+		});
+
+		Mockito.verify(response).setHeader("Content-Encoding", "gzip");
+		Mockito.verify(response).setHeader("ETag", "W/\"abc\"");
+		Mockito.verify(response, Mockito.never()).setContentLength(Mockito.anyInt());
+		Mockito.verify(response, Mockito.never()).setContentLengthLong(Mockito.anyLong());
+		Assertions.assertTrue(sent.size() < CONTENT.length);
+		byte[] decompressed = ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(sent.toByteArray())));
+		Assertions.assertArrayEquals(CONTENT, decompressed);
+	}
+
+	@Test
+	public void testContentDigestSentAsReprDigestIfCompressed() throws IOException, ServletException {
+		Mockito.when(request.getHeader("Accept-Encoding")).thenReturn("gzip");
+		Mockito.when(response.getStatus()).thenReturn(200);
+		filter.doFilter(request, response, (req, res) -> {
+			((HttpServletResponse) res).setHeader("Content-Digest", "sha-256=:abc=:");
+			res.setContentLength(CONTENT.length);
+			res.getOutputStream().write(CONTENT);
+		});
+
+		Mockito.verify(response).setHeader("Content-Encoding", "gzip");
+		Mockito.verify(response).setHeader("Repr-Digest", "sha-256=:abc=:");
+		Mockito.verify(response, Mockito.never()).setHeader(Mockito.eq("Content-Digest"), Mockito.anyString());
+	}
+
+	@Test
+	public void testContentDigestKeptIfNotCompressed() throws IOException, ServletException {
+		Mockito.when(request.getHeader("Accept-Encoding")).thenReturn("gzip");
+		Mockito.when(response.getStatus()).thenReturn(200);
+		filter.doFilter(request, response, (req, res) -> {
+			((HttpServletResponse) res).setHeader("Content-Digest", "sha-256=:abc=:");
+			res.setContentLength(100);
+			res.getOutputStream().write(CONTENT, 0, 100);
+		});
+
+		Mockito.verify(response).setHeader("Content-Digest", "sha-256=:abc=:");
+		Mockito.verify(response, Mockito.never()).setHeader(Mockito.eq("Repr-Digest"), Mockito.anyString());
+	}
+
+	@Test
+	public void testDeflateMultiStatusResponse() throws IOException, ServletException {
+		Mockito.when(request.getMethod()).thenReturn("PROPFIND");
+		Mockito.when(request.getHeader("Accept-Encoding")).thenReturn("deflate");
+		Mockito.when(response.getStatus()).thenReturn(207);
+		Mockito.when(response.getCharacterEncoding()).thenReturn("UTF-8");
+		filter.doFilter(request, response, (req, res) -> {
+			res.getWriter().write(new String(CONTENT, "US-ASCII"));
+		});
+
+		Mockito.verify(response).setHeader("Content-Encoding", "deflate");
+		byte[] decompressed = ByteStreams.toByteArray(new InflaterInputStream(new ByteArrayInputStream(sent.toByteArray())));
+		Assertions.assertArrayEquals(CONTENT, decompressed);
+	}
+
+	@Test
+	public void testPartialContentNotCompressed() throws IOException, ServletException {
+		Mockito.when(request.getHeader("Accept-Encoding")).thenReturn("gzip");
+		Mockito.when(response.getStatus()).thenReturn(206);
+		filter.doFilter(request, response, (req, res) -> {
+			res.setContentLength(CONTENT.length);
+			res.getOutputStream().write(CONTENT);
+		});
+
+		Mockito.verify(response, Mockito.never()).setHeader(Mockito.eq("Content-Encoding"), Mockito.anyString());
+		Mockito.verify(response).setContentLengthLong(CONTENT.length);
+		Assertions.assertArrayEquals(CONTENT, sent.toByteArray());
+	}
+
+	@Test
+	public void testSmallResponseNotCompressed() throws IOException, ServletException {
+		Mockito.when(request.getHeader("Accept-Encoding")).thenReturn("gzip");
+		Mockito.when(response.getStatus()).thenReturn(200);
+		filter.doFilter(request, response, (req, res) -> {
+			res.setContentLength(100);
+			res.getOutputStream().write(CONTENT, 0, 100);
+		});
+
+		Mockito.verify(response, Mockito.never()).setHeader(Mockito.eq("Content-Encoding"), Mockito.anyString());
+		Mockito.verify(response).setContentLengthLong(100);
+		Assertions.assertEquals(100, sent.size());
+	}
+
+	@Test
+	public void testNonBlockingResponseNotCompressed() throws IOException, ServletException {
+		Mockito.when(request.getHeader("Accept-Encoding")).thenReturn("gzip");
+		Mockito.when(response.getStatus()).thenReturn(200);
+		FilterChain chain = Mockito.mock(FilterChain.class);
+		filter.doFilter(request, response, chain);
+		ArgumentCaptor<ServletResponse> wrappedRes = ArgumentCaptor.forClass(ServletResponse.class);
+		Mockito.verify(chain).doFilter(Mockito.any(ServletRequest.class), wrappedRes.capture());
+
+		wrappedRes.getValue().setContentLengthLong(CONTENT.length);
+		ServletOutputStream out = wrappedRes.getValue().getOutputStream();
+		out.setWriteListener(Mockito.mock(WriteListener.class));
+		out.write(CONTENT);
+
+		Mockito.verify(response, Mockito.never()).setHeader(Mockito.eq("Content-Encoding"), Mockito.anyString());
+		Mockito.verify(response).setContentLengthLong(CONTENT.length);
+		Assertions.assertArrayEquals(CONTENT, sent.toByteArray());
+	}
+
+}
@@ -15,6 +15,7 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
 import javax.servlet.ServletException;
 import javax.servlet.ServletInputStream;
 import javax.servlet.ServletResponse;
@@ -126,4 +127,40 @@ public class MacChunkedPutCompatibilityFilterTest {
 		Assertions.assertFalse(wrappedIn.isReady());
 	}
 
+	@Test
+	public void testBoundedInputStreamSignalsAllDataReadWhenLimitReached() throws IOException, ServletException {
+		ServletInputStream in = Mockito.mock(ServletInputStream.class);
+
+		Mockito.when(request.getMethod()).thenReturn("PUT");
+		Mockito.when(request.getHeader("Transfer-Encoding")).thenReturn("chunked");
+		Mockito.when(request.getHeader("X-Expected-Entity-Length")).thenReturn("5");
+		Mockito.when(request.getInputStream()).thenReturn(in);
+		filter.doFilter(request, response, chain);
+
+		ArgumentCaptor<HttpServletRequest> wrappedReq = ArgumentCaptor.forClass(HttpServletRequest.class);
+		Mockito.verify(chain).doFilter(wrappedReq.capture(), Mockito.any(ServletResponse.class));
+		ServletInputStream wrappedIn = wrappedReq.getValue().getInputStream();
+
+		ReadListener listener = Mockito.mock(ReadListener.class);
+		wrappedIn.setReadListener(listener);
+		ArgumentCaptor<ReadListener> registeredListener = ArgumentCaptor.forClass(ReadListener.class);
+		Mockito.verify(in).setReadListener(registeredListener.capture());
+
+		Mockito.when(in.isReady()).thenReturn(true);
+		Mockito.doAnswer(invocation -> {
+			while (wrappedIn.isReady()) {
+				wrappedIn.read(new byte[100], 0, 100);
+			}
+			return null;
+		}).when(listener).onDataAvailable();
+		Mockito.when(in.read(Mockito.any(), Mockito.eq(0), Mockito.eq(5))).thenReturn(5);
+		registeredListener.getValue().onDataAvailable();
+
+		Mockito.verify(listener).onDataAvailable();
+		Mockito.verify(listener).onAllDataRead();
+
+		registeredListener.getValue().onAllDataRead();
+		Mockito.verify(listener).onAllDataRead();
+	}
+
 }
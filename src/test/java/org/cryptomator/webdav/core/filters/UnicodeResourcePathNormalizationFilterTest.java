@@ -158,6 +158,65 @@ public class UnicodeResourcePathNormalizationFilterTest {
 			MatcherAssert.assertThat(nfdBody.toString(UTF_8), CoreMatchers.containsString("<href>http://example.com/u%cc%88/</href>"));
 		}
 
+		@Test
+		public void testNfdUrlsInStreamedMultistatusResponseBody() throws IOException {
+			ByteArrayOutputStream nfdBody = new ByteArrayOutputStream();
+			Mockito.doAnswer(invocation -> {
+				int b = invocation.getArgument(0);
+				nfdBody.write(b);
+				return null;
+			}).when(out).write(Mockito.anyInt());
+
+			res.setStatus(207);
+			ServletOutputStream filteredOut = res.getOutputStream();
+			filteredOut.write("<multistatus><href>http://example.com/%C3%BC/</href>".getBytes(UTF_8));
+			filteredOut.write("<href>http://example.com/%C3%A4/</href></multistatus>".getBytes(UTF_8));
+			filteredOut.close();
+
+			MatcherAssert.assertThat(nfdBody.toString(UTF_8), CoreMatchers.containsString("<href>http://example.com/u%cc%88/</href>"));
+			MatcherAssert.assertThat(nfdBody.toString(UTF_8), CoreMatchers.containsString("<href>http://example.com/a%cc%88/</href>"));
+			Mockito.verify(out).close();
+		}
+
+		@Test
+		public void testLargeStreamedMultistatusResponseBody() throws IOException {
+			ByteArrayOutputStream nfdBody = new ByteArrayOutputStream();
+			Mockito.doAnswer(invocation -> {
+				int b = invocation.getArgument(0);
+				nfdBody.write(b);
+				return null;
+			}).when(out).write(Mockito.anyInt());
+
+			res.setStatus(207);
+			ServletOutputStream filteredOut = res.getOutputStream();
+			filteredOut.write("<multistatus>".getBytes(UTF_8));
+			byte[] href = "<href>http://example.com/%C3%BC/</href>".getBytes(UTF_8);
+			for (int i = 0; i < 10_000; i++) {
+				filteredOut.write(href);
+			}
+			filteredOut.write("</multistatus>".getBytes(UTF_8));
+			filteredOut.close();
+
+			String body = nfdBody.toString(UTF_8);
+			Assertions.assertEquals(10_000, body.split("<href>http://example.com/u%cc%88/</href>", -1).length - 1);
+		}
+
+		@Test
+		public void testMalformedStreamedMultistatusResponseBody() throws IOException {
+			res.setStatus(207);
+			ServletOutputStream filteredOut = res.getOutputStream();
+			filteredOut.write("<multistatus><href>".getBytes(UTF_8));
+
+			Assertions.assertThrows(IOException.class, filteredOut::close);
+		}
+
+		@Test
+		public void testUnmodifiedContentEncodedMultistatusResponseBody() throws IOException {
+			Mockito.when(response.containsHeader("Content-Encoding")).thenReturn(true);
+			res.setStatus(207);
+			Assertions.assertSame(out, res.getOutputStream());
+		}
+
 	}
 
 	@Nested
@@ -0,0 +1,185 @@
+package org.cryptomator.webdav.core.servlet;
+
+import org.apache.jackrabbit.webdav.ContentCodingAwareRequest;
+import org.apache.jackrabbit.webdav.DavConstants;
+import org.apache.jackrabbit.webdav.DavException;
+import org.apache.jackrabbit.webdav.DavServletResponse;
+import org.apache.jackrabbit.webdav.WebdavRequest;
+import org.apache.jackrabbit.webdav.WebdavResponse;
+import org.apache.jackrabbit.webdav.property.DavPropertyNameSet;
+import org.apache.jackrabbit.webdav.util.HttpDateTimeFormatter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+public class AbstractNioWebDavServletTest {
+
+	private static final byte[] CONTENT = "hello world".getBytes(StandardCharsets.US_ASCII);
+	private static final long MODIFICATION_TIME = 1_500_000_000_000L;
+
+	private AbstractNioWebDavServlet servlet;
+	private DavResourceFactoryImpl factory;
+	private DavLocatorImpl locator;
+	private Path path;
+	private DavFile file;
+	private WebdavRequest request;
+	private WebdavResponse response;
+	private ByteArrayOutputStream responseBody;
+
+	@BeforeEach
+	public void setup(@TempDir Path tmpDir) throws IOException, ServletException {
+		path = Files.write(tmpDir.resolve("file.txt"), CONTENT);
+		Files.setLastModifiedTime(path, FileTime.fromMillis(MODIFICATION_TIME));
+		servlet = new AbstractNioWebDavServlet() {
+			@Override
+			protected Path resolveUrl(String relativeUrl) {
+				return tmpDir.resolve(relativeUrl);
+			}
+		};
+		ServletConfig config = Mockito.mock(ServletConfig.class);
+		Mockito.when(config.getServletContext()).thenReturn(Mockito.mock(ServletContext.class));
+		Mockito.when(config.getInitParameterNames()).thenReturn(Collections.emptyEnumeration());
+		Mockito.when(config.getInitParameter(AbstractNioWebDavServlet.INIT_PARAM_ASYNC_GET)).thenReturn("true");
+		servlet.init(config);
+		factory = (DavResourceFactoryImpl) servlet.getResourceFactory();
+		BasicFileAttributes attr = Files.readAttributes(path, BasicFileAttributes.class);
+		locator = new DavLocatorFactoryImpl().createResourceLocator("http://localhost/", "file.txt");
+		file = factory.createFile(locator, path, Optional.of(attr), null);
+		request = Mockito.mock(WebdavRequest.class);
+		response = Mockito.mock(WebdavResponse.class);
+		responseBody = new ByteArrayOutputStream();
+		Mockito.when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+			@Override
+			public boolean isReady() {
+				return true;
+			}
+
+			@Override
+			public void setWriteListener(WriteListener writeListener) {
+				// async transfers are not driven by these tests
+			}
+
+			@Override
+			public void write(int b) {
+				responseBody.write(b);
+			}
+		});
+	}
+
+	@AfterEach
+	public void tearDown() {
+		servlet.destroy();
+	}
+
+	@Test
+	public void testGetWithMatchingETag() throws IOException, DavException {
+		mockHeader("If-None-Match", file.getETag());
+
+		servlet.doGet(request, response, file);
+
+		Mockito.verify(response).setStatus(DavServletResponse.SC_NOT_MODIFIED);
+		Assertions.assertEquals(0, responseBody.size());
+	}
+
+	@Test
+	public void testGetWithStaleETagIgnoresIfModifiedSince() throws IOException, DavException {
+		mockHeader("If-None-Match", "\"stale\"");
+		mockHeader("If-Modified-Since", HttpDateTimeFormatter.format(MODIFICATION_TIME + 1000));
+		Mockito.when(request.getDateHeader("If-Modified-Since")).thenReturn(MODIFICATION_TIME + 1000);
+
+		servlet.doGet(request, response, file);
+
+		Mockito.verify(response, Mockito.never()).setStatus(DavServletResponse.SC_NOT_MODIFIED);
+		Assertions.assertArrayEquals(CONTENT, responseBody.toByteArray());
+	}
+
+	@Test
+	public void testAsyncGetWithMultipleRangesIsSpooledSynchronously() throws IOException, DavException, ByteRange.UnsupportedRangeException, ByteRange.MalformedByteRangeException {
+		BasicFileAttributes attr = Files.readAttributes(path, BasicFileAttributes.class);
+		List<ByteRange> ranges = ByteRange.coalesce(ByteRange.parseSet("bytes=0-1,6-"), CONTENT.length);
+		DavFile multipleRanges = new DavFileWithMultipleRanges(factory, null, locator, path, attr, null, ranges);
+		Mockito.when(request.isAsyncSupported()).thenReturn(true);
+
+		servlet.doGet(request, response, multipleRanges);
+
+		Mockito.verify(request, Mockito.never()).startAsync();
+		String body = responseBody.toString(StandardCharsets.US_ASCII);
+		Assertions.assertTrue(body.contains("Content-Range: bytes 0-1/11\r\n\r\nhe\r\n"));
+		Assertions.assertTrue(body.contains("Content-Range: bytes 6-10/11\r\n\r\nworld\r\n"));
+	}
+
+	@Test
+	public void testAsyncGetOfUnreadableFileFailsBeforeStartingAsync() throws IOException {
+		Files.delete(path);
+		Mockito.when(request.isAsyncSupported()).thenReturn(true);
+
+		Assertions.assertThrows(IOException.class, () -> servlet.doGet(request, response, file));
+		Mockito.verify(request, Mockito.never()).startAsync();
+	}
+
+	@Test
+	public void testAsyncGetHasFiniteTimeout() throws IOException, DavException {
+		AsyncContext asyncContext = Mockito.mock(AsyncContext.class);
+		Mockito.when(request.isAsyncSupported()).thenReturn(true);
+		Mockito.when(request.startAsync()).thenReturn(asyncContext);
+
+		servlet.doGet(request, response, file);
+
+		Mockito.verify(asyncContext).setTimeout(3_600_000);
+		Mockito.verify(asyncContext).addListener(Mockito.any());
+	}
+
+	@Test
+	public void testHeadWithStaleETagIgnoresIfModifiedSince() throws IOException {
+		mockHeader("If-None-Match", "\"stale\"");
+		mockHeader("If-Modified-Since", HttpDateTimeFormatter.format(MODIFICATION_TIME + 1000));
+		Mockito.when(request.getDateHeader("If-Modified-Since")).thenReturn(MODIFICATION_TIME + 1000);
+
+		servlet.doHead(request, response, file);
+
+		Mockito.verify(response, Mockito.never()).setStatus(DavServletResponse.SC_NOT_MODIFIED);
+		Mockito.verify(response).setHeader("ETag", file.getETag());
+	}
+
+	@Test
+	public void testPropFindHintsAtAcceptableRequestEncodings() throws IOException, DavException {
+		WebdavRequest request = Mockito.mock(WebdavRequest.class, Mockito.withSettings().extraInterfaces(ContentCodingAwareRequest.class));
+		Mockito.when(((ContentCodingAwareRequest) request).getRequestContentCodings()).thenReturn(List.of());
+		Mockito.when(((ContentCodingAwareRequest) request).getAcceptableCodings()).thenReturn("gzip");
+		Mockito.when(request.getDepth(Mockito.anyInt())).thenReturn(DavConstants.DEPTH_0);
+		Mockito.when(request.getPropFindType()).thenReturn(DavConstants.PROPFIND_ALL_PROP);
+		Mockito.when(request.getPropFindProperties()).thenReturn(new DavPropertyNameSet());
+
+		servlet.doPropFind(request, response, file);
+
+		Mockito.verify(response).setHeader("Accept-Encoding", "gzip");
+		Mockito.verify(response).setStatus(DavServletResponse.SC_MULTI_STATUS);
+		Assertions.assertTrue(responseBody.toString(StandardCharsets.UTF_8).contains("file.txt"));
+	}
+
+	private void mockHeader(String name, String value) {
+		Mockito.when(request.getHeader(name)).thenReturn(value);
+		Mockito.when(request.getHeaders(name)).thenAnswer(invocation -> Collections.enumeration(Collections.singleton(value)));
+	}
+
+}
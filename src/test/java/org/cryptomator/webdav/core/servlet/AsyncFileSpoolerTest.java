@@ -0,0 +1,125 @@
+package org.cryptomator.webdav.core.servlet;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Random;
+
+public class AsyncFileSpoolerTest {
+
+	private static final byte[] CONTENT = new byte[100_000];
+
+	private Path file;
+	private AsyncContext asyncContext;
+	private ServletOutputStream out;
+	private ByteArrayOutputStream written;
+	private BufferPool bufferPool;
+	private FileHandleCache fileHandleCache;
+
+	@BeforeEach
+	public void setup(@TempDir Path tmpDir) throws IOException {
+		new Random(42).nextBytes(CONTENT);
+		file = Files.write(tmpDir.resolve("file.bin"), CONTENT);
+		asyncContext = Mockito.mock(AsyncContext.class);
+		out = Mockito.mock(ServletOutputStream.class);
+		written = new ByteArrayOutputStream();
+		bufferPool = new BufferPool(32 * 1024, 1024 * 1024);
+		fileHandleCache = new FileHandleCache(60_000);
+		Mockito.doAnswer(invocation -> {
+			written.write(invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2));
+			return null;
+		}).when(out).write(Mockito.any(byte[].class), Mockito.anyInt(), Mockito.anyInt());
+	}
+
+	@AfterEach
+	public void tearDown() {
+		fileHandleCache.close();
+	}
+
+	@Test
+	public void testTransferOnlyWhileReady() throws IOException {
+		AsyncFileSpooler.start(open(), 10, 90_000, () -> asyncContext, out, bufferPool);
+		ArgumentCaptor<WriteListener> listener = ArgumentCaptor.forClass(WriteListener.class);
+		Mockito.verify(out).setWriteListener(listener.capture());
+
+		// first callback: output accepts a single buffer, then blocks
+		Mockito.when(out.isReady()).thenReturn(true, false);
+		listener.getValue().onWritePossible();
+		Assertions.assertTrue(written.size() > 0 && written.size() < 90_000);
+		Mockito.verify(asyncContext, Mockito.never()).complete();
+
+		// second callback: output accepts everything
+		Mockito.when(out.isReady()).thenReturn(true);
+		listener.getValue().onWritePossible();
+		Assertions.assertArrayEquals(Arrays.copyOfRange(CONTENT, 10, 90_010), written.toByteArray());
+		Mockito.verify(asyncContext).complete();
+	}
+
+	@Test
+	public void testCompleteOnError() throws IOException {
+		AsyncFileSpooler.start(open(), 0, CONTENT.length, () -> asyncContext, out, bufferPool);
+		ArgumentCaptor<WriteListener> listener = ArgumentCaptor.forClass(WriteListener.class);
+		Mockito.verify(out).setWriteListener(listener.capture());
+
+		listener.getValue().onError(new IOException("connection reset"));
+		listener.getValue().onError(new IOException("connection reset"));
+
+		Mockito.verify(asyncContext, Mockito.times(1)).complete();
+		Assertions.assertEquals(0, bufferPool.getSizeClasses().stream().mapToInt(BufferPool.SizeClass::getInUse).sum());
+	}
+
+	@Test
+	public void testReleaseOnTimeout() throws IOException {
+		FileHandleCache.Handle handle = open();
+		AsyncFileSpooler.start(handle, 0, CONTENT.length, () -> asyncContext, out, bufferPool);
+		ArgumentCaptor<AsyncListener> listener = ArgumentCaptor.forClass(AsyncListener.class);
+		Mockito.verify(asyncContext).addListener(listener.capture());
+		fileHandleCache.invalidate(file); // closes the channel as soon as the spooler releases it
+
+		listener.getValue().onTimeout(new AsyncEvent(asyncContext));
+
+		Mockito.verify(asyncContext).complete();
+		Assertions.assertFalse(handle.channel().isOpen());
+		Assertions.assertEquals(0, bufferPool.getSizeClasses().stream().mapToInt(BufferPool.SizeClass::getInUse).sum());
+	}
+
+	@Test
+	public void testSharedChannel() throws IOException {
+		FileHandleCache.Handle handle = open();
+		AsyncFileSpooler.start(handle, 10, 90_000, () -> asyncContext, out, bufferPool);
+		ArgumentCaptor<WriteListener> listener = ArgumentCaptor.forClass(WriteListener.class);
+		Mockito.verify(out).setWriteListener(listener.capture());
+		Mockito.when(out.isReady()).thenReturn(true);
+
+		listener.getValue().onWritePossible();
+
+		Assertions.assertTrue(handle.channel() instanceof FileChannel);
+		Assertions.assertEquals(0, handle.channel().position(), "positional reads only");
+		Assertions.assertArrayEquals(Arrays.copyOfRange(CONTENT, 10, 90_010), written.toByteArray());
+		try (FileHandleCache.Handle other = open()) {
+			Assertions.assertSame(handle.channel(), other.channel());
+		}
+	}
+
+	private FileHandleCache.Handle open() throws IOException {
+		return fileHandleCache.open(file, Files.readAttributes(file, BasicFileAttributes.class));
+	}
+
+}
@@ -0,0 +1,156 @@
+package org.cryptomator.webdav.core.servlet;
+
+import org.apache.jackrabbit.webdav.DavException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class AsyncFileUploaderTest {
+
+	private static final byte[] CONTENT = new byte[100_000];
+
+	private Path file;
+	private AsyncContext asyncContext;
+	private HttpServletResponse response;
+	private ServletInputStream in;
+	private BufferPool bufferPool;
+	private AsyncFileUploader.Transaction transaction;
+
+	@BeforeEach
+	public void setup(@TempDir Path tmpDir) {
+		new Random(42).nextBytes(CONTENT);
+		file = tmpDir.resolve("file.bin");
+		asyncContext = Mockito.mock(AsyncContext.class);
+		response = Mockito.mock(HttpServletResponse.class);
+		in = Mockito.mock(ServletInputStream.class);
+		bufferPool = new BufferPool(32 * 1024, 1024 * 1024);
+		transaction = Mockito.mock(AsyncFileUploader.Transaction.class);
+		Mockito.when(transaction.commit(Mockito.any())).thenReturn(CompletableFuture.completedFuture(null));
+		Mockito.when(asyncContext.getResponse()).thenReturn(response);
+	}
+
+	@Test
+	public void testUpload() throws IOException, InterruptedException {
+		ByteArrayInputStream body = new ByteArrayInputStream(CONTENT);
+		CountDownLatch eof = new CountDownLatch(1);
+		Mockito.when(in.isReady()).thenReturn(true);
+		Mockito.when(in.read(Mockito.any(byte[].class))).thenAnswer(invocation -> {
+			byte[] buf = invocation.getArgument(0);
+			int read = body.read(buf, 0, Math.min(buf.length, 10_000));
+			if (read == -1) {
+				eof.countDown();
+			}
+			return read;
+		});
+
+		AsynchronousFileChannel dst = AsynchronousFileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		AsyncFileUploader.start(in, dst, asyncContext, bufferPool, transaction, null, CONTENT.length, HttpServletResponse.SC_CREATED);
+		ArgumentCaptor<ReadListener> listener = ArgumentCaptor.forClass(ReadListener.class);
+		Mockito.verify(in).setReadListener(listener.capture());
+		Mockito.verify(asyncContext).setTimeout(0);
+
+		listener.getValue().onDataAvailable();
+		Assertions.assertTrue(eof.await(10, TimeUnit.SECONDS));
+		listener.getValue().onAllDataRead();
+
+		Mockito.verify(asyncContext, Mockito.timeout(10_000)).complete();
+		Mockito.verify(response).setStatus(HttpServletResponse.SC_CREATED);
+		Mockito.verify(transaction, Mockito.never()).rollback();
+		Assertions.assertFalse(dst.isOpen());
+		Assertions.assertArrayEquals(CONTENT, Files.readAllBytes(file));
+		Assertions.assertEquals(0, bufferPool.getSizeClasses().stream().mapToInt(BufferPool.SizeClass::getInUse).sum());
+	}
+
+	@Test
+	public void testUploadAbortedByClient() throws IOException {
+		Mockito.when(in.isReady()).thenReturn(false);
+
+		AsynchronousFileChannel dst = AsynchronousFileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		AsyncFileUploader.start(in, dst, asyncContext, bufferPool, transaction, null, -1, HttpServletResponse.SC_CREATED);
+		ArgumentCaptor<ReadListener> listener = ArgumentCaptor.forClass(ReadListener.class);
+		Mockito.verify(in).setReadListener(listener.capture());
+
+		listener.getValue().onDataAvailable();
+		listener.getValue().onError(new IOException("connection reset"));
+
+		Mockito.verify(transaction, Mockito.never()).commit(Mockito.any());
+		Mockito.verify(transaction).rollback();
+
+		Mockito.verify(response).setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+		Mockito.verify(asyncContext).complete();
+		Assertions.assertFalse(dst.isOpen());
+		Assertions.assertEquals(0, bufferPool.getSizeClasses().stream().mapToInt(BufferPool.SizeClass::getInUse).sum());
+	}
+
+	@Test
+	public void testCommitFailure() throws IOException {
+		Mockito.when(in.isReady()).thenReturn(false);
+		CompletableFuture<Void> commitResult = new CompletableFuture<>();
+		Mockito.when(transaction.commit(Mockito.any())).thenReturn(commitResult);
+
+		AsynchronousFileChannel dst = AsynchronousFileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		AsyncFileUploader.start(in, dst, asyncContext, bufferPool, transaction, null, -1, HttpServletResponse.SC_CREATED);
+		ArgumentCaptor<ReadListener> listener = ArgumentCaptor.forClass(ReadListener.class);
+		Mockito.verify(in).setReadListener(listener.capture());
+
+		listener.getValue().onAllDataRead();
+		Mockito.verify(asyncContext, Mockito.never()).complete();
+		Assertions.assertTrue(dst.isOpen());
+
+		commitResult.completeExceptionally(new IOException("disk full"));
+		Mockito.verify(transaction).rollback();
+		Mockito.verify(response).setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+		Mockito.verify(asyncContext).complete();
+		Assertions.assertFalse(dst.isOpen());
+	}
+
+	@Test
+	public void testDigestPassedToCommitAndRejectionStatus() throws IOException, InterruptedException, NoSuchAlgorithmException {
+		ByteArrayInputStream body = new ByteArrayInputStream(CONTENT);
+		CountDownLatch drained = new CountDownLatch(1);
+		Mockito.when(in.isReady()).thenAnswer(invocation -> body.available() > 0);
+		Mockito.when(in.read(Mockito.any(byte[].class))).thenAnswer(invocation -> {
+			int read = body.read(invocation.getArgument(0));
+			if (body.available() == 0) {
+				drained.countDown();
+			}
+			return read;
+		});
+		byte[] expectedDigest = MessageDigest.getInstance("SHA-256").digest(CONTENT);
+		Mockito.when(transaction.commit(Mockito.any())).thenReturn(CompletableFuture.failedFuture(new DavException(HttpServletResponse.SC_BAD_REQUEST)));
+
+		AsynchronousFileChannel dst = AsynchronousFileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		AsyncFileUploader.start(in, dst, asyncContext, bufferPool, transaction, MessageDigest.getInstance("SHA-256"), CONTENT.length, HttpServletResponse.SC_CREATED);
+		ArgumentCaptor<ReadListener> listener = ArgumentCaptor.forClass(ReadListener.class);
+		Mockito.verify(in).setReadListener(listener.capture());
+		listener.getValue().onDataAvailable();
+		Assertions.assertTrue(drained.await(10, TimeUnit.SECONDS));
+		listener.getValue().onAllDataRead();
+
+		Mockito.verify(asyncContext, Mockito.timeout(10_000)).complete();
+		Mockito.verify(transaction).commit(expectedDigest);
+		Mockito.verify(transaction).rollback();
+		Mockito.verify(response).setStatus(HttpServletResponse.SC_BAD_REQUEST);
+	}
+
+}
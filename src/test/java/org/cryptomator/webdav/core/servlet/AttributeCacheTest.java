@@ -0,0 +1,114 @@
+package org.cryptomator.webdav.core.servlet;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.Optional;
+
+public class AttributeCacheTest {
+
+	private Path dir;
+	private Path file;
+	private AttributeCache cache;
+
+	@BeforeEach
+	public void setup(@TempDir Path tmpDir) throws IOException {
+		dir = Files.createDirectory(tmpDir.resolve("dir"));
+		file = Files.write(dir.resolve("file.txt"), "hello".getBytes(StandardCharsets.US_ASCII));
+		cache = new AttributeCache(60_000);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		cache.close();
+	}
+
+	@Test
+	public void testCachedAttributesAreReused() throws IOException {
+		BasicFileAttributes attr = cache.get(file).get();
+		Files.write(file, "hello world".getBytes(StandardCharsets.US_ASCII));
+
+		Assertions.assertSame(attr, cache.get(file).get());
+		Assertions.assertEquals(11, cache.load(file).get().size());
+		Assertions.assertEquals(11, cache.get(file).get().size());
+	}
+
+	@Test
+	public void testAttributesReadBeforeConcurrentInvalidationAreNotCached() throws IOException {
+		AttributeCache spiedCache = Mockito.spy(cache);
+		Mockito.doAnswer(invocation -> {
+			Object attr = invocation.callRealMethod();
+			// modified by this servlet after the attributes have been read, but before they are put into the cache:
+			Files.write(file, "hello world".getBytes(StandardCharsets.US_ASCII));
+			spiedCache.invalidate(file);
+			return attr;
+		}).doCallRealMethod().when(spiedCache).read(file);
+
+		Assertions.assertEquals(5, spiedCache.load(file).get().size());
+
+		Assertions.assertEquals(11, spiedCache.get(file).get().size());
+	}
+
+	@Test
+	public void testMissingNodesAreNotCached() throws IOException {
+		Path missing = dir.resolve("missing.txt");
+		Assertions.assertFalse(cache.get(missing).isPresent());
+
+		Files.createFile(missing);
+
+		Assertions.assertTrue(cache.get(missing).isPresent());
+	}
+
+	@Test
+	public void testInvalidateDiscardsDescendantsAndParent() throws IOException {
+		BasicFileAttributes dirAttr = cache.get(dir).get();
+		BasicFileAttributes fileAttr = cache.get(file).get();
+
+		cache.invalidate(file);
+		Assertions.assertNotSame(dirAttr, cache.get(dir).get());
+		Assertions.assertNotSame(fileAttr, cache.get(file).get());
+
+		fileAttr = cache.get(file).get();
+		cache.invalidate(dir);
+		Assertions.assertNotSame(fileAttr, cache.get(file).get());
+	}
+
+	@Test
+	public void testDisabledCacheReadsAttributesEveryTime() throws IOException {
+		AttributeCache disabled = new AttributeCache(0);
+		BasicFileAttributes attr = disabled.get(file).get();
+		Files.write(file, "hello world".getBytes(StandardCharsets.US_ASCII));
+
+		Assertions.assertNotSame(attr, disabled.get(file).get());
+		Assertions.assertEquals(11, disabled.get(file).get().size());
+	}
+
+	@Test
+	public void testOutOfBandModificationDetectedByWatchService() throws IOException, InterruptedException {
+		cache.watch(dir.getParent());
+		BasicFileAttributes attr = cache.get(file).get();
+		Assertions.assertTrue(cache.getWatchedDirectoryCount() > 0);
+
+		Files.write(file, "hello world".getBytes(StandardCharsets.US_ASCII));
+
+		// the default watch service of some platforms polls, so allow for some delay:
+		long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+		Optional<BasicFileAttributes> current = cache.get(file);
+		while (current.get() == attr && System.nanoTime() < deadline) {
+			Thread.sleep(50);
+			current = cache.get(file);
+		}
+		Assertions.assertEquals(11, current.get().size());
+	}
+
+}
@@ -0,0 +1,51 @@
+package org.cryptomator.webdav.core.servlet;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+public class AttributeLoaderTest {
+
+	@ParameterizedTest
+	@ValueSource(ints = {1, 4})
+	public void testLoadPreservesOrderAndSkipsFailures(int parallelism) throws IOException {
+		AttributeCache attributeCache = Mockito.mock(AttributeCache.class);
+		List<Path> paths = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			Path path = Paths.get("/dir/" + i);
+			paths.add(path);
+			if (i % 10 == 3) {
+				Mockito.when(attributeCache.get(path)).thenThrow(new IOException("unreadable"));
+			} else if (i % 10 == 7) {
+				Mockito.when(attributeCache.get(path)).thenReturn(Optional.empty());
+			} else {
+				BasicFileAttributes attr = Mockito.mock(BasicFileAttributes.class);
+				Mockito.when(attr.size()).thenReturn((long) i);
+				Mockito.when(attributeCache.get(path)).thenReturn(Optional.of(attr));
+			}
+		}
+		AttributeLoader loader = new AttributeLoader(attributeCache, parallelism);
+
+		List<Optional<BasicFileAttributes>> result = loader.load(paths);
+		loader.close();
+
+		Assertions.assertEquals(100, result.size());
+		for (int i = 0; i < 100; i++) {
+			if (i % 10 == 3 || i % 10 == 7) {
+				Assertions.assertFalse(result.get(i).isPresent());
+			} else {
+				Assertions.assertEquals(i, result.get(i).get().size());
+			}
+		}
+	}
+
+}
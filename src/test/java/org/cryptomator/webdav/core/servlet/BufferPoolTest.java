@@ -0,0 +1,72 @@
+package org.cryptomator.webdav.core.servlet;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+public class BufferPoolTest {
+
+	@Test
+	public void testSizeClasses() {
+		BufferPool pool = new BufferPool(50_000, 1024 * 1024);
+
+		Assertions.assertEquals(64 * 1024, pool.getMaxBufferSize());
+		Assertions.assertEquals(4, pool.getSizeClasses().size());
+		try (BufferPool.Lease small = pool.acquire(100); BufferPool.Lease medium = pool.acquire(9000); BufferPool.Lease large = pool.acquire(Long.MAX_VALUE)) {
+			Assertions.assertEquals(8 * 1024, small.buffer().capacity());
+			Assertions.assertEquals(16 * 1024, medium.buffer().capacity());
+			Assertions.assertEquals(64 * 1024, large.buffer().capacity());
+		}
+	}
+
+	@Test
+	public void testBuffersAreReused() {
+		BufferPool pool = new BufferPool(8 * 1024, 1024 * 1024);
+		BufferPool.SizeClass sizeClass = pool.getSizeClasses().get(0);
+
+		ByteBuffer first;
+		try (BufferPool.Lease lease = pool.acquire(100)) {
+			first = lease.buffer();
+			first.put((byte) 42);
+			Assertions.assertEquals(1, sizeClass.getInUse());
+		}
+		try (BufferPool.Lease lease = pool.acquire(100)) {
+			Assertions.assertSame(first, lease.buffer());
+			Assertions.assertEquals(0, lease.buffer().position());
+		}
+
+		Assertions.assertEquals(2, sizeClass.getAcquireCount());
+		Assertions.assertEquals(1, sizeClass.getAllocateCount());
+		Assertions.assertEquals(0, sizeClass.getInUse());
+	}
+
+	@Test
+	public void testPoolIsBounded() {
+		BufferPool pool = new BufferPool(8 * 1024, 8 * 1024);
+		BufferPool.SizeClass sizeClass = pool.getSizeClasses().get(0);
+
+		BufferPool.Lease lease1 = pool.acquire(100);
+		BufferPool.Lease lease2 = pool.acquire(100);
+		lease1.close();
+		lease2.close(); // exceeds pool size
+		lease2.close(); // ignored
+		pool.acquire(100).close();
+		pool.acquire(100).close();
+
+		Assertions.assertEquals(4, sizeClass.getAcquireCount());
+		Assertions.assertEquals(2, sizeClass.getAllocateCount());
+		Assertions.assertEquals(0, sizeClass.getInUse());
+	}
+
+	@Test
+	public void testPoolingDisabled() {
+		BufferPool pool = new BufferPool(8 * 1024, 0);
+
+		pool.acquire(100).close();
+		pool.acquire(100).close();
+
+		Assertions.assertEquals(2, pool.getSizeClasses().get(0).getAllocateCount());
+	}
+
+}
@@ -12,6 +12,8 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
+import java.util.List;
+
 public class ByteRangeTest {
 
 	@Test
@@ -57,4 +59,70 @@ public class ByteRangeTest {
 		Assertions.assertEquals(999, range.getEffectiveLastByte(1000));
 	}
 
+	@Test
+	public void testParseSetWithMultipleRanges() throws UnsupportedRangeException, MalformedByteRangeException {
+		List<ByteRange> ranges = ByteRange.parseSet("bytes=2-3, 7-8,-2");
+		Assertions.assertEquals(3, ranges.size());
+		Assertions.assertEquals(7, ranges.get(1).getEffectiveFirstByte(1000));
+		Assertions.assertEquals(8, ranges.get(1).getEffectiveLastByte(1000));
+		Assertions.assertEquals(998, ranges.get(2).getEffectiveFirstByte(1000));
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"bytes=2-3,3-2", "bytes=2-3,-", "bytes=2-3,z-4"})
+	public void testParseSetWithMalformedRange(String str) {
+		Assertions.assertThrows(MalformedByteRangeException.class, () -> {
+			ByteRange.parseSet(str);
+		});
+	}
+
+	@Test
+	public void testCoalesceMergesOverlappingAndAdjacentRanges() throws UnsupportedRangeException, MalformedByteRangeException {
+		List<ByteRange> ranges = ByteRange.coalesce(ByteRange.parseSet("bytes=500-600,0-9,10-19,550-700,-100"), 1000);
+		Assertions.assertEquals(3, ranges.size());
+		Assertions.assertEquals(0, ranges.get(0).getEffectiveFirstByte(1000));
+		Assertions.assertEquals(19, ranges.get(0).getEffectiveLastByte(1000));
+		Assertions.assertEquals(500, ranges.get(1).getEffectiveFirstByte(1000));
+		Assertions.assertEquals(700, ranges.get(1).getEffectiveLastByte(1000));
+		Assertions.assertEquals(900, ranges.get(2).getEffectiveFirstByte(1000));
+		Assertions.assertEquals(999, ranges.get(2).getEffectiveLastByte(1000));
+	}
+
+	@Test
+	public void testCoalesceDiscardsUnsatisfiableRanges() throws UnsupportedRangeException, MalformedByteRangeException {
+		List<ByteRange> ranges = ByteRange.coalesce(ByteRange.parseSet("bytes=2000-3000,-0,10-2000"), 1000);
+		Assertions.assertEquals(1, ranges.size());
+		Assertions.assertEquals(10, ranges.get(0).getEffectiveFirstByte(1000));
+		Assertions.assertEquals(999, ranges.get(0).getEffectiveLastByte(1000));
+	}
+
+	@Test
+	public void testParseContentRange() throws UnsupportedRangeException, MalformedByteRangeException {
+		ByteRange range = ByteRange.parseContentRange("bytes 100-199/1000");
+		Assertions.assertEquals(100, range.getEffectiveFirstByte(0));
+		Assertions.assertEquals(199, range.getEffectiveLastByte(Long.MAX_VALUE));
+	}
+
+	@Test
+	public void testParseContentRangeWithUnknownCompleteLength() throws UnsupportedRangeException, MalformedByteRangeException {
+		ByteRange range = ByteRange.parseContentRange("bytes 100-199/*");
+		Assertions.assertEquals(100, range.getEffectiveFirstByte(0));
+		Assertions.assertEquals(199, range.getEffectiveLastByte(Long.MAX_VALUE));
+	}
+
+	@Test
+	public void testParseContentRangeWithUnsupportedUnit() {
+		Assertions.assertThrows(UnsupportedRangeException.class, () -> {
+			ByteRange.parseContentRange("cats 2-3/4");
+		});
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"bytes 2-3", "bytes 2-/10", "bytes -3/10", "bytes 3-2/10", "bytes 2-3/3", "bytes 2-3/x", "bytes */10", "bytes 2-3/4/5"})
+	public void testParseMalformedContentRange(String str) {
+		Assertions.assertThrows(MalformedByteRangeException.class, () -> {
+			ByteRange.parseContentRange(str);
+		});
+	}
+
 }
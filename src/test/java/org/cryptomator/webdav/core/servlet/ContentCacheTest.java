@@ -0,0 +1,79 @@
+package org.cryptomator.webdav.core.servlet;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+public class ContentCacheTest {
+
+	private Path file;
+	private ContentCache cache;
+
+	@BeforeEach
+	public void setup(@TempDir Path tmpDir) throws IOException {
+		file = Files.write(tmpDir.resolve("file.txt"), "hello world".getBytes(StandardCharsets.US_ASCII));
+		cache = new ContentCache(1024, 8);
+	}
+
+	@Test
+	public void testIsApplicable() throws IOException {
+		BasicFileAttributes attr = Files.readAttributes(file, BasicFileAttributes.class);
+		Assertions.assertTrue(cache.isApplicable(attr, 0, 8));
+		Assertions.assertTrue(cache.isApplicable(attr, 2, 3));
+		Assertions.assertFalse(cache.isApplicable(attr, 0, 11));
+		Assertions.assertFalse(cache.isApplicable(attr, 6, 3));
+		Assertions.assertFalse(new ContentCache(0, 8).isApplicable(attr, 0, 8));
+	}
+
+	@Test
+	public void testHitsAndMisses() throws IOException {
+		BasicFileAttributes attr = Files.readAttributes(file, BasicFileAttributes.class);
+
+		ByteArrayOutputStream out1 = new ByteArrayOutputStream();
+		Assertions.assertTrue(cache.transfer(file, attr, 0, 5, out1));
+		ByteArrayOutputStream out2 = new ByteArrayOutputStream();
+		Assertions.assertTrue(cache.transfer(file, attr, 4, 3, out2));
+
+		Assertions.assertEquals("hello", out1.toString(StandardCharsets.US_ASCII));
+		Assertions.assertEquals("o w", out2.toString(StandardCharsets.US_ASCII));
+		Assertions.assertEquals(1, cache.getMissCount());
+		Assertions.assertEquals(1, cache.getHitCount());
+	}
+
+	@Test
+	public void testModifiedFileIsReloaded() throws IOException {
+		BasicFileAttributes attr1 = Files.readAttributes(file, BasicFileAttributes.class);
+		cache.transfer(file, attr1, 0, 5, new ByteArrayOutputStream());
+
+		Files.write(file, "HELLO WORLD".getBytes(StandardCharsets.US_ASCII));
+		Files.setLastModifiedTime(file, FileTime.fromMillis(attr1.lastModifiedTime().toMillis() + 1000));
+		BasicFileAttributes attr2 = Files.readAttributes(file, BasicFileAttributes.class);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		cache.transfer(file, attr2, 0, 5, out);
+
+		Assertions.assertEquals("HELLO", out.toString(StandardCharsets.US_ASCII));
+		Assertions.assertEquals(2, cache.getMissCount());
+	}
+
+	@Test
+	public void testInvalidate() throws IOException {
+		BasicFileAttributes attr = Files.readAttributes(file, BasicFileAttributes.class);
+		cache.transfer(file, attr, 0, 5, new ByteArrayOutputStream());
+
+		cache.invalidate(file.getParent());
+		cache.transfer(file, attr, 0, 5, new ByteArrayOutputStream());
+
+		Assertions.assertEquals(2, cache.getMissCount());
+		Assertions.assertEquals(0, cache.getHitCount());
+	}
+
+}
@@ -0,0 +1,156 @@
+package org.cryptomator.webdav.core.servlet;
+
+import org.apache.jackrabbit.webdav.DavException;
+import org.apache.jackrabbit.webdav.DavServletResponse;
+import org.apache.jackrabbit.webdav.io.OutputContext;
+import org.apache.jackrabbit.webdav.property.DavPropertyName;
+import org.apache.jackrabbit.webdav.property.DavPropertySet;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Optional;
+
+public class DavFileTest {
+
+	private static final byte[] CONTENT = "hello world".getBytes(StandardCharsets.US_ASCII);
+
+	private Path file;
+	private DavResourceFactoryImpl factory;
+	private OutputContext outputContext;
+
+	@BeforeEach
+	public void setup(@TempDir Path tmpDir) throws IOException {
+		file = Files.write(tmpDir.resolve("file.txt"), CONTENT);
+		factory = new DavResourceFactoryImpl(tmpDir::resolve, ServletSettings.defaults());
+		outputContext = Mockito.mock(OutputContext.class);
+		Mockito.when(outputContext.hasStream()).thenReturn(true);
+	}
+
+	@Test
+	public void testSpoolToOutputStream() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Mockito.when(outputContext.getOutputStream()).thenReturn(out);
+
+		createFile().spool(outputContext);
+
+		Assertions.assertArrayEquals(CONTENT, out.toByteArray());
+		Mockito.verify(outputContext).setContentLength(CONTENT.length);
+	}
+
+	@Test
+	public void testSpoolRange() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		createFile().spoolContent(6, 3, out);
+
+		Assertions.assertEquals("wor", out.toString(StandardCharsets.US_ASCII));
+	}
+
+	@Test
+	public void testSpoolMultipleRanges() throws IOException, ByteRange.UnsupportedRangeException, ByteRange.MalformedByteRangeException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Mockito.when(outputContext.getOutputStream()).thenReturn(out);
+		BasicFileAttributes attr = Files.readAttributes(file, BasicFileAttributes.class);
+		List<ByteRange> ranges = ByteRange.coalesce(ByteRange.parseSet("bytes=0-1,6-"), CONTENT.length);
+
+		new DavFileWithMultipleRanges(factory, null, null, file, attr, null, ranges).spool(outputContext);
+
+		String body = out.toString(StandardCharsets.US_ASCII);
+		String boundary = body.substring(2, body.indexOf("\r\n"));
+		String expected = "--" + boundary + "\r\n" //
+				+ "Content-Type: application/octet-stream\r\n" //
+				+ "Content-Range: bytes 0-1/11\r\n" //
+				+ "\r\n" //
+				+ "he\r\n" //
+				+ "--" + boundary + "\r\n" //
+				+ "Content-Type: application/octet-stream\r\n" //
+				+ "Content-Range: bytes 6-10/11\r\n" //
+				+ "\r\n" //
+				+ "world\r\n" //
+				+ "--" + boundary + "--\r\n";
+		Assertions.assertEquals(expected, body);
+		Mockito.verify(outputContext).setContentType("multipart/byteranges; boundary=" + boundary);
+		Mockito.verify(outputContext).setContentLength(expected.length());
+	}
+
+	@Test
+	public void testWriteRange() throws DavException, IOException, ByteRange.UnsupportedRangeException, ByteRange.MalformedByteRangeException {
+		ByteRange range = ByteRange.parseContentRange("bytes 6-10/11");
+
+		createFile().writeRange(range, new ByteArrayInputStream("WORLD and more".getBytes(StandardCharsets.US_ASCII)));
+
+		Assertions.assertEquals("hello WORLD", Files.readString(file));
+	}
+
+	@Test
+	public void testWriteRangeBeyondEndOfFile() throws DavException, IOException, ByteRange.UnsupportedRangeException, ByteRange.MalformedByteRangeException {
+		ByteRange range = ByteRange.parseContentRange("bytes 11-12/*");
+
+		createFile().writeRange(range, new ByteArrayInputStream("!!".getBytes(StandardCharsets.US_ASCII)));
+
+		Assertions.assertEquals("hello world!!", Files.readString(file));
+	}
+
+	@Test
+	public void testWriteRangeCreatesFile() throws DavException, IOException, ByteRange.UnsupportedRangeException, ByteRange.MalformedByteRangeException {
+		Path newFile = file.resolveSibling("new.txt");
+		ByteRange range = ByteRange.parseContentRange("bytes 0-4/10");
+
+		new DavFile(factory, null, null, newFile, Optional.empty(), null).writeRange(range, new ByteArrayInputStream("first".getBytes(StandardCharsets.US_ASCII)));
+
+		Assertions.assertEquals("first", Files.readString(newFile));
+	}
+
+	@Test
+	public void testWriteRangeWithIncompleteBody() throws IOException, ByteRange.UnsupportedRangeException, ByteRange.MalformedByteRangeException {
+		ByteRange range = ByteRange.parseContentRange("bytes 0-9/*");
+		DavFile davFile = createFile();
+
+		DavException e = Assertions.assertThrows(DavException.class, () -> {
+			davFile.writeRange(range, new ByteArrayInputStream("HELLO".getBytes(StandardCharsets.US_ASCII)));
+		});
+		Assertions.assertEquals(DavServletResponse.SC_BAD_REQUEST, e.getErrorCode());
+		Assertions.assertEquals("HELLO world", Files.readString(file));
+	}
+
+	@Test
+	public void testPropertiesComputedOnRequest() throws IOException {
+		DavFile davFile = createFile();
+
+		Assertions.assertEquals((long) CONTENT.length, davFile.getProperty(DavPropertyName.GETCONTENTLENGTH).getValue());
+		Assertions.assertNull(davFile.getProperty(DavPropertyName.RESOURCETYPE));
+		Assertions.assertEquals(List.of(DavPropertyName.CREATIONDATE, DavPropertyName.GETLASTMODIFIED, DavPropertyName.GETCONTENTLENGTH, DavPropertyName.GETETAG), List.of(davFile.getPropertyNames()));
+		DavPropertySet allProps = davFile.getProperties();
+		Assertions.assertEquals(4, allProps.getContentSize());
+		Assertions.assertEquals(davFile.getETag(), allProps.get(DavPropertyName.GETETAG).getValue());
+	}
+
+	@Test
+	public void testFormattedDatesAreShared() throws IOException {
+		Files.setLastModifiedTime(file, FileTime.fromMillis(1_500_000_000_123L));
+		DavFile davFile = createFile();
+
+		Object lastModified = davFile.getProperty(DavPropertyName.GETLASTMODIFIED).getValue();
+
+		Assertions.assertEquals("Fri, 14 Jul 2017 02:40:00 GMT", lastModified);
+		Assertions.assertSame(lastModified, DavNode.formatDate(FileTime.fromMillis(1_500_000_000_999L)));
+	}
+
+	private DavFile createFile() throws IOException {
+		BasicFileAttributes attr = Files.readAttributes(file, BasicFileAttributes.class);
+		return new DavFile(factory, null, null, file, Optional.of(attr), null);
+	}
+
+}
@@ -0,0 +1,103 @@
+package org.cryptomator.webdav.core.servlet;
+
+import com.google.common.collect.Iterators;
+import org.apache.jackrabbit.webdav.DavSession;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+
+public class DavFolderMemberIteratorTest {
+
+	private static final int MEMBER_COUNT = 600;
+
+	private Path dir;
+	private DavResourceFactoryImpl factory;
+	private List<Path> paths;
+
+	@BeforeEach
+	public void setup(@TempDir Path tmpDir) throws IOException {
+		dir = Files.createDirectory(tmpDir.resolve("dir"));
+		paths = new ArrayList<>();
+		for (int i = 0; i < MEMBER_COUNT; i++) {
+			paths.add(i % 2 == 0 ? Files.createFile(dir.resolve("file" + i)) : Files.createDirectory(dir.resolve("folder" + i)));
+		}
+		factory = new DavResourceFactoryImpl(tmpDir::resolve, ServletSettings.defaults());
+	}
+
+	@Test
+	public void testMembersCreatedLazilyAndSourceClosedWhenExhausted() throws IOException {
+		Closeable source = Mockito.mock(Closeable.class);
+		List<Path> created = new ArrayList<>();
+		DavFolderMemberIterator iterator = new DavFolderMemberIterator(paths.iterator(), source, factory.getAttributeLoader(), (path, attr) -> {
+			created.add(path);
+			return factory.createFile(null, path, attr, null);
+		}, null, 0);
+
+		Assertions.assertTrue(iterator.hasNext());
+		Assertions.assertTrue(created.size() < MEMBER_COUNT);
+		Mockito.verify(source, Mockito.never()).close();
+
+		Assertions.assertEquals(MEMBER_COUNT, Iterators.size(iterator));
+		Assertions.assertEquals(paths, created);
+		Mockito.verify(source).close();
+	}
+
+	@Test
+	public void testCloseSkipsRemainingMembers() throws IOException {
+		Closeable source = Mockito.mock(Closeable.class);
+		DavFolderMemberIterator iterator = new DavFolderMemberIterator(paths.iterator(), source, factory.getAttributeLoader(), (path, attr) -> factory.createFile(null, path, attr, null), null, 0);
+
+		iterator.next();
+		iterator.close();
+
+		Assertions.assertFalse(iterator.hasNext());
+		Mockito.verify(source).close();
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testListingPassedToConsumerOnlyIfSmallEnough() {
+		Consumer<List<String>> consumer = Mockito.mock(Consumer.class);
+		Iterators.size(new DavFolderMemberIterator(paths.iterator(), () -> {}, factory.getAttributeLoader(), (path, attr) -> factory.createFolder(null, path, attr, null), consumer, MEMBER_COUNT));
+		Mockito.verify(consumer).accept(Mockito.argThat(list -> list.size() == MEMBER_COUNT));
+
+		Consumer<List<String>> otherConsumer = Mockito.mock(Consumer.class);
+		Iterators.size(new DavFolderMemberIterator(paths.iterator(), () -> {}, factory.getAttributeLoader(), (path, attr) -> factory.createFolder(null, path, attr, null), otherConsumer, MEMBER_COUNT - 1));
+		Mockito.verifyNoInteractions(otherConsumer);
+	}
+
+	@Test
+	public void testGetMembersListsFilesAndFolders() throws IOException {
+		BasicFileAttributes attr = Files.readAttributes(dir, BasicFileAttributes.class);
+		DavLocatorImpl locator = new DavLocatorFactoryImpl().createResourceLocator("http://localhost/", "dir/");
+		DavFolder folder = factory.createFolder(locator, dir, Optional.of(attr), Mockito.mock(DavSession.class));
+
+		Set<String> names = new HashSet<>();
+		int folders = 0;
+		try (DavFolderMemberIterator members = folder.getMembers()) {
+			while (members.hasNext()) {
+				DavNode member = (DavNode) members.next();
+				names.add(member.path.getFileName().toString());
+				folders += member.isCollection() ? 1 : 0;
+			}
+		}
+
+		Assertions.assertEquals(MEMBER_COUNT, names.size());
+		Assertions.assertEquals(MEMBER_COUNT / 2, folders);
+	}
+
+}
@@ -0,0 +1,156 @@
+package org.cryptomator.webdav.core.servlet;
+
+import org.apache.jackrabbit.webdav.DavException;
+import org.apache.jackrabbit.webdav.io.InputContext;
+import org.apache.jackrabbit.webdav.property.DavPropertyName;
+import org.apache.jackrabbit.webdav.property.DavPropertySet;
+import org.apache.jackrabbit.webdav.property.DefaultDavProperty;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public class DavFolderTest {
+
+	private static final DavPropertyName CUSTOM_PROPERTY = DavPropertyName.create("custom");
+
+	private Path dir;
+	private DavResourceFactoryImpl factory;
+
+	@BeforeEach
+	public void setup(@TempDir Path tmpDir) throws IOException {
+		dir = Files.createDirectory(tmpDir.resolve("dir"));
+		factory = new DavResourceFactoryImpl(tmpDir::resolve, ServletSettings.defaults());
+	}
+
+	@Test
+	public void testPropertyNamesIncludeQuota() throws IOException {
+		List<DavPropertyName> names = List.of(createFolder().getPropertyNames());
+
+		Assertions.assertEquals(List.of(DavPropertyName.RESOURCETYPE, DavPropertyName.ISCOLLECTION, DavPropertyName.CREATIONDATE, DavPropertyName.GETLASTMODIFIED, DavPropertyName.create("quota-available-bytes"), DavPropertyName.create("quota-used-bytes")), names);
+	}
+
+	@Test
+	public void testAllPropExcludesQuota() throws IOException {
+		DavPropertySet properties = createFolder().getProperties();
+
+		Assertions.assertEquals(4, properties.getContentSize());
+		Assertions.assertFalse(properties.contains(DavPropertyName.create("quota-available-bytes")));
+	}
+
+	@Test
+	public void testStaticPropertiesAreShared() throws IOException {
+		DavFolder folder1 = createFolder();
+		DavFolder folder2 = createFolder();
+
+		Assertions.assertSame(folder1.getProperty(DavPropertyName.RESOURCETYPE), folder2.getProperty(DavPropertyName.RESOURCETYPE));
+		Assertions.assertSame(folder1.getProperty(DavPropertyName.ISCOLLECTION), folder2.getProperty(DavPropertyName.ISCOLLECTION));
+	}
+
+	@Test
+	public void testDeadPropertiesKeptUntilRemoved() throws IOException, DavException {
+		DavFolder folder = createFolder();
+
+		folder.setProperty(new DefaultDavProperty<>(CUSTOM_PROPERTY, "value"));
+		Assertions.assertEquals("value", folder.getProperty(CUSTOM_PROPERTY).getValue());
+		Assertions.assertTrue(folder.getProperties().contains(CUSTOM_PROPERTY));
+
+		folder.removeProperty(CUSTOM_PROPERTY);
+		Assertions.assertNull(folder.getProperty(CUSTOM_PROPERTY));
+	}
+
+	@Test
+	public void testPutInvalidatesCachesBeforeAndAfterReplacingFile() throws IOException, DavException {
+		Path file = Files.writeString(dir.resolve("file.txt"), "old");
+		DavResourceFactoryImpl spiedFactory = Mockito.spy(factory);
+		List<String> contentsWhenInvalidated = new ArrayList<>();
+		Mockito.doAnswer(invocation -> {
+			contentsWhenInvalidated.add(Files.readString(file));
+			return invocation.callRealMethod();
+		}).when(spiedFactory).invalidate(file);
+		BasicFileAttributes attr = Files.readAttributes(dir, BasicFileAttributes.class);
+		DavFolder folder = new DavFolder(spiedFactory, null, null, dir, Optional.of(attr), null);
+		InputContext inputContext = Mockito.mock(InputContext.class);
+		Mockito.when(inputContext.hasStream()).thenReturn(true);
+		Mockito.when(inputContext.getContentLength()).thenReturn(3L);
+		Mockito.when(inputContext.getInputStream()).thenReturn(new ByteArrayInputStream("new".getBytes(StandardCharsets.US_ASCII)));
+
+		folder.addMember(new DavFile(spiedFactory, null, null, file, Optional.empty(), null), inputContext);
+
+		Assertions.assertEquals(List.of("old", "new"), contentsWhenInvalidated);
+	}
+
+	@Test
+	public void testAsyncPutWithMismatchingDigestIsRejected() throws IOException, DavException {
+		HttpServletResponse response = putAsync("hello", "sha-256=:" + Base64.getEncoder().encodeToString(new byte[32]) + ":");
+
+		Mockito.verify(response).setStatus(HttpServletResponse.SC_BAD_REQUEST);
+		Assertions.assertFalse(Files.exists(dir.resolve("file.txt")));
+		try (var files = Files.list(dir)) {
+			Assertions.assertEquals(0, files.count());
+		}
+	}
+
+	@Test
+	public void testAsyncPutWithMatchingDigest() throws IOException, DavException, NoSuchAlgorithmException {
+		byte[] digest = MessageDigest.getInstance("SHA-256").digest("hello".getBytes(StandardCharsets.US_ASCII));
+
+		HttpServletResponse response = putAsync("hello", "sha-256=:" + Base64.getEncoder().encodeToString(digest) + ":");
+
+		Mockito.verify(response).setStatus(HttpServletResponse.SC_CREATED);
+		Assertions.assertEquals("hello", Files.readString(dir.resolve("file.txt")));
+	}
+
+	private HttpServletResponse putAsync(String body, String contentDigest) throws IOException, DavException {
+		DavResourceFactoryImpl factory = new DavResourceFactoryImpl(dir.getParent()::resolve, ServletSettings.fromInitParameters(Map.of(AbstractNioWebDavServlet.INIT_PARAM_DIGEST_ALGORITHM, "SHA-256")::get));
+		BasicFileAttributes attr = Files.readAttributes(dir, BasicFileAttributes.class);
+		DavFolder folder = new DavFolder(factory, null, null, dir, Optional.of(attr), null);
+		DavFile file = new DavFile(factory, null, null, dir.resolve("file.txt"), Optional.empty(), null);
+		InputContext inputContext = Mockito.mock(InputContext.class);
+		Mockito.when(inputContext.getContentLength()).thenReturn((long) body.length());
+		Mockito.when(inputContext.getProperty("Content-Digest")).thenReturn(contentDigest);
+		ByteArrayInputStream content = new ByteArrayInputStream(body.getBytes(StandardCharsets.US_ASCII));
+		ServletInputStream in = Mockito.mock(ServletInputStream.class);
+		Mockito.when(in.isReady()).thenAnswer(invocation -> content.available() > 0);
+		Mockito.when(in.read(Mockito.any(byte[].class))).thenAnswer(invocation -> content.read(invocation.getArgument(0)));
+		AsyncContext asyncContext = Mockito.mock(AsyncContext.class);
+		HttpServletResponse response = Mockito.mock(HttpServletResponse.class);
+		Mockito.when(asyncContext.getResponse()).thenReturn(response);
+
+		Assertions.assertTrue(folder.addMemberFileAsync(file, inputContext, in, () -> asyncContext, HttpServletResponse.SC_CREATED));
+		ArgumentCaptor<ReadListener> listener = ArgumentCaptor.forClass(ReadListener.class);
+		Mockito.verify(in).setReadListener(listener.capture());
+		listener.getValue().onDataAvailable();
+		listener.getValue().onAllDataRead();
+
+		Mockito.verify(asyncContext, Mockito.timeout(10_000)).complete();
+		factory.close();
+		return response;
+	}
+
+	private DavFolder createFolder() throws IOException {
+		BasicFileAttributes attr = Files.readAttributes(dir, BasicFileAttributes.class);
+		return new DavFolder(factory, null, null, dir, Optional.of(attr), null);
+	}
+
+}
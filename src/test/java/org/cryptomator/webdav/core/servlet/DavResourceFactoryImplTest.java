@@ -0,0 +1,120 @@
+package org.cryptomator.webdav.core.servlet;
+
+import org.apache.jackrabbit.webdav.DavException;
+import org.apache.jackrabbit.webdav.DavMethods;
+import org.apache.jackrabbit.webdav.DavResource;
+import org.apache.jackrabbit.webdav.DavServletRequest;
+import org.apache.jackrabbit.webdav.DavServletResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+public class DavResourceFactoryImplTest {
+
+	private Path file;
+	private DavResourceFactoryImpl factory;
+	private DavServletRequest request;
+	private DavServletResponse response;
+	private DavLocatorImpl locator;
+
+	@BeforeEach
+	public void setup(@TempDir Path tmpDir) throws IOException {
+		file = Files.write(tmpDir.resolve("file.txt"), "hello world".getBytes(StandardCharsets.US_ASCII));
+		factory = new DavResourceFactoryImpl(tmpDir::resolve, ServletSettings.defaults());
+		request = Mockito.mock(DavServletRequest.class);
+		response = Mockito.mock(DavServletResponse.class);
+		locator = new DavLocatorFactoryImpl().createResourceLocator("http://localhost/", "file.txt");
+		Mockito.when(request.getRequestLocator()).thenReturn(locator);
+		Mockito.when(request.getMethod()).thenReturn(DavMethods.METHOD_PUT);
+		Mockito.when(request.getContentLengthLong()).thenReturn(-1L);
+		Mockito.when(request.getDateHeader(Mockito.anyString())).thenReturn(-1L);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		factory.close();
+	}
+
+	@Test
+	public void testPutWithoutPreconditions() throws DavException {
+		DavResource resource = factory.createResource(locator, request, response);
+
+		Assertions.assertTrue(resource instanceof DavFile);
+	}
+
+	@Test
+	public void testPutWithMatchingIfMatch() throws DavException, IOException {
+		String etag = ETag.of(Files.readAttributes(file, BasicFileAttributes.class));
+		Mockito.when(request.getHeader("If-Match")).thenReturn(etag);
+
+		DavResource resource = factory.createResource(locator, request, response);
+
+		Assertions.assertTrue(resource instanceof DavFile);
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"If-Match: \"other\"", "If-None-Match: *", "If-Unmodified-Since: 0"})
+	public void testPutWithFailedPrecondition(String header) {
+		String[] nameAndValue = header.split(": ");
+		if ("If-Unmodified-Since".equals(nameAndValue[0])) {
+			Mockito.when(request.getDateHeader(nameAndValue[0])).thenReturn(Long.parseLong(nameAndValue[1]));
+		} else {
+			Mockito.when(request.getHeader(nameAndValue[0])).thenReturn(nameAndValue[1]);
+		}
+
+		DavException e = Assertions.assertThrows(DavException.class, () -> {
+			factory.createResource(locator, request, response);
+		});
+		Assertions.assertEquals(DavServletResponse.SC_PRECONDITION_FAILED, e.getErrorCode());
+	}
+
+	@Test
+	public void testPutNewFileWithIfNoneMatchAny() throws DavException {
+		DavLocatorImpl newLocator = new DavLocatorFactoryImpl().createResourceLocator("http://localhost/", "new.txt");
+		Mockito.when(request.getRequestLocator()).thenReturn(newLocator);
+		Mockito.when(request.getHeader("If-None-Match")).thenReturn("*");
+
+		DavResource resource = factory.createResource(newLocator, request, response);
+
+		Assertions.assertFalse(resource.exists());
+	}
+
+	@Test
+	public void testPutNewFileWithIfMatch() {
+		DavLocatorImpl newLocator = new DavLocatorFactoryImpl().createResourceLocator("http://localhost/", "new.txt");
+		Mockito.when(request.getRequestLocator()).thenReturn(newLocator);
+		Mockito.when(request.getHeader("If-Match")).thenReturn("*");
+
+		DavException e = Assertions.assertThrows(DavException.class, () -> {
+			factory.createResource(newLocator, request, response);
+		});
+		Assertions.assertEquals(DavServletResponse.SC_PRECONDITION_FAILED, e.getErrorCode());
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"Content-Length", "X-Expected-Entity-Length"})
+	public void testPutExceedingUsableSpace(String header) {
+		if ("Content-Length".equals(header)) {
+			Mockito.when(request.getContentLengthLong()).thenReturn(Long.MAX_VALUE);
+		} else {
+			Mockito.when(request.getHeader(header)).thenReturn(Long.toString(Long.MAX_VALUE));
+		}
+
+		DavException e = Assertions.assertThrows(DavException.class, () -> {
+			factory.createResource(locator, request, response);
+		});
+		Assertions.assertEquals(DavServletResponse.SC_INSUFFICIENT_SPACE_ON_RESOURCE, e.getErrorCode());
+	}
+
+}
@@ -0,0 +1,91 @@
+package org.cryptomator.webdav.core.servlet;
+
+import com.google.common.collect.Iterators;
+import org.apache.jackrabbit.webdav.DavSession;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Optional;
+
+public class DirectoryListingCacheTest {
+
+	private static final Path DIR = Paths.get("/foo/bar");
+	private static final FileTime MTIME = FileTime.fromMillis(1000);
+	private static final List<String> MEMBERS = List.of("a", "b.txt");
+
+	@Test
+	public void testListingReturnedWhileModificationTimeMatches() {
+		DirectoryListingCache cache = new DirectoryListingCache(60_000, 100);
+		cache.put(DIR, MTIME, MEMBERS);
+
+		Optional<List<String>> cached = cache.get(DIR, MTIME);
+		Assertions.assertTrue(cached.isPresent());
+		Assertions.assertEquals(MEMBERS, cached.get());
+		Assertions.assertFalse(cache.get(DIR, FileTime.fromMillis(2000)).isPresent());
+	}
+
+	@Test
+	public void testInvalidateDiscardsListingsOfPathDescendantsAndParent() {
+		DirectoryListingCache cache = new DirectoryListingCache(60_000, 100);
+		cache.put(DIR, MTIME, MEMBERS);
+		cache.put(DIR.resolve("a"), MTIME, List.of());
+		cache.put(DIR.getParent(), MTIME, List.of());
+		cache.put(Paths.get("/other"), MTIME, List.of());
+
+		cache.invalidate(DIR.resolve("b.txt"));
+		Assertions.assertFalse(cache.get(DIR, MTIME).isPresent());
+		Assertions.assertTrue(cache.get(DIR.resolve("a"), MTIME).isPresent());
+
+		cache.invalidate(DIR);
+		Assertions.assertFalse(cache.get(DIR.resolve("a"), MTIME).isPresent());
+		Assertions.assertFalse(cache.get(DIR.getParent(), MTIME).isPresent());
+		Assertions.assertTrue(cache.get(Paths.get("/other"), MTIME).isPresent());
+	}
+
+	@Test
+	public void testListingsExceedingTotalMemberCountAreEvicted() {
+		DirectoryListingCache cache = new DirectoryListingCache(60_000, 5);
+		cache.put(DIR, MTIME, MEMBERS);
+		cache.put(DIR.resolve("a"), MTIME, MEMBERS);
+
+		Assertions.assertFalse(cache.get(DIR, MTIME).isPresent() && cache.get(DIR.resolve("a"), MTIME).isPresent());
+	}
+
+	@Test
+	public void testDisabledCache() {
+		DirectoryListingCache cache = new DirectoryListingCache(0, 100);
+		cache.put(DIR, MTIME, MEMBERS);
+
+		Assertions.assertFalse(cache.get(DIR, MTIME).isPresent());
+	}
+
+	@Test
+	public void testGetMembersUsesCachedListingUntilInvalidated(@TempDir Path tmpDir) throws IOException {
+		ServletSettings settings = ServletSettings.fromInitParameters(name -> AbstractNioWebDavServlet.INIT_PARAM_DIRECTORY_CACHE_TTL.equals(name) ? "60000" : null);
+		DavResourceFactoryImpl factory = new DavResourceFactoryImpl(tmpDir::resolve, settings);
+		Path dir = Files.createDirectory(tmpDir.resolve("dir"));
+		Files.createFile(dir.resolve("a.txt"));
+		BasicFileAttributes attr = Files.readAttributes(dir, BasicFileAttributes.class);
+		DavLocatorImpl locator = new DavLocatorFactoryImpl().createResourceLocator("http://localhost/", "dir/");
+		DavFolder folder = factory.createFolder(locator, dir, Optional.of(attr), Mockito.mock(DavSession.class));
+		Assertions.assertEquals(1, Iterators.size(folder.getMembers()));
+
+		// pretend the modification time didn't change:
+		Files.createFile(dir.resolve("b.txt"));
+		Assertions.assertEquals(1, Iterators.size(folder.getMembers()));
+
+		factory.invalidate(dir.resolve("b.txt"));
+		Assertions.assertEquals(2, Iterators.size(folder.getMembers()));
+		factory.close();
+	}
+
+}
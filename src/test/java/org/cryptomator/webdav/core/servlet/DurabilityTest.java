@@ -0,0 +1,96 @@
+package org.cryptomator.webdav.core.servlet;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DurabilityTest {
+
+	@ParameterizedTest
+	@CsvSource({"none,NONE", "fsync,FSYNC", "group-commit,GROUP_COMMIT", " Group-Commit ,GROUP_COMMIT"})
+	public void testParseMode(String value, Durability.Mode expected) {
+		Assertions.assertEquals(expected, Durability.Mode.parse(value));
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"", "always", "group commit"})
+	public void testParseInvalidMode(String value) {
+		Assertions.assertThrows(IllegalArgumentException.class, () -> {
+			Durability.Mode.parse(value);
+		});
+	}
+
+	@Test
+	public void testNoneDoesNotForce(@TempDir Path tmpDir) throws IOException {
+		AtomicInteger forced = new AtomicInteger();
+		try (Durability durability = new Durability(Durability.Mode.NONE, 0)) {
+			durability.commitAndWait(forced::incrementAndGet, tmpDir);
+		}
+		Assertions.assertEquals(0, forced.get());
+	}
+
+	@Test
+	public void testFsyncForcesInline(@TempDir Path tmpDir) {
+		AtomicInteger forced = new AtomicInteger();
+		try (Durability durability = new Durability(Durability.Mode.FSYNC, 0)) {
+			CompletableFuture<Void> result = durability.commit(forced::incrementAndGet, tmpDir);
+			Assertions.assertTrue(result.isDone());
+		}
+		Assertions.assertEquals(1, forced.get());
+	}
+
+	@Test
+	public void testFsyncPropagatesFailure() {
+		try (Durability durability = new Durability(Durability.Mode.FSYNC, 0)) {
+			IOException e = Assertions.assertThrows(IOException.class, () -> {
+				durability.commitAndWait(() -> {
+					throw new IOException("disk full");
+				}, null);
+			});
+			Assertions.assertEquals("disk full", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testGroupCommitForcesBatch(@TempDir Path tmpDir) throws InterruptedException, ExecutionException, TimeoutException {
+		List<String> forced = new ArrayList<>();
+		try (Durability durability = new Durability(Durability.Mode.GROUP_COMMIT, 100)) {
+			CompletableFuture<Void> first = durability.commit(() -> forced.add("first"), tmpDir);
+			CompletableFuture<Void> second = durability.commit(() -> forced.add("second"), tmpDir);
+			CompletableFuture<Void> third = durability.commit(() -> {
+				throw new IOException("disk full");
+			}, tmpDir);
+			Assertions.assertFalse(first.isDone());
+
+			CompletableFuture.allOf(first, second).get(10, TimeUnit.SECONDS);
+			Assertions.assertEquals(List.of("first", "second"), forced);
+			ExecutionException e = Assertions.assertThrows(ExecutionException.class, () -> third.get(10, TimeUnit.SECONDS));
+			Assertions.assertEquals("disk full", e.getCause().getMessage());
+		}
+	}
+
+	@Test
+	public void testGroupCommitAfterClose() {
+		Durability durability = new Durability(Durability.Mode.GROUP_COMMIT, 0);
+		durability.close();
+
+		Assertions.assertThrows(IOException.class, () -> {
+			durability.commitAndWait(() -> {
+			}, null);
+		});
+	}
+
+}
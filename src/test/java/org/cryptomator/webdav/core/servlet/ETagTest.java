@@ -0,0 +1,63 @@
+package org.cryptomator.webdav.core.servlet;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.Mockito;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+public class ETagTest {
+
+	private static final String ETAG = "\"abc-1\"";
+
+	@Test
+	public void testOfChangesWithSizeAndModificationTime() {
+		BasicFileAttributes attr1 = mockAttributes("key", 100, 1000);
+		BasicFileAttributes attr2 = mockAttributes("key", 101, 1000);
+		BasicFileAttributes attr3 = mockAttributes("key", 100, 1001);
+
+		String etag = ETag.of(attr1);
+
+		Assertions.assertTrue(etag.startsWith("\"") && etag.endsWith("\""));
+		Assertions.assertEquals(etag, ETag.of(mockAttributes("key", 100, 1000)));
+		Assertions.assertNotEquals(etag, ETag.of(attr2));
+		Assertions.assertNotEquals(etag, ETag.of(attr3));
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"*", "\"abc-1\"", "\"foo\", \"abc-1\"", "W/\"abc-1\"", "\"foo\",W/\"abc-1\""})
+	public void testWeakComparisonMatches(String headerValue) {
+		Assertions.assertTrue(ETag.matches(headerValue, ETAG, true));
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"\"foo\"", "\"abc-2\", \"abc\"", "abc-1", "\"abc-1"})
+	public void testWeakComparisonMismatches(String headerValue) {
+		Assertions.assertFalse(ETag.matches(headerValue, ETAG, true));
+	}
+
+	@Test
+	public void testStrongComparisonRejectsWeakETags() {
+		Assertions.assertTrue(ETag.matches("\"abc-1\"", ETAG, false));
+		Assertions.assertFalse(ETag.matches("W/\"abc-1\"", ETAG, false));
+	}
+
+	@Test
+	public void testIsETag() {
+		Assertions.assertTrue(ETag.isETag("\"abc-1\""));
+		Assertions.assertTrue(ETag.isETag("W/\"abc-1\""));
+		Assertions.assertFalse(ETag.isETag("Wed, 21 Oct 2015 07:28:00 GMT"));
+	}
+
+	private BasicFileAttributes mockAttributes(Object fileKey, long size, long mtime) {
+		BasicFileAttributes attr = Mockito.mock(BasicFileAttributes.class);
+		Mockito.when(attr.fileKey()).thenReturn(fileKey);
+		Mockito.when(attr.size()).thenReturn(size);
+		Mockito.when(attr.lastModifiedTime()).thenReturn(FileTime.fromMillis(mtime));
+		return attr;
+	}
+
+}
@@ -0,0 +1,97 @@
+package org.cryptomator.webdav.core.servlet;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Optional;
+
+public class FileDigestsTest {
+
+	private static final byte[] CONTENT = "hello world".getBytes(StandardCharsets.US_ASCII);
+	// SHA-256 of "hello world"
+	private static final String CONTENT_SHA256 = "uU0nuZNNPgilLlLX2n2r+sSE7+N6U4DukIj3rOLvzek=";
+
+	private final FileDigests fileDigests = new FileDigests("SHA-256");
+
+	@Test
+	public void testUnsupportedAlgorithm() {
+		Assertions.assertThrows(IllegalArgumentException.class, () -> {
+			new FileDigests("NO-SUCH-ALGORITHM");
+		});
+	}
+
+	@Test
+	public void testDisabled(@TempDir Path tmpDir) throws IOException {
+		FileDigests disabled = new FileDigests(null);
+		Path file = Files.write(tmpDir.resolve("file.txt"), CONTENT);
+
+		Assertions.assertFalse(disabled.isEnabled());
+		Assertions.assertThrows(IllegalStateException.class, disabled::newMessageDigest);
+		Assertions.assertFalse(disabled.load(file, Files.readAttributes(file, BasicFileAttributes.class)).isPresent());
+	}
+
+	@Test
+	public void testNewMessageDigest() {
+		MessageDigest md = fileDigests.newMessageDigest();
+
+		Assertions.assertEquals(CONTENT_SHA256, Base64.getEncoder().encodeToString(md.digest(CONTENT)));
+	}
+
+	@ParameterizedTest
+	@CsvSource(value = {
+			"sha-256=:uU0nuZNNPgilLlLX2n2r+sSE7+N6U4DukIj3rOLvzek=:;;true",
+			"sha-256=:AAAAuZNNPgilLlLX2n2r+sSE7+N6U4DukIj3rOLvzek=:;;false",
+			"md5=:XrY7u+Ae7tCTyyK7j1rNww==:, sha-256=:uU0nuZNNPgilLlLX2n2r+sSE7+N6U4DukIj3rOLvzek=:;;true",
+			"md5=:AAAAAAAAAAAAAAAAAAAAAA==:;;true",
+			";SHA-256=uU0nuZNNPgilLlLX2n2r+sSE7+N6U4DukIj3rOLvzek=;true",
+			";SHA-256=AAAAuZNNPgilLlLX2n2r+sSE7+N6U4DukIj3rOLvzek=;false",
+			";SHA-256=not base64!;false",
+			";;true",
+	}, delimiter = ';')
+	public void testMatches(String contentDigest, String digest, boolean expected) {
+		byte[] computed = Base64.getDecoder().decode(CONTENT_SHA256);
+
+		Assertions.assertEquals(expected, fileDigests.matches(contentDigest, digest, computed));
+	}
+
+	@Test
+	public void testToContentDigest() {
+		byte[] computed = Base64.getDecoder().decode(CONTENT_SHA256);
+
+		Assertions.assertEquals("sha-256=:" + CONTENT_SHA256 + ":", fileDigests.toContentDigest(computed));
+	}
+
+	@Test
+	public void testStoreLoadAndCopy(@TempDir Path tmpDir) throws IOException {
+		Path file = Files.write(tmpDir.resolve("file.txt"), CONTENT);
+		byte[] digest = fileDigests.newMessageDigest().digest(CONTENT);
+		fileDigests.store(file, digest);
+		Optional<byte[]> loaded = fileDigests.load(file, Files.readAttributes(file, BasicFileAttributes.class));
+		Assumptions.assumeTrue(loaded.isPresent(), "user-defined file attributes not supported");
+		Assertions.assertArrayEquals(digest, loaded.get());
+
+		// copies get their own digest bound to their attributes:
+		Path copy = Files.copy(file, tmpDir.resolve("copy.txt"));
+		Files.setLastModifiedTime(copy, FileTime.fromMillis(0));
+		fileDigests.copy(file, copy);
+		Assertions.assertArrayEquals(digest, fileDigests.load(copy, Files.readAttributes(copy, BasicFileAttributes.class)).orElseThrow());
+
+		// any modification invalidates the digest:
+		Files.write(file, CONTENT);
+		Files.setLastModifiedTime(file, FileTime.fromMillis(1000));
+		Assertions.assertFalse(fileDigests.load(file, Files.readAttributes(file, BasicFileAttributes.class)).isPresent());
+	}
+
+}
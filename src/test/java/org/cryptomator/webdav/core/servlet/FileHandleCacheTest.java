@@ -0,0 +1,87 @@
+package org.cryptomator.webdav.core.servlet;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+public class FileHandleCacheTest {
+
+	private Path file;
+	private FileHandleCache cache;
+
+	@BeforeEach
+	public void setup(@TempDir Path tmpDir) throws IOException {
+		file = Files.write(tmpDir.resolve("file.bin"), new byte[1000]);
+		cache = new FileHandleCache(60_000);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		cache.close();
+	}
+
+	@Test
+	public void testChannelIsShared() throws IOException {
+		BasicFileAttributes attr = Files.readAttributes(file, BasicFileAttributes.class);
+		try (FileHandleCache.Handle handle1 = cache.open(file, attr); FileHandleCache.Handle handle2 = cache.open(file, attr)) {
+			Assertions.assertTrue(handle1.channel() instanceof FileChannel);
+			Assertions.assertSame(handle1.channel(), handle2.channel());
+		}
+		try (FileHandleCache.Handle handle3 = cache.open(file, attr)) {
+			Assertions.assertTrue(handle3.channel().isOpen());
+		}
+	}
+
+	@Test
+	public void testChannelClosedAfterInvalidation() throws IOException {
+		BasicFileAttributes attr = Files.readAttributes(file, BasicFileAttributes.class);
+		SeekableByteChannel channel;
+		try (FileHandleCache.Handle handle = cache.open(file, attr)) {
+			channel = handle.channel();
+			cache.invalidate(file.getParent());
+			Assertions.assertTrue(channel.isOpen()); // still in use
+		}
+		Assertions.assertFalse(channel.isOpen());
+		try (FileHandleCache.Handle handle = cache.open(file, attr)) {
+			Assertions.assertNotSame(channel, handle.channel());
+		}
+	}
+
+	@Test
+	public void testChannelReopenedAfterModification() throws IOException {
+		BasicFileAttributes attr1 = Files.readAttributes(file, BasicFileAttributes.class);
+		SeekableByteChannel channel;
+		try (FileHandleCache.Handle handle = cache.open(file, attr1)) {
+			channel = handle.channel();
+		}
+		Files.setLastModifiedTime(file, FileTime.fromMillis(attr1.lastModifiedTime().toMillis() + 1000));
+		BasicFileAttributes attr2 = Files.readAttributes(file, BasicFileAttributes.class);
+		try (FileHandleCache.Handle handle = cache.open(file, attr2)) {
+			Assertions.assertNotSame(channel, handle.channel());
+		}
+		Assertions.assertFalse(channel.isOpen());
+	}
+
+	@Test
+	public void testUnsharedIfDisabled() throws IOException {
+		FileHandleCache disabled = new FileHandleCache(0);
+		BasicFileAttributes attr = Files.readAttributes(file, BasicFileAttributes.class);
+		SeekableByteChannel channel;
+		try (FileHandleCache.Handle handle = disabled.open(file, attr)) {
+			channel = handle.channel();
+			Assertions.assertTrue(channel.isOpen());
+		}
+		Assertions.assertFalse(channel.isOpen());
+	}
+
+}
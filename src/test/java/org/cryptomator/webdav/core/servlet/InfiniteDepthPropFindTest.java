@@ -0,0 +1,122 @@
+package org.cryptomator.webdav.core.servlet;
+
+import org.apache.jackrabbit.webdav.DavResource;
+import org.apache.jackrabbit.webdav.DavSession;
+import org.apache.jackrabbit.webdav.MultiStatusResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+public class InfiniteDepthPropFindTest {
+
+	private static final Function<DavResource, MultiStatusResponse> RESPONSE_FACTORY = resource -> new MultiStatusResponse(resource.getHref(), 200);
+
+	private DavResourceFactoryImpl factory;
+	private DavFolder root;
+	private int resourceCount;
+
+	@BeforeEach
+	public void setup(@TempDir Path tmpDir) throws IOException {
+		Path dir = Files.createDirectory(tmpDir.resolve("dir"));
+		resourceCount = 1;
+		for (int i = 0; i < 5; i++) {
+			Path folder = Files.createDirectory(dir.resolve("folder" + i));
+			Path subfolder = Files.createDirectory(folder.resolve("subfolder"));
+			for (int j = 0; j < 10; j++) {
+				Files.createFile(folder.resolve("file" + j));
+				Files.createFile(subfolder.resolve("file" + j));
+			}
+			resourceCount += 22;
+		}
+		factory = new DavResourceFactoryImpl(tmpDir::resolve, ServletSettings.defaults());
+		BasicFileAttributes attr = Files.readAttributes(dir, BasicFileAttributes.class);
+		DavLocatorImpl locator = new DavLocatorFactoryImpl().createResourceLocator("http://localhost/", "dir/");
+		root = factory.createFolder(locator, dir, Optional.of(attr), Mockito.mock(DavSession.class));
+	}
+
+	@AfterEach
+	public void tearDown() {
+		factory.close();
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = {1, 4})
+	public void testAllResourcesEnumeratedOnce(int parallelism) throws IOException {
+		List<String> hrefs = new ArrayList<>();
+		try (InfiniteDepthPropFind propFind = new InfiniteDepthPropFind(parallelism, 0, 0)) {
+			InfiniteDepthPropFind.Outcome outcome = propFind.run(root, RESPONSE_FACTORY, response -> hrefs.add(response.getHref()));
+
+			Assertions.assertEquals(InfiniteDepthPropFind.Outcome.COMPLETE, outcome);
+		}
+		Set<String> uniqueHrefs = new HashSet<>(hrefs);
+		Assertions.assertEquals(resourceCount, hrefs.size());
+		Assertions.assertEquals(resourceCount, uniqueHrefs.size());
+		Assertions.assertEquals(root.getHref(), hrefs.get(0));
+		Assertions.assertTrue(uniqueHrefs.contains("http://localhost/dir/folder3/subfolder/file7"));
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = {1, 4})
+	public void testStopsAtMaxResources(int parallelism) throws IOException {
+		List<String> hrefs = new ArrayList<>();
+		try (InfiniteDepthPropFind propFind = new InfiniteDepthPropFind(parallelism, 20, 0)) {
+			InfiniteDepthPropFind.Outcome outcome = propFind.run(root, RESPONSE_FACTORY, response -> hrefs.add(response.getHref()));
+
+			Assertions.assertEquals(InfiniteDepthPropFind.Outcome.TOO_MANY_RESOURCES, outcome);
+		}
+		Assertions.assertEquals(20, hrefs.size());
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = {1, 4})
+	public void testStopsAfterTimeout(int parallelism) throws IOException {
+		Function<DavResource, MultiStatusResponse> slowResponseFactory = resource -> {
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return RESPONSE_FACTORY.apply(resource);
+		};
+		List<String> hrefs = new ArrayList<>();
+		try (InfiniteDepthPropFind propFind = new InfiniteDepthPropFind(parallelism, 0, 50)) {
+			InfiniteDepthPropFind.Outcome outcome = propFind.run(root, slowResponseFactory, response -> hrefs.add(response.getHref()));
+
+			Assertions.assertEquals(InfiniteDepthPropFind.Outcome.TIMEOUT, outcome);
+		}
+		Assertions.assertTrue(hrefs.size() < resourceCount);
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = {1, 4})
+	public void testSinkFailureStopsTraversal(int parallelism) {
+		try (InfiniteDepthPropFind propFind = new InfiniteDepthPropFind(parallelism, 0, 0)) {
+			List<String> hrefs = new ArrayList<>();
+			IOException e = Assertions.assertThrows(IOException.class, () -> propFind.run(root, RESPONSE_FACTORY, response -> {
+				if (hrefs.size() == 10) {
+					throw new IOException("connection reset");
+				}
+				hrefs.add(response.getHref());
+			}));
+
+			Assertions.assertEquals("connection reset", e.getMessage());
+			Assertions.assertEquals(10, hrefs.size());
+		}
+	}
+
+}
@@ -0,0 +1,78 @@
+package org.cryptomator.webdav.core.servlet;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Random;
+
+public class MappedRegionCacheTest {
+
+	private static final byte[] CONTENT = new byte[10_000];
+
+	private Path file;
+	private MappedRegionCache cache;
+
+	@BeforeEach
+	public void setup(@TempDir Path tmpDir) throws IOException {
+		new Random(42).nextBytes(CONTENT);
+		file = Files.write(tmpDir.resolve("file.bin"), CONTENT);
+		cache = new MappedRegionCache(5_000, 4096);
+	}
+
+	@AfterEach
+	public void teardown() {
+		cache.close();
+	}
+
+	@Test
+	public void testIsApplicable() throws IOException {
+		BasicFileAttributes attr = Files.readAttributes(file, BasicFileAttributes.class);
+		Assertions.assertTrue(cache.isApplicable(attr));
+		try (MappedRegionCache higherThreshold = new MappedRegionCache(20_000); MappedRegionCache disabled = new MappedRegionCache(-1)) {
+			Assertions.assertFalse(higherThreshold.isApplicable(attr));
+			Assertions.assertFalse(disabled.isApplicable(attr));
+		}
+	}
+
+	@Test
+	public void testTransferAcrossRegions() throws IOException {
+		BasicFileAttributes attr = Files.readAttributes(file, BasicFileAttributes.class);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		Assertions.assertTrue(cache.transfer(file, attr, 1000, 8000, out));
+
+		Assertions.assertArrayEquals(Arrays.copyOfRange(CONTENT, 1000, 9000), out.toByteArray());
+	}
+
+	@Test
+	public void testTransferBeyondEof() throws IOException {
+		BasicFileAttributes attr = Files.readAttributes(file, BasicFileAttributes.class);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		Assertions.assertTrue(cache.transfer(file, attr, 9000, 5000, out));
+
+		Assertions.assertArrayEquals(Arrays.copyOfRange(CONTENT, 9000, 10_000), out.toByteArray());
+	}
+
+	@Test
+	public void testTransferAfterInvalidation() throws IOException {
+		BasicFileAttributes attr = Files.readAttributes(file, BasicFileAttributes.class);
+		cache.transfer(file, attr, 0, 100, new ByteArrayOutputStream());
+		cache.invalidate(file.getParent());
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		Assertions.assertTrue(cache.transfer(file, attr, 0, 100, out));
+
+		Assertions.assertArrayEquals(Arrays.copyOfRange(CONTENT, 0, 100), out.toByteArray());
+	}
+
+}
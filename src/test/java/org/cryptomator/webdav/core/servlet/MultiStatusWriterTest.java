@@ -0,0 +1,82 @@
+package org.cryptomator.webdav.core.servlet;
+
+import org.apache.jackrabbit.webdav.DavServletResponse;
+import org.apache.jackrabbit.webdav.MultiStatus;
+import org.apache.jackrabbit.webdav.MultiStatusResponse;
+import org.apache.jackrabbit.webdav.property.DavPropertyName;
+import org.apache.jackrabbit.webdav.property.DefaultDavProperty;
+import org.apache.jackrabbit.webdav.xml.DomUtil;
+import org.apache.jackrabbit.webdav.xml.Namespace;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class MultiStatusWriterTest {
+
+	private static final Namespace CUSTOM_NS = Namespace.getNamespace("x", "urn:example");
+
+	@Test
+	public void testOutputEquivalentToJackrabbitMultiStatus() throws IOException, ParserConfigurationException, SAXException {
+		List<MultiStatusResponse> responses = List.of(createResponse("http://example.com/foo/", "foo"), createResponse("http://example.com/foo/b%c3%a4r", "bär & <baz>"), new MultiStatusResponse("http://example.com/foo/missing", DavServletResponse.SC_NOT_FOUND, null));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (MultiStatusWriter writer = new MultiStatusWriter(out)) {
+			for (MultiStatusResponse response : responses) {
+				writer.write(response);
+			}
+		}
+
+		MultiStatus expected = new MultiStatus();
+		responses.forEach(expected::addResponse);
+		Document expectedDoc = DomUtil.createDocument();
+		expectedDoc.appendChild(expected.toXml(expectedDoc));
+		Document actualDoc = DomUtil.parseDocument(new ByteArrayInputStream(out.toByteArray()));
+		Assertions.assertEquals(canonicalize(expectedDoc.getDocumentElement()), canonicalize(actualDoc.getDocumentElement()));
+		Assertions.assertTrue(out.toString(StandardCharsets.UTF_8).startsWith("<?xml version=\"1.0\" encoding=\"UTF-8\"?><D:multistatus xmlns:D=\"DAV:\">"));
+	}
+
+	@Test
+	public void testEmptyMultiStatus() throws IOException, ParserConfigurationException, SAXException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new MultiStatusWriter(out).close();
+
+		Element root = DomUtil.parseDocument(new ByteArrayInputStream(out.toByteArray())).getDocumentElement();
+		Assertions.assertEquals("DAV:", root.getNamespaceURI());
+		Assertions.assertEquals("multistatus", root.getLocalName());
+		Assertions.assertFalse(root.hasChildNodes());
+	}
+
+	private MultiStatusResponse createResponse(String href, String displayName) {
+		MultiStatusResponse response = new MultiStatusResponse(href, null);
+		response.add(new DefaultDavProperty<>(DavPropertyName.DISPLAYNAME, displayName));
+		response.add(new DefaultDavProperty<>(DavPropertyName.create("custom", CUSTOM_NS), "value"));
+		response.add(DavPropertyName.create("unknown", CUSTOM_NS), DavServletResponse.SC_NOT_FOUND);
+		return response;
+	}
+
+	/**
+	 * Renders elements by namespace and local name, ignoring prefixes and the placement of namespace declarations.
+	 */
+	private String canonicalize(Node node) {
+		if (node.getNodeType() != Node.ELEMENT_NODE) {
+			return node.getNodeType() == Node.TEXT_NODE ? node.getNodeValue() : "";
+		}
+		StringBuilder sb = new StringBuilder();
+		sb.append('{').append(node.getNamespaceURI()).append('}').append(node.getLocalName()).append('[');
+		for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+			sb.append(canonicalize(child));
+		}
+		return sb.append(']').toString();
+	}
+
+}
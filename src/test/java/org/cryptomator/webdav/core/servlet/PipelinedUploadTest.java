@@ -0,0 +1,90 @@
+package org.cryptomator.webdav.core.servlet;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class PipelinedUploadTest {
+
+	private Path file;
+	private BufferPool bufferPool;
+	private ExecutorService executor;
+	private PipelinedUpload upload;
+
+	@BeforeEach
+	public void setup(@TempDir Path tmpDir) {
+		file = tmpDir.resolve("file.bin");
+		bufferPool = new BufferPool(8 * 1024, 1024 * 1024);
+		executor = Executors.newSingleThreadExecutor();
+		upload = new PipelinedUpload(bufferPool, executor);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		executor.shutdown();
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = {0, 1, 8191, 8192, 8193, 16384, 100_000})
+	public void testCopy(int size) throws IOException {
+		byte[] content = new byte[size];
+		new Random(42).nextBytes(content);
+
+		long copied;
+		try (FileChannel dst = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+			copied = upload.copy(new ByteArrayInputStream(content), dst, -1);
+		}
+
+		Assertions.assertEquals(size, copied);
+		Assertions.assertArrayEquals(content, Files.readAllBytes(file));
+		Assertions.assertEquals(0, bufferPool.getSizeClasses().get(0).getInUse());
+	}
+
+	@Test
+	public void testWriteFailure() {
+		byte[] content = new byte[100_000];
+		WritableByteChannel failingChannel = new WritableByteChannel() {
+			private int writes;
+
+			@Override
+			public int write(ByteBuffer src) throws IOException {
+				if (++writes > 2) {
+					throw new IOException("disk full");
+				}
+				int n = src.remaining();
+				src.position(src.limit());
+				return n;
+			}
+
+			@Override
+			public boolean isOpen() {
+				return true;
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+
+		IOException e = Assertions.assertThrows(IOException.class, () -> upload.copy(new ByteArrayInputStream(content), failingChannel, content.length));
+		Assertions.assertEquals("disk full", e.getMessage());
+		Assertions.assertEquals(0, bufferPool.getSizeClasses().get(0).getInUse());
+	}
+
+}
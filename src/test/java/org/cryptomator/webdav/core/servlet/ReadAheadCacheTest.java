@@ -0,0 +1,104 @@
+package org.cryptomator.webdav.core.servlet;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Random;
+
+public class ReadAheadCacheTest {
+
+	private static final byte[] CONTENT = new byte[100_000];
+
+	private Path file;
+	private BasicFileAttributes attr;
+	private FileHandleCache fileHandles;
+	private ReadAheadCache cache;
+
+	@BeforeEach
+	public void setup(@TempDir Path tmpDir) throws IOException {
+		new Random(42).nextBytes(CONTENT);
+		file = Files.write(tmpDir.resolve("file.bin"), CONTENT);
+		attr = Files.readAttributes(file, BasicFileAttributes.class);
+		fileHandles = new FileHandleCache(0);
+		cache = new ReadAheadCache(10_000, fileHandles);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		cache.close();
+		fileHandles.close();
+	}
+
+	@Test
+	public void testConsecutiveRequestsArePrefetched() throws IOException {
+		// the second consecutive request reveals sequential access:
+		Assertions.assertFalse(cache.transfer(file, "client", attr, 0, 1000, new ByteArrayOutputStream()));
+		Assertions.assertFalse(cache.transfer(file, "client", attr, 1000, 1000, new ByteArrayOutputStream()));
+		for (int pos = 2000; pos < 20_000; pos += 1000) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			Assertions.assertTrue(cache.transfer(file, "client", attr, pos, 1000, out), "request at " + pos);
+			Assertions.assertArrayEquals(Arrays.copyOfRange(CONTENT, pos, pos + 1000), out.toByteArray());
+		}
+		Assertions.assertEquals(18, cache.getHitCount());
+	}
+
+	@Test
+	public void testStreamsAreTrackedPerClient() throws IOException {
+		Assertions.assertFalse(cache.transfer(file, "client1", attr, 0, 1000, new ByteArrayOutputStream()));
+		Assertions.assertFalse(cache.transfer(file, "client2", attr, 5000, 1000, new ByteArrayOutputStream()));
+		Assertions.assertFalse(cache.transfer(file, "client1", attr, 1000, 1000, new ByteArrayOutputStream()));
+		Assertions.assertFalse(cache.transfer(file, "client2", attr, 6000, 1000, new ByteArrayOutputStream()));
+		Assertions.assertTrue(cache.transfer(file, "client1", attr, 2000, 1000, new ByteArrayOutputStream()));
+		Assertions.assertTrue(cache.transfer(file, "client2", attr, 7000, 1000, new ByteArrayOutputStream()));
+	}
+
+	@Test
+	public void testInterleavedReadersOfSameClientKeepTheirStreams() throws IOException {
+		Assertions.assertFalse(cache.transfer(file, "client", attr, 0, 1000, new ByteArrayOutputStream()));
+		Assertions.assertFalse(cache.transfer(file, "client", attr, 50_000, 1000, new ByteArrayOutputStream()));
+		Assertions.assertFalse(cache.transfer(file, "client", attr, 1000, 1000, new ByteArrayOutputStream()));
+		Assertions.assertFalse(cache.transfer(file, "client", attr, 51_000, 1000, new ByteArrayOutputStream()));
+		for (int pos = 2000; pos < 10_000; pos += 1000) {
+			ByteArrayOutputStream out1 = new ByteArrayOutputStream();
+			ByteArrayOutputStream out2 = new ByteArrayOutputStream();
+			Assertions.assertTrue(cache.transfer(file, "client", attr, pos, 1000, out1), "reader 1 at " + pos);
+			Assertions.assertTrue(cache.transfer(file, "client", attr, 50_000 + pos, 1000, out2), "reader 2 at " + (50_000 + pos));
+			Assertions.assertArrayEquals(Arrays.copyOfRange(CONTENT, pos, pos + 1000), out1.toByteArray());
+			Assertions.assertArrayEquals(Arrays.copyOfRange(CONTENT, 50_000 + pos, 51_000 + pos), out2.toByteArray());
+		}
+		Assertions.assertEquals(16, cache.getHitCount());
+	}
+
+	@Test
+	public void testRandomAccessIsNotPrefetched() throws IOException {
+		Assertions.assertFalse(cache.transfer(file, "client", attr, 0, 1000, new ByteArrayOutputStream()));
+		Assertions.assertFalse(cache.transfer(file, "client", attr, 50_000, 1000, new ByteArrayOutputStream()));
+		Assertions.assertFalse(cache.transfer(file, "client", attr, 10_000, 1000, new ByteArrayOutputStream()));
+		Assertions.assertEquals(0, cache.getHitCount());
+	}
+
+	@Test
+	public void testInvalidate() throws IOException {
+		Assertions.assertFalse(cache.transfer(file, "client", attr, 0, 1000, new ByteArrayOutputStream()));
+		Assertions.assertFalse(cache.transfer(file, "client", attr, 1000, 1000, new ByteArrayOutputStream()));
+		cache.invalidate(file);
+		Assertions.assertFalse(cache.transfer(file, "client", attr, 2000, 1000, new ByteArrayOutputStream()));
+	}
+
+	@Test
+	public void testDisabled() throws IOException {
+		ReadAheadCache disabled = new ReadAheadCache(0, fileHandles);
+		Assertions.assertFalse(disabled.transfer(file, "client", attr, 0, 1000, new ByteArrayOutputStream()));
+		Assertions.assertFalse(disabled.transfer(file, "client", attr, 1000, 1000, new ByteArrayOutputStream()));
+	}
+
+}
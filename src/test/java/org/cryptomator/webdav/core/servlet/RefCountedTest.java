@@ -0,0 +1,61 @@
+package org.cryptomator.webdav.core.servlet;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class RefCountedTest {
+
+	private Resource resource;
+
+	@BeforeEach
+	public void setup() {
+		resource = new Resource();
+	}
+
+	@Test
+	public void testRetiredUnusedResourceIsDisposedImmediately() {
+		resource.retire();
+		resource.retire();
+
+		Assertions.assertEquals(1, resource.disposals);
+		Assertions.assertFalse(resource.retain());
+	}
+
+	@Test
+	public void testRetiredResourceIsDisposedAfterLastRelease() {
+		Assertions.assertTrue(resource.retain());
+		Assertions.assertTrue(resource.retain());
+
+		resource.retire();
+		resource.release();
+		Assertions.assertEquals(0, resource.disposals);
+		resource.release();
+
+		Assertions.assertEquals(1, resource.disposals);
+	}
+
+	@Test
+	public void testRetireIfIdle() {
+		Assertions.assertTrue(resource.retain());
+		Assertions.assertFalse(resource.retireIfIdle(Long.MAX_VALUE));
+
+		resource.release();
+		Assertions.assertFalse(resource.retireIfIdle(0));
+		Assertions.assertTrue(resource.retireIfIdle(Long.MAX_VALUE));
+
+		Assertions.assertEquals(1, resource.disposals);
+	}
+
+	private static class Resource extends RefCounted {
+
+		private int disposals;
+
+		@Override
+		protected void dispose() {
+			disposals++;
+		}
+
+	}
+
+}
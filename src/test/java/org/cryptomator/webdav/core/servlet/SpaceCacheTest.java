@@ -0,0 +1,68 @@
+package org.cryptomator.webdav.core.servlet;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+public class SpaceCacheTest {
+
+	@Test
+	public void testSpaceOfFileStore(@TempDir Path tmpDir) throws IOException {
+		FileStore fileStore = Files.getFileStore(tmpDir);
+		try (SpaceCache cache = new SpaceCache(60_000)) {
+			SpaceCache.Space space = cache.getSpace(tmpDir);
+
+			Assertions.assertEquals(fileStore.getTotalSpace(), space.getTotalSpace());
+			Assertions.assertTrue(space.getUsableSpace() > 0);
+			Assertions.assertEquals(space.getTotalSpace() - space.getUsableSpace(), space.getUsedSpace());
+		}
+	}
+
+	@Test
+	public void testSpaceSharedByDirectoriesOnSameFileStore(@TempDir Path tmpDir) throws IOException {
+		Path dir = Files.createDirectories(tmpDir.resolve("foo/bar"));
+		try (SpaceCache cache = new SpaceCache(60_000)) {
+			SpaceCache.Space space = cache.getSpace(tmpDir);
+
+			Assertions.assertSame(space, cache.getSpace(dir));
+			Assertions.assertEquals(space.getUsableSpace(), cache.getUsableSpace(dir));
+		}
+	}
+
+	@Test
+	public void testFileStoreNotInheritedFromAncestor(@TempDir Path tmpDir) throws IOException {
+		try (SpaceCache cache = new SpaceCache(60_000)) {
+			cache.getSpace(tmpDir);
+
+			// a descendant is looked up itself, as it might be a mount point:
+			Assertions.assertThrows(NoSuchFileException.class, () -> cache.getSpace(tmpDir.resolve("nonexisting")));
+		}
+	}
+
+	@Test
+	public void testInvalidatedDirectoryLookedUpAgain(@TempDir Path tmpDir) throws IOException {
+		Path dir = Files.createDirectory(tmpDir.resolve("dir"));
+		try (SpaceCache cache = new SpaceCache(60_000)) {
+			cache.getSpace(dir);
+			Files.delete(dir);
+
+			cache.invalidate(tmpDir);
+
+			Assertions.assertThrows(NoSuchFileException.class, () -> cache.getSpace(dir));
+		}
+	}
+
+	@Test
+	public void testNonExistingDirectory(@TempDir Path tmpDir) {
+		try (SpaceCache cache = new SpaceCache(60_000)) {
+			Assertions.assertThrows(NoSuchFileException.class, () -> cache.getSpace(tmpDir.resolve("nonexisting")));
+		}
+	}
+
+}
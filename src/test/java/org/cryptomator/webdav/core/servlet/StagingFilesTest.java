@@ -0,0 +1,62 @@
+package org.cryptomator.webdav.core.servlet;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+public class StagingFilesTest {
+
+	@TempDir
+	Path tmpDir;
+
+	@Test
+	public void testForTarget() {
+		Path target = tmpDir.resolve("dir/file.txt");
+
+		Path staging1 = StagingFiles.forTarget(target);
+		Path staging2 = StagingFiles.forTarget(target);
+
+		Assertions.assertEquals(target.getParent(), staging1.getParent());
+		Assertions.assertNotEquals(staging1, staging2);
+		Assertions.assertTrue(StagingFiles.isStagingFile(staging1));
+		Assertions.assertFalse(StagingFiles.isStagingFile(target));
+		Assertions.assertFalse(StagingFiles.isStagingFile(target.getRoot()));
+	}
+
+	@Test
+	public void testMoveToTargetReplacesExistingFile() throws IOException {
+		Path target = Files.writeString(tmpDir.resolve("file.txt"), "old");
+		Path staging = Files.writeString(StagingFiles.forTarget(target), "new");
+
+		StagingFiles.moveToTarget(staging, target);
+
+		Assertions.assertEquals("new", Files.readString(target, StandardCharsets.UTF_8));
+		Assertions.assertTrue(Files.notExists(staging));
+	}
+
+	@Test
+	public void testDeleteOrphans() throws IOException {
+		Path dir = Files.createDirectory(tmpDir.resolve("dir"));
+		Path target = Files.writeString(dir.resolve("file.txt"), "content");
+		Path orphan = Files.writeString(StagingFiles.forTarget(target), "orphan");
+		Path inProgress = Files.writeString(StagingFiles.forTarget(target), "in progress");
+		Instant cutoff = Instant.now();
+		Files.setLastModifiedTime(orphan, FileTime.from(cutoff.minus(1, ChronoUnit.HOURS)));
+		Files.setLastModifiedTime(inProgress, FileTime.from(cutoff.plus(1, ChronoUnit.SECONDS)));
+
+		StagingFiles.deleteOrphans(tmpDir, FileTime.from(cutoff));
+
+		Assertions.assertTrue(Files.notExists(orphan));
+		Assertions.assertTrue(Files.exists(inProgress));
+		Assertions.assertTrue(Files.exists(target));
+	}
+
+}